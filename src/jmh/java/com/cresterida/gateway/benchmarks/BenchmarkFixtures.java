@@ -0,0 +1,149 @@
+package com.cresterida.gateway.benchmarks;
+
+import com.cresterida.gateway.model.EndpointDefinition;
+import com.cresterida.gateway.model.JsonFieldMapping;
+import com.cresterida.gateway.model.ServiceDefinition;
+import com.cresterida.gateway.model.ServiceInstance;
+import com.cresterida.gateway.model.ServiceType;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.Map;
+
+/**
+ * Shared proto and payloads for the benchmarks: an order service with nested messages,
+ * an enum and a repeated field whose size drives the payload size.
+ */
+final class BenchmarkFixtures {
+    static final String ORDERS_PROTO = String.join("\n",
+        "syntax = \"proto3\";",
+        "package bench;",
+        "service Orders {",
+        "  rpc GetOrder (OrderRequest) returns (Order) {}",
+        "}",
+        "enum Tier {",
+        "  TIER_UNSPECIFIED = 0;",
+        "  TIER_BASIC = 1;",
+        "  TIER_GOLD = 2;",
+        "}",
+        "message Address {",
+        "  string street = 1;",
+        "  string city = 2;",
+        "  string country = 3;",
+        "}",
+        "message Customer {",
+        "  string id = 1;",
+        "  string name = 2;",
+        "  Address address = 3;",
+        "  Tier tier = 4;",
+        "}",
+        "message OrderRequest {",
+        "  string order_id = 1;",
+        "  Customer customer = 2;",
+        "  repeated string tags = 3;",
+        "}",
+        "message LineItem {",
+        "  string sku = 1;",
+        "  int32 quantity = 2;",
+        "  int64 price_cents = 3;",
+        "  string description = 4;",
+        "}",
+        "message Order {",
+        "  string order_id = 1;",
+        "  Customer customer = 2;",
+        "  repeated LineItem items = 3;",
+        "  int64 total_cents = 4;",
+        "  string status = 5;",
+        "}");
+
+    private BenchmarkFixtures() {
+    }
+
+    static JsonObject customer() {
+        return new JsonObject()
+            .put("id", "cust-42")
+            .put("name", "Ada Lovelace")
+            .put("address", new JsonObject()
+                .put("street", "12 Analytical Row")
+                .put("city", "London")
+                .put("country", "GB"))
+            .put("tier", "TIER_GOLD");
+    }
+
+    static JsonObject orderRequest() {
+        return new JsonObject()
+            .put("order_id", "ord-1001")
+            .put("customer", customer())
+            .put("tags", new JsonArray().add("priority").add("gift"));
+    }
+
+    static JsonObject order(int items) {
+        JsonArray lineItems = new JsonArray();
+        for (int i = 0; i < items; i++) {
+            lineItems.add(new JsonObject()
+                .put("sku", "SKU-" + i)
+                .put("quantity", 1 + i % 5)
+                .put("price_cents", String.valueOf(1999 + i))
+                .put("description", "Line item number " + i + " with a reasonably descriptive label"));
+        }
+        return new JsonObject()
+            .put("order_id", "ord-1001")
+            .put("customer", customer())
+            .put("items", lineItems)
+            .put("total_cents", "123456")
+            .put("status", "SHIPPED");
+    }
+
+    /**
+     * Orders service with nested input/output mappings and an enum field mapping.
+     */
+    static ServiceDefinition mappedOrdersService() {
+        EndpointDefinition getOrder = EndpointDefinition.fromJson(new JsonObject()
+            .put("name", "getOrder")
+            .put("methodName", "GetOrder")
+            .put("inputMessage", "OrderRequest")
+            .put("outputMessage", "Order")
+            .put("inputMapping", new JsonObject()
+                .put("order_id", "$.order.id")
+                .put("customer.id", "$.order.customer.id")
+                .put("customer.name", "$.order.customer.displayName")
+                .put("customer.address.city", "$.order.customer.location.city")
+                .put("customer.tier", "$.order.customer.level"))
+            .put("outputMapping", new JsonObject()
+                .put("id", "$.order_id")
+                .put("customerName", "$.customer.name")
+                .put("city", "$.customer.address.city")
+                .put("level", "$.customer.tier")
+                .put("items", "$.items")
+                .put("status", "$.status")));
+
+        JsonFieldMapping tier = new JsonFieldMapping();
+        tier.setProtoField("customer.tier");
+        tier.setJsonField("level");
+        tier.setType("enum");
+        tier.setEnumMappings(Map.of("gold", "TIER_GOLD", "basic", "TIER_BASIC"));
+
+        return new ServiceDefinition.Builder()
+            .setId("orders")
+            .setName("Orders")
+            .setPackage("bench")
+            .setVersion("1.0")
+            .setType(ServiceType.GRPC)
+            .setProtoDefinition(ORDERS_PROTO)
+            .setPathPrefix("/api/orders")
+            .addInstance(new ServiceInstance("localhost", 50051))
+            .addEndpoint(getOrder)
+            .addFieldMapping(tier)
+            .build();
+    }
+
+    static JsonObject mappedOrderRequest() {
+        return new JsonObject().put("order", new JsonObject()
+            .put("id", "ord-1001")
+            .put("customer", new JsonObject()
+                .put("id", "cust-42")
+                .put("displayName", "Ada Lovelace")
+                .put("level", "gold")
+                .put("location", new JsonObject().put("city", "London"))));
+    }
+}
@@ -0,0 +1,105 @@
+package com.cresterida.gateway.benchmarks;
+
+import com.cresterida.gateway.util.HttpCompression;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.handler.codec.compression.Zstd;
+import io.netty.handler.codec.compression.ZstdEncoder;
+import io.netty.handler.codec.compression.ZlibCodecFactory;
+import io.netty.handler.codec.compression.ZlibWrapper;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU cost of compressing transcoded JSON responses with each codec the gateway can negotiate,
+ * using the same Netty encoders as the HTTP server. The payloads are orders with 1, 100 and 1000
+ * line items (about 0.3KB, 12KB and 125KB). The {@code rawBytes}/{@code compressedBytes}
+ * counters give the compression ratio, i.e. the bandwidth side of the tradeoff.
+ *
+ * <p>The zstd cases need zstd-jni: run with {@code -Pjmh,zstd}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionBenchmark {
+
+    @Param({"gzip-1", "gzip-" + HttpCompression.DEFAULT_LEVEL, "gzip-9", "deflate-" + HttpCompression.DEFAULT_LEVEL, "zstd-" + HttpCompression.ZSTD_LEVEL})
+    public String codec;
+
+    @Param({"1", "100", "1000"})
+    public int items;
+
+    private String name;
+    private int level;
+    private ByteBuf payload;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Bytes {
+        public long rawBytes;
+        public long compressedBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rawBytes = 0;
+            compressedBytes = 0;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        int dash = codec.indexOf('-');
+        name = codec.substring(0, dash);
+        level = Integer.parseInt(codec.substring(dash + 1));
+        if (name.equals("zstd") && !Zstd.isAvailable()) {
+            throw new IllegalStateException("zstd-jni is not on the classpath, run with -Pjmh,zstd");
+        }
+        payload = Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(
+            BenchmarkFixtures.order(items).encode().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    // One encoder per response, as the HTTP server's compressor creates them
+    @Benchmark
+    public long compress(Bytes bytes) {
+        EmbeddedChannel channel = new EmbeddedChannel(encoder());
+        channel.writeOutbound(payload.duplicate());
+        channel.finish();
+        long compressed = 0;
+        ByteBuf out;
+        while ((out = channel.readOutbound()) != null) {
+            compressed += out.readableBytes();
+            out.release();
+        }
+        bytes.rawBytes += payload.readableBytes();
+        bytes.compressedBytes += compressed;
+        return compressed;
+    }
+
+    private MessageToByteEncoder<ByteBuf> encoder() {
+        return switch (name) {
+            case "gzip" -> ZlibCodecFactory.newZlibEncoder(ZlibWrapper.GZIP, level);
+            case "deflate" -> ZlibCodecFactory.newZlibEncoder(ZlibWrapper.ZLIB, level);
+            case "zstd" -> new ZstdEncoder(level, HttpCompression.ZSTD_BLOCK_SIZE, HttpCompression.ZSTD_MAX_ENCODE_SIZE);
+            default -> throw new IllegalArgumentException(codec);
+        };
+    }
+}
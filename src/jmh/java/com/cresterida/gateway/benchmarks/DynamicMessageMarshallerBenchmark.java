@@ -0,0 +1,66 @@
+package com.cresterida.gateway.benchmarks;
+
+import com.cresterida.gateway.util.DynamicGrpcInvoker;
+import com.cresterida.gateway.util.DynamicMessageMarshaller;
+import com.cresterida.gateway.util.ProtoDescriptorBuilder;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wire encoding and decoding through {@link DynamicMessageMarshaller}, i.e. the gRPC
+ * marshalling cost of a transcoded call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DynamicMessageMarshallerBenchmark {
+
+    @Param({"1", "100", "1000"})
+    public int items;
+
+    private DynamicMessageMarshaller marshaller;
+    private Message order;
+    private byte[] wire;
+
+    @Setup
+    public void setup() throws Exception {
+        Descriptors.Descriptor orderType = ProtoDescriptorBuilder
+            .buildFromProtoDefinition("bench_orders", BenchmarkFixtures.ORDERS_PROTO)
+            .getFileDescriptor()
+            .findMessageTypeByName("Order");
+        marshaller = new DynamicMessageMarshaller(orderType);
+        order = DynamicGrpcInvoker.toMessage(BenchmarkFixtures.order(items), orderType);
+        wire = order.toByteArray();
+    }
+
+    @Benchmark
+    public Message parse() {
+        return marshaller.parse(new ByteArrayInputStream(wire));
+    }
+
+    @Benchmark
+    public byte[] stream() throws IOException {
+        try (InputStream in = marshaller.stream(order)) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.cresterida.gateway.benchmarks;
+
+import com.cresterida.gateway.model.EndpointDefinition;
+import com.cresterida.gateway.model.ServiceDefinition;
+import com.cresterida.gateway.model.ServiceInstance;
+import com.cresterida.gateway.model.ServiceType;
+import com.cresterida.gateway.registry.CompiledEndpoint;
+import com.cresterida.gateway.registry.CompiledService;
+import com.cresterida.gateway.registry.ServiceCompiler;
+import com.cresterida.gateway.util.DynamicGrpcInvoker;
+import com.cresterida.gateway.util.ExecutionStrategy;
+import com.cresterida.gateway.util.GrpcChannelPool;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.Message;
+import io.grpc.Grpc;
+import io.grpc.InsecureServerCredentials;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.stub.ServerCalls;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A wave of concurrent calls through {@link DynamicGrpcInvoker} to an upstream that takes
+ * {@code upstreamMillis} to answer each one, run on every {@link ExecutionStrategy}. The score
+ * is the time until the last call of the wave has completed: with an ideal strategy it stays
+ * close to the upstream latency however many calls there are, with a bounded pool it grows with
+ * {@code calls / poolSize}.
+ *
+ * <p>The upstream is an in-process gRPC server that answers from a timer, so it never limits
+ * concurrency itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ExecutionStrategyBenchmark {
+
+    @Param({ExecutionStrategy.WORKER, ExecutionStrategy.DEDICATED, ExecutionStrategy.VIRTUAL})
+    public String strategy;
+
+    @Param({"1000", "10000"})
+    public int calls;
+
+    @Param({"20"})
+    public int upstreamMillis;
+
+    private Vertx vertx;
+    private Server upstream;
+    private ScheduledExecutorService replies;
+    private GrpcChannelPool channelPool;
+    private ExecutionStrategy execution;
+    private DynamicGrpcInvoker invoker;
+    private CompiledService service;
+    private CompiledEndpoint endpoint;
+    private JsonObject request;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        vertx = Vertx.vertx();
+        replies = Executors.newSingleThreadScheduledExecutor();
+
+        // The upstream only needs the method descriptor, so it can start before its port is known
+        upstream = startUpstream(ServiceCompiler.compile(ordersService(0)).getEndpoint("getOrder"));
+        service = ServiceCompiler.compile(ordersService(upstream.getPort()));
+        endpoint = service.getEndpoint("getOrder");
+        request = BenchmarkFixtures.orderRequest();
+        channelPool = new GrpcChannelPool(30);
+        execution = ExecutionStrategy.start(vertx, new JsonObject().put("execution.strategy", strategy))
+            .toCompletionStage().toCompletableFuture().get();
+        invoker = new DynamicGrpcInvoker(vertx, channelPool, execution);
+    }
+
+    private static ServiceDefinition ordersService(int port) {
+        return new ServiceDefinition.Builder()
+            .setId("orders")
+            .setName("Orders")
+            .setPackage("bench")
+            .setVersion("1.0")
+            .setType(ServiceType.GRPC)
+            .setProtoDefinition(BenchmarkFixtures.ORDERS_PROTO)
+            .setPathPrefix("/api/orders")
+            .addInstance(new ServiceInstance("localhost", port))
+            .addEndpoint(EndpointDefinition.fromJson(new JsonObject()
+                .put("name", "getOrder")
+                .put("methodName", "GetOrder")
+                .put("inputMessage", "OrderRequest")
+                .put("outputMessage", "Order")))
+            .build();
+    }
+
+    // Answers every call after upstreamMillis without holding a thread while it waits
+    private Server startUpstream(CompiledEndpoint getOrder) throws Exception {
+        MethodDescriptor<Message, Message> method = getOrder.getGrpcMethod();
+        Message reply = DynamicMessage.newBuilder(getOrder.getOutputType()).build();
+        ServerServiceDefinition definition = ServerServiceDefinition.builder(method.getServiceName())
+            .addMethod(method, ServerCalls.asyncUnaryCall((request, observer) ->
+                replies.schedule(() -> {
+                    observer.onNext(reply);
+                    observer.onCompleted();
+                }, upstreamMillis, TimeUnit.MILLISECONDS)))
+            .build();
+        return Grpc.newServerBuilderForPort(0, InsecureServerCredentials.create())
+            .addService(definition)
+            .build()
+            .start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        channelPool.close();
+        upstream.shutdownNow();
+        replies.shutdownNow();
+        execution.close().toCompletionStage().toCompletableFuture().get(30, TimeUnit.SECONDS);
+        // Not composed: a future on one of its contexts could not complete once Vert.x is closed
+        vertx.close().toCompletionStage().toCompletableFuture().get(30, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public int wave() throws Exception {
+        List<Future<JsonObject>> wave = new ArrayList<>(calls);
+        for (int i = 0; i < calls; i++) {
+            wave.add(invoker.invoke(service, endpoint, request));
+        }
+        Future.all(wave).toCompletionStage().toCompletableFuture().get(2, TimeUnit.MINUTES);
+        return wave.size();
+    }
+}
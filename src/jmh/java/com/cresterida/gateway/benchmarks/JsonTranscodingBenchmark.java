@@ -0,0 +1,76 @@
+package com.cresterida.gateway.benchmarks;
+
+import com.cresterida.gateway.util.DynamicGrpcInvoker;
+import com.cresterida.gateway.util.ProtoDescriptorBuilder;
+import com.cresterida.gateway.util.StreamingJsonEncoder;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON to {@link DynamicMessage} and back, as done by {@link DynamicGrpcInvoker} on every
+ * transcoded call. The response size is driven by the number of repeated line items.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonTranscodingBenchmark {
+
+    @Param({"1", "100", "1000"})
+    public int items;
+
+    private Descriptors.Descriptor requestType;
+    private Descriptors.Descriptor orderType;
+    private JsonObject request;
+    private JsonObject orderJson;
+    private DynamicMessage order;
+
+    @Setup
+    public void setup() throws Exception {
+        Descriptors.FileDescriptor file = ProtoDescriptorBuilder
+            .buildFromProtoDefinition("bench_orders", BenchmarkFixtures.ORDERS_PROTO)
+            .getFileDescriptor();
+        requestType = file.findMessageTypeByName("OrderRequest");
+        orderType = file.findMessageTypeByName("Order");
+        request = BenchmarkFixtures.orderRequest();
+        orderJson = BenchmarkFixtures.order(items);
+        order = DynamicGrpcInvoker.toMessage(orderJson, orderType);
+    }
+
+    @Benchmark
+    public DynamicMessage jsonToRequestMessage() throws Exception {
+        return DynamicGrpcInvoker.toMessage(request, requestType);
+    }
+
+    @Benchmark
+    public DynamicMessage jsonToOrderMessage() throws Exception {
+        return DynamicGrpcInvoker.toMessage(orderJson, orderType);
+    }
+
+    @Benchmark
+    public JsonObject orderMessageToJson() throws Exception {
+        return DynamicGrpcInvoker.toJson(order);
+    }
+
+    @Benchmark
+    public Buffer orderMessageToJsonStreaming() throws Exception {
+        return StreamingJsonEncoder.encode(order);
+    }
+}
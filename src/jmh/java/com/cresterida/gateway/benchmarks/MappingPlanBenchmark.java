@@ -0,0 +1,56 @@
+package com.cresterida.gateway.benchmarks;
+
+import com.cresterida.gateway.registry.CompiledEndpoint;
+import com.cresterida.gateway.registry.ServiceCompiler;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compiled input/output mapping plans on nested payloads, including enum translation.
+ * Output plans project out of the response without mutating it, so the same document is
+ * reused across invocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MappingPlanBenchmark {
+
+    @Param({"1", "100"})
+    public int items;
+
+    private CompiledEndpoint endpoint;
+    private JsonObject request;
+    private JsonObject response;
+
+    @Setup
+    public void setup() throws Exception {
+        endpoint = ServiceCompiler.compile(BenchmarkFixtures.mappedOrdersService()).getEndpoint("getOrder");
+        request = BenchmarkFixtures.mappedOrderRequest();
+        response = BenchmarkFixtures.order(items);
+    }
+
+    @Benchmark
+    public JsonObject inputMapping() {
+        return endpoint.getInputPlan().apply(request);
+    }
+
+    @Benchmark
+    public JsonObject outputMapping() {
+        return endpoint.getOutputPlan().apply(response);
+    }
+}
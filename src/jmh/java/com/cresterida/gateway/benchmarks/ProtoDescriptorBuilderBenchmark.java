@@ -0,0 +1,40 @@
+package com.cresterida.gateway.benchmarks;
+
+import com.cresterida.gateway.util.ProtoDescriptorBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cost of compiling a proto definition, which is paid once per service registration.
+ * {@code buildFromProtoDefinition} measures a protoc run plus descriptor linking: each invocation
+ * compiles a source no earlier one used (the same proto with a distinct trailing comment), so
+ * protoc's output cache never hits. {@code buildFromCachedProtoDefinition} measures registering
+ * another service from a source compiled before: hashing it and linking the cached output.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProtoDescriptorBuilderBenchmark {
+    private static final AtomicLong INVOCATIONS = new AtomicLong();
+
+    @Benchmark
+    public ProtoDescriptorBuilder.BuildResult buildFromProtoDefinition() throws Exception {
+        String source = BenchmarkFixtures.ORDERS_PROTO + "\n// invocation " + INVOCATIONS.incrementAndGet() + "\n";
+        return ProtoDescriptorBuilder.buildFromProtoDefinition("bench_orders", source);
+    }
+
+    @Benchmark
+    public ProtoDescriptorBuilder.BuildResult buildFromCachedProtoDefinition() throws Exception {
+        return ProtoDescriptorBuilder.buildFromProtoDefinition("bench_orders", BenchmarkFixtures.ORDERS_PROTO);
+    }
+}
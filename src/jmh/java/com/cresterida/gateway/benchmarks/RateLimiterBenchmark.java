@@ -0,0 +1,73 @@
+package com.cresterida.gateway.benchmarks;
+
+import com.cresterida.gateway.ratelimit.GcraRateLimiter;
+import com.cresterida.gateway.ratelimit.RateLimiter;
+import com.cresterida.gateway.ratelimit.TokenBucket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single hot service's limiter hammered by 1 to 64 threads, comparing the original
+ * {@link TokenBucket} with {@link GcraRateLimiter}. With {@code admitting} load the rate is high
+ * enough that most decisions admit, so the benchmark measures contention on admissions; with
+ * {@code saturated} load almost every decision is a rejection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RateLimiterBenchmark {
+
+    @Param({"token-bucket", "gcra"})
+    private String limiter;
+
+    @Param({"admitting", "saturated"})
+    private String load;
+
+    private RateLimiter bucket;
+
+    @Setup
+    public void setup() {
+        long rate = "admitting".equals(load) ? 50_000_000 : 1_000;
+        long burst = "admitting".equals(load) ? 10_000 : 100;
+        bucket = "gcra".equals(limiter) ? GcraRateLimiter.perSecond(rate, burst) : new TokenBucket(burst, rate);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean tryConsume1Thread() {
+        return bucket.tryConsume();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean tryConsume4Threads() {
+        return bucket.tryConsume();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public boolean tryConsume16Threads() {
+        return bucket.tryConsume();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public boolean tryConsume64Threads() {
+        return bucket.tryConsume();
+    }
+}
@@ -0,0 +1,74 @@
+package com.cresterida.gateway.benchmarks;
+
+import com.cresterida.gateway.model.ServiceDefinition;
+import com.cresterida.gateway.model.ServiceType;
+import com.cresterida.gateway.registry.CompiledService;
+import com.cresterida.gateway.registry.ServiceCompiler;
+import com.cresterida.gateway.registry.ServiceRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Path resolution against registries of different sizes, for paths spread uniformly over the
+ * registered services and for paths that match nothing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServiceRegistryBenchmark {
+    private static final int PATHS = 1024;
+
+    @Param({"10", "1000", "10000"})
+    public int services;
+
+    private ServiceRegistry registry;
+    private String[] paths;
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        registry = new ServiceRegistry();
+        for (int i = 0; i < services; i++) {
+            ServiceDefinition sd = new ServiceDefinition.Builder()
+                .setId("svc-" + i)
+                .setName("Service" + i)
+                .setType(ServiceType.HTTP)
+                .setPathPrefix("/api/svc-" + i + "/")
+                .setUpstreamBaseUrl("http://localhost:3000")
+                .build();
+            CompiledService compiled = ServiceCompiler.compile(sd);
+            registry.add(compiled);
+        }
+        Random random = new Random(42);
+        paths = new String[PATHS];
+        for (int i = 0; i < PATHS; i++) {
+            paths[i] = "/api/svc-" + random.nextInt(services) + "/users/" + i;
+        }
+    }
+
+    @Benchmark
+    public Optional<CompiledService> resolveHit() {
+        return registry.resolveByPath(paths[next++ & (PATHS - 1)]);
+    }
+
+    @Benchmark
+    public Optional<CompiledService> resolveMiss() {
+        return registry.resolveByPath("/api/unknown/users/1");
+    }
+}
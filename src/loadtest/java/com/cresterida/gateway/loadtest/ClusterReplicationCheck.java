@@ -0,0 +1,193 @@
+package com.cresterida.gateway.loadtest;
+
+import com.cresterida.gateway.ApiGatewayVerticle;
+import com.hazelcast.config.Config;
+import com.hazelcast.config.JoinConfig;
+import com.hazelcast.config.NetworkConfig;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.eventbus.EventBusOptions;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.RequestOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.spi.cluster.hazelcast.ConfigUtil;
+import io.vertx.spi.cluster.hazelcast.HazelcastClusterManager;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Checks registry replication end to end with several clustered gateway nodes in one JVM, each a
+ * Hazelcast member of a cluster private to this run that joins over TCP on the loopback interface.
+ * A service registered on one node must become routable on
+ * the others, an update must reach every node, a node started later must receive the current
+ * registry, and a removal on any node must remove the service everywhere. Exits with code 1 on
+ * the first check that does not hold within the timeout.
+ */
+public final class ClusterReplicationCheck {
+    private static final long CONVERGE_TIMEOUT_MILLIS = Long.getLong("cluster.convergeTimeoutMillis", 10_000);
+    private static final String CLUSTER_NAME = "replication-check-" + UUID.randomUUID();
+
+    private ClusterReplicationCheck() {
+    }
+
+    private record Node(Vertx vertx, int port) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Vertx vertx = Vertx.vertx();
+        HttpClient client = vertx.createHttpClient();
+        List<Node> nodes = new ArrayList<>();
+        int exitCode = 0;
+        try {
+            HttpServer echo = await(vertx.createHttpServer()
+                .requestHandler(req -> req.body().onSuccess(body -> req.response()
+                    .putHeader("Content-Type", "application/json")
+                    .end(body)))
+                .listen(0));
+
+            for (int i = 0; i < 3; i++) {
+                nodes.add(startNode());
+            }
+            Node first = nodes.get(0);
+            Node second = nodes.get(1);
+            Node third = nodes.get(2);
+
+            expect(send(client, first, HttpMethod.POST, "/admin/services", echoService(echo.actualPort(), "1.0")), 201,
+                "register on node 1");
+            for (Node node : nodes) {
+                awaitService(client, node, "1.0");
+                expect(send(client, node, HttpMethod.POST, "/api/echo/ping", new JsonObject().put("ping", node.port())), 200,
+                    "route on node " + node.port());
+            }
+            System.out.println("Registered on one node, routable on " + nodes.size());
+
+            expect(send(client, second, HttpMethod.PUT, "/admin/services/echo", echoService(echo.actualPort(), "2.0")), 200,
+                "update on node 2");
+            for (Node node : nodes) {
+                awaitService(client, node, "2.0");
+            }
+            System.out.println("Updated on one node, updated on " + nodes.size());
+
+            Node late = startNode();
+            nodes.add(late);
+            awaitService(client, late, "2.0");
+            System.out.println("Late node received the registry snapshot");
+
+            expect(send(client, third, HttpMethod.DELETE, "/admin/services/echo", null), 204, "delete on node 3");
+            for (Node node : nodes) {
+                awaitStatus(client, node, 404);
+            }
+            System.out.println("Deleted on one node, removed from " + nodes.size());
+            System.out.println("Registry replication checks passed");
+        } catch (Exception e) {
+            System.err.println("Registry replication check failed: " + e.getMessage());
+            exitCode = 1;
+        } finally {
+            for (Node node : nodes) {
+                await(node.vertx().close());
+            }
+            await(vertx.close());
+        }
+        System.exit(exitCode);
+    }
+
+    private static Node startNode() throws Exception {
+        Vertx vertx = await(Vertx.builder()
+            .with(new VertxOptions().setEventBusOptions(new EventBusOptions().setHost("localhost")))
+            .withClusterManager(new HazelcastClusterManager(hazelcastConfig()))
+            .buildClustered());
+        int port = freePort();
+        await(vertx.deployVerticle(new ApiGatewayVerticle(), new DeploymentOptions().setConfig(new JsonObject()
+            .put("http.port", port)
+            .put("registry.replication.enabled", true)
+            .put("registry.replication.syncIntervalMillis", 1000L))));
+        return new Node(vertx, port);
+    }
+
+    // The bundled Vert.x defaults, without multicast so the check never joins another cluster on the network
+    private static Config hazelcastConfig() {
+        Config config = ConfigUtil.loadConfig().setClusterName(CLUSTER_NAME);
+        config.setProperty("hazelcast.phone.home.enabled", "false");
+        NetworkConfig network = config.getNetworkConfig().setPortAutoIncrement(true);
+        network.getInterfaces().setEnabled(true).addInterface("127.0.0.1");
+        JoinConfig join = network.getJoin();
+        join.getMulticastConfig().setEnabled(false);
+        join.getTcpIpConfig().setEnabled(true).addMember("127.0.0.1");
+        return config;
+    }
+
+    private static JsonObject echoService(int port, String version) {
+        return new JsonObject()
+            .put("id", "echo")
+            .put("name", "Echo")
+            .put("version", version)
+            .put("type", "HTTP")
+            .put("pathPrefix", "/api/echo")
+            .put("upstreamBaseUrl", "http://localhost:" + port);
+    }
+
+    private static void awaitService(HttpClient client, Node node, String version) throws Exception {
+        awaitResponse(client, node, response -> response.status() == 200
+            && version.equals(new JsonObject(response.body()).getString("version")), "echo " + version);
+    }
+
+    private static void awaitStatus(HttpClient client, Node node, int status) throws Exception {
+        awaitResponse(client, node, response -> response.status() == status, "status " + status);
+    }
+
+    private static void awaitResponse(HttpClient client, Node node, Predicate<Response> check, String expected)
+        throws Exception {
+        long deadline = System.currentTimeMillis() + CONVERGE_TIMEOUT_MILLIS;
+        Response last;
+        do {
+            last = send(client, node, HttpMethod.GET, "/admin/services/echo", null);
+            if (check.test(last)) {
+                return;
+            }
+            Thread.sleep(50);
+        } while (System.currentTimeMillis() < deadline);
+        throw new IllegalStateException("Node on port " + node.port() + " did not converge to " + expected
+            + ", last answered " + last.status() + ": " + last.body());
+    }
+
+    private record Response(int status, String body) {
+    }
+
+    private static Response send(HttpClient client, Node node, HttpMethod method, String uri, JsonObject body)
+        throws Exception {
+        return await(client.request(new RequestOptions()
+                .setMethod(method)
+                .setHost("localhost")
+                .setPort(node.port())
+                .setURI(uri)
+                .putHeader("Content-Type", "application/json"))
+            .compose(req -> body != null ? req.send(body.toBuffer()) : req.send())
+            .compose(resp -> resp.body().map(buffer -> new Response(resp.statusCode(), buffer.toString()))));
+    }
+
+    private static void expect(Response response, int status, String step) {
+        if (response.status() != status) {
+            throw new IllegalStateException(step + " answered " + response.status() + ": " + response.body());
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        return future.toCompletionStage().toCompletableFuture().get(30, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,138 @@
+package com.cresterida.gateway.loadtest;
+
+import com.cresterida.gateway.util.DescriptorPool;
+import com.cresterida.gateway.util.ProtoDescriptorBuilder;
+import com.github.os72.protocjar.Protoc;
+import com.google.protobuf.DescriptorProtos;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Measures the heap held by the descriptors of many gRPC services that import the same
+ * well-known types, linked once with a pool per service (every service builds its own copy of
+ * each import, as without sharing) and once through one shared {@link DescriptorPool}. protoc
+ * runs once; each service is the same proto with one field renamed, so its own file is distinct
+ * and only the imports can be shared. Then checks that releasing every lease lets the pool drain.
+ * Exits with code 1 when the shared pool does not use less heap or does not drain.
+ */
+public final class DescriptorHeapCheck {
+    private static final int SERVICES = Integer.getInteger("descriptors.services", 2000);
+    private static final String PROTO = String.join("\n",
+        "syntax = \"proto3\";",
+        "package template;",
+        "import \"google/protobuf/any.proto\";",
+        "import \"google/protobuf/duration.proto\";",
+        "import \"google/protobuf/empty.proto\";",
+        "import \"google/protobuf/field_mask.proto\";",
+        "import \"google/protobuf/struct.proto\";",
+        "import \"google/protobuf/timestamp.proto\";",
+        "import \"google/protobuf/type.proto\";",
+        "import \"google/protobuf/wrappers.proto\";",
+        "service Orders {",
+        "  rpc GetOrder (OrderRequest) returns (Order) {}",
+        "  rpc ListOrders (google.protobuf.Empty) returns (Order) {}",
+        "}",
+        "message OrderRequest {",
+        "  string order_id = 1;",
+        "  google.protobuf.FieldMask mask = 2;",
+        "}",
+        "message Order {",
+        "  string order_id = 1;",
+        "  google.protobuf.Timestamp created = 2;",
+        "  google.protobuf.Duration ttl = 3;",
+        "  google.protobuf.Struct attributes = 4;",
+        "  google.protobuf.StringValue note = 5;",
+        "  google.protobuf.Any details = 6;",
+        "  google.protobuf.Type schema = 7;",
+        "}");
+
+    private DescriptorHeapCheck() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        DescriptorProtos.FileDescriptorSet template = compile();
+        String mainFile = template.getFile(template.getFileCount() - 1).getName();
+        List<DescriptorProtos.FileDescriptorSet> services = new ArrayList<>(SERVICES);
+        for (int i = 0; i < SERVICES; i++) {
+            DescriptorProtos.FileDescriptorSet.Builder set = template.toBuilder();
+            DescriptorProtos.FileDescriptorProto.Builder main = set.getFileBuilder(set.getFileCount() - 1);
+            main.getMessageTypeBuilder(0).getFieldBuilder(0).setName("order_id_" + i);
+            services.add(set.build());
+        }
+        System.out.printf(Locale.ROOT, "%d services, %d files each%n", SERVICES, template.getFileCount());
+
+        long baseline = usedHeap();
+        List<ProtoDescriptorBuilder.BuildResult> separate = new ArrayList<>(SERVICES);
+        for (DescriptorProtos.FileDescriptorSet set : services) {
+            separate.add(ProtoDescriptorBuilder.buildFromDescriptorSet(set, mainFile, new DescriptorPool()));
+        }
+        long separateBytes = usedHeap() - baseline;
+        report("Separate descriptors", separateBytes);
+        separate.clear();
+
+        baseline = usedHeap();
+        DescriptorPool pool = new DescriptorPool();
+        List<ProtoDescriptorBuilder.BuildResult> shared = new ArrayList<>(SERVICES);
+        for (DescriptorProtos.FileDescriptorSet set : services) {
+            ProtoDescriptorBuilder.BuildResult result = ProtoDescriptorBuilder.buildFromDescriptorSet(set, mainFile, pool);
+            result.getLease().retain();
+            shared.add(result);
+        }
+        long sharedBytes = usedHeap() - baseline;
+        report("Shared pool", sharedBytes);
+        System.out.printf(Locale.ROOT, "Pool: %d files (%d pinned), %d built, %d shared; heap %.1f%% of separate%n",
+            pool.size(), pool.pinnedSize(), pool.getMisses(), pool.getHits(), 100.0 * sharedBytes / separateBytes);
+
+        shared.forEach(result -> result.getLease().release());
+        shared.clear();
+        usedHeap();
+        int left = pool.size();
+        System.out.printf(Locale.ROOT, "After releasing every lease: %d files left in the pool%n", left);
+
+        if (sharedBytes >= separateBytes || left != 0) {
+            System.err.println("Descriptor heap check failed");
+            System.exit(1);
+        }
+        System.out.println("Descriptor heap check passed");
+    }
+
+    private static DescriptorProtos.FileDescriptorSet compile() throws Exception {
+        Path dir = Files.createTempDirectory("descriptor-heap");
+        Path proto = dir.resolve("orders.proto");
+        Path descriptors = dir.resolve("orders.desc");
+        try {
+            Files.writeString(proto, PROTO);
+            int exitCode = Protoc.runProtoc(new String[] {"--include_std_types", "-I=" + dir, "--include_imports",
+                "--descriptor_set_out=" + descriptors, proto.toString()});
+            if (exitCode != 0) {
+                throw new IllegalStateException("protoc failed with exit code " + exitCode);
+            }
+            return DescriptorProtos.FileDescriptorSet.parseFrom(Files.readAllBytes(descriptors));
+        } finally {
+            Files.deleteIfExists(proto);
+            Files.deleteIfExists(descriptors);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    private static void report(String label, long bytes) {
+        System.out.printf(Locale.ROOT, "%-22s %8.1f MB, %6.1f KB per service%n",
+            label, bytes / (1024.0 * 1024.0), bytes / 1024.0 / SERVICES);
+    }
+
+    // Heap in use once garbage has been collected, as far as System.gc() can be made to do that
+    private static long usedHeap() throws InterruptedException {
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(100);
+            used = Math.min(used, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+}
@@ -0,0 +1,219 @@
+package com.cresterida.gateway.loadtest;
+
+import com.cresterida.gateway.ApiGatewayVerticle;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.PoolOptions;
+import io.vertx.core.http.RequestOptions;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end load test: starts the gateway with an in-process Greeter gRPC stub and an HTTP echo
+ * upstream, registers both through the admin API, then drives each route at a fixed open-loop
+ * rate. The run fails (exit code 1) when p99 latency or the error rate exceed their limits, or
+ * when throughput/p99 regress beyond the allowed percentage against a baseline result file.
+ *
+ * <p>Configured with system properties, see the Load Testing section of the README.
+ */
+public final class GatewayLoadTest {
+    private static final int RATE = Integer.getInteger("loadtest.rate", 500);
+    private static final int DURATION_SECONDS = Integer.getInteger("loadtest.durationSeconds", 20);
+    private static final int WARMUP_SECONDS = Integer.getInteger("loadtest.warmupSeconds", 10);
+    private static final double MAX_P99_MILLIS = Double.parseDouble(System.getProperty("loadtest.maxP99Millis", "50"));
+    private static final double MAX_ERROR_RATE = Double.parseDouble(System.getProperty("loadtest.maxErrorRate", "0.001"));
+    private static final double MAX_REGRESSION_PCT = Double.parseDouble(System.getProperty("loadtest.maxRegressionPct", "20"));
+    private static final String BASELINE = System.getProperty("loadtest.baseline", "");
+    private static final String RESULT = System.getProperty("loadtest.result", "target/loadtest-result.json");
+
+    private GatewayLoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Vertx vertx = Vertx.vertx();
+        GreeterStubServer greeter = GreeterStubServer.start(0);
+        int exitCode;
+        try {
+            HttpServer echo = await(vertx.createHttpServer()
+                .requestHandler(req -> req.body().onSuccess(body -> req.response()
+                    .putHeader("Content-Type", "application/json")
+                    .end(body)))
+                .listen(0));
+
+            int gatewayPort = freePort();
+            await(vertx.deployVerticle(new ApiGatewayVerticle(), new DeploymentOptions()
+                .setConfig(new JsonObject().put("http.port", gatewayPort))));
+
+            HttpClient client = vertx.createHttpClient(
+                new HttpClientOptions().setKeepAlive(true),
+                new PoolOptions().setHttp1MaxSize(512).setMaxWaitQueueSize(-1));
+            register(client, gatewayPort, greeterService(greeter.port()));
+            register(client, gatewayPort, echoService(echo.actualPort()));
+
+            List<OpenLoopDriver.Scenario> scenarios = List.of(
+                new OpenLoopDriver.Scenario("grpc-transcode", HttpMethod.POST, "/api/greeter/sayHello",
+                    new JsonObject().put("name", "load").toBuffer()),
+                new OpenLoopDriver.Scenario("http-proxy", HttpMethod.POST, "/api/echo/ping",
+                    new JsonObject().put("ping", "load").toBuffer()));
+
+            OpenLoopDriver driver = new OpenLoopDriver(vertx.getOrCreateContext(), client, gatewayPort);
+            List<OpenLoopDriver.Result> results = new ArrayList<>();
+            for (OpenLoopDriver.Scenario scenario : scenarios) {
+                if (WARMUP_SECONDS > 0) {
+                    driver.run(scenario, RATE, WARMUP_SECONDS);
+                }
+                OpenLoopDriver.Result result = driver.run(scenario, RATE, DURATION_SECONDS);
+                print(result);
+                results.add(result);
+            }
+
+            JsonObject report = report(results);
+            Path resultPath = Path.of(RESULT);
+            if (resultPath.getParent() != null) {
+                Files.createDirectories(resultPath.getParent());
+            }
+            Files.writeString(resultPath, report.encodePrettily());
+            System.out.println("Results written to " + resultPath.toAbsolutePath());
+
+            List<String> failures = check(report);
+            failures.forEach(f -> System.out.println("FAIL: " + f));
+            exitCode = failures.isEmpty() ? 0 : 1;
+        } finally {
+            greeter.stop();
+            vertx.close().toCompletionStage().toCompletableFuture().get(30, TimeUnit.SECONDS);
+        }
+        System.exit(exitCode);
+    }
+
+    private static JsonObject greeterService(int port) {
+        return new JsonObject()
+            .put("id", "greeter")
+            .put("name", GreeterStubServer.SERVICE)
+            .put("packageName", GreeterStubServer.PACKAGE)
+            .put("version", "1.0")
+            .put("type", "GRPC")
+            .put("protoDefinition", GreeterStubServer.PROTO)
+            .put("pathPrefix", "/api/greeter")
+            .put("rateLimitPerSecond", RATE * 10)
+            .put("burstCapacity", RATE * 10)
+            .put("instances", new JsonArray().add(new JsonObject().put("host", "localhost").put("port", port)))
+            .put("endpoints", new JsonArray().add(new JsonObject()
+                .put("name", "sayHello")
+                .put("methodName", "SayHello")
+                .put("inputMessage", "HelloRequest")
+                .put("outputMessage", "HelloReply")));
+    }
+
+    private static JsonObject echoService(int port) {
+        return new JsonObject()
+            .put("id", "echo")
+            .put("name", "echo")
+            .put("version", "1.0")
+            .put("type", "HTTP")
+            .put("pathPrefix", "/api/echo")
+            .put("upstreamBaseUrl", "http://localhost:" + port)
+            .put("rateLimitPerSecond", RATE * 10)
+            .put("burstCapacity", RATE * 10);
+    }
+
+    private static void register(HttpClient client, int port, JsonObject service) throws Exception {
+        int status = await(client.request(new RequestOptions()
+                .setMethod(HttpMethod.POST)
+                .setHost("localhost")
+                .setPort(port)
+                .setURI("/admin/services")
+                .putHeader("Content-Type", "application/json"))
+            .compose(req -> req.send(service.toBuffer()))
+            .compose(resp -> resp.body().map(body -> {
+                if (resp.statusCode() >= 300) {
+                    throw new IllegalStateException("Registering " + service.getString("id")
+                        + " failed with " + resp.statusCode() + ": " + body);
+                }
+                return resp.statusCode();
+            })));
+        System.out.printf("Registered %s (%d)%n", service.getString("id"), status);
+    }
+
+    private static void print(OpenLoopDriver.Result result) {
+        System.out.printf(Locale.ROOT,
+            "%-16s rate=%d/s sent=%d ok=%d errors=%d throughput=%.1f/s p50=%.2fms p90=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms%n",
+            result.scenario(), result.rate(), result.sent(), result.ok(), result.errors(), result.throughput(),
+            result.percentileMillis(50), result.percentileMillis(90), result.percentileMillis(99),
+            result.percentileMillis(99.9), result.latency().getMaxValue() / 1000.0);
+    }
+
+    private static JsonObject report(List<OpenLoopDriver.Result> results) {
+        JsonObject scenarios = new JsonObject();
+        results.forEach(r -> scenarios.put(r.scenario(), r.toJson()));
+        return new JsonObject()
+            .put("rate", RATE)
+            .put("durationSeconds", DURATION_SECONDS)
+            .put("scenarios", scenarios);
+    }
+
+    private static List<String> check(JsonObject report) throws IOException {
+        List<String> failures = new ArrayList<>();
+        JsonObject scenarios = report.getJsonObject("scenarios");
+        for (String name : scenarios.fieldNames()) {
+            JsonObject current = scenarios.getJsonObject(name);
+            if (current.getDouble("p99Millis") > MAX_P99_MILLIS) {
+                failures.add(String.format(Locale.ROOT, "%s p99 %.2fms exceeds %.2fms",
+                    name, current.getDouble("p99Millis"), MAX_P99_MILLIS));
+            }
+            if (current.getDouble("errorRate") > MAX_ERROR_RATE) {
+                failures.add(String.format(Locale.ROOT, "%s error rate %.4f exceeds %.4f",
+                    name, current.getDouble("errorRate"), MAX_ERROR_RATE));
+            }
+        }
+        if (BASELINE.isBlank()) {
+            return failures;
+        }
+
+        JsonObject baseline = new JsonObject(Files.readString(Path.of(BASELINE))).getJsonObject("scenarios");
+        double allowed = MAX_REGRESSION_PCT / 100.0;
+        for (String name : scenarios.fieldNames()) {
+            JsonObject previous = baseline.getJsonObject(name);
+            if (previous == null) {
+                continue;
+            }
+            JsonObject current = scenarios.getJsonObject(name);
+            double p99 = current.getDouble("p99Millis");
+            double baselineP99 = previous.getDouble("p99Millis");
+            if (p99 > baselineP99 * (1 + allowed)) {
+                failures.add(String.format(Locale.ROOT, "%s p99 regressed from %.2fms to %.2fms",
+                    name, baselineP99, p99));
+            }
+            double throughput = current.getDouble("throughput");
+            double baselineThroughput = previous.getDouble("throughput");
+            if (throughput < baselineThroughput * (1 - allowed)) {
+                failures.add(String.format(Locale.ROOT, "%s throughput regressed from %.1f/s to %.1f/s",
+                    name, baselineThroughput, throughput));
+            }
+        }
+        return failures;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        return future.toCompletionStage().toCompletableFuture().get(30, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,89 @@
+package com.cresterida.gateway.loadtest;
+
+import com.cresterida.gateway.util.DynamicMessageMarshaller;
+import com.cresterida.gateway.util.ProtoDescriptorBuilder;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.Message;
+import io.grpc.Grpc;
+import io.grpc.InsecureServerCredentials;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.stub.ServerCalls;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process gRPC upstream implementing the Greeter service from example-services.http with
+ * dynamic messages, so the load test needs no generated stubs.
+ */
+final class GreeterStubServer {
+    static final String PACKAGE = "helloworld";
+    static final String SERVICE = "Greeter";
+    static final String PROTO = String.join("\n",
+        "syntax = \"proto3\";",
+        "",
+        "package helloworld;",
+        "",
+        "service Greeter {",
+        "  rpc SayHello (HelloRequest) returns (HelloReply) {}",
+        "}",
+        "",
+        "message HelloRequest {",
+        "  string name = 1;",
+        "}",
+        "",
+        "message HelloReply {",
+        "  string message = 1;",
+        "}");
+
+    private final Server server;
+
+    private GreeterStubServer(Server server) {
+        this.server = server;
+    }
+
+    static GreeterStubServer start(int port) throws Exception {
+        Descriptors.ServiceDescriptor greeter = ProtoDescriptorBuilder
+            .buildFromProtoDefinition("loadtest_greeter", PROTO)
+            .getFileDescriptor()
+            .findServiceByName(SERVICE);
+        Descriptors.MethodDescriptor sayHello = greeter.findMethodByName("SayHello");
+        Descriptors.FieldDescriptor nameField = sayHello.getInputType().findFieldByName("name");
+        Descriptors.FieldDescriptor messageField = sayHello.getOutputType().findFieldByName("message");
+
+        MethodDescriptor<Message, Message> method = MethodDescriptor.<Message, Message>newBuilder()
+            .setType(MethodDescriptor.MethodType.UNARY)
+            .setFullMethodName(MethodDescriptor.generateFullMethodName(PACKAGE + "." + SERVICE, "SayHello"))
+            .setRequestMarshaller(new DynamicMessageMarshaller(sayHello.getInputType()))
+            .setResponseMarshaller(new DynamicMessageMarshaller(sayHello.getOutputType()))
+            .build();
+
+        ServerServiceDefinition service = ServerServiceDefinition.builder(PACKAGE + "." + SERVICE)
+            .addMethod(method, ServerCalls.asyncUnaryCall((request, observer) -> {
+                observer.onNext(DynamicMessage.newBuilder(sayHello.getOutputType())
+                    .setField(messageField, "Hello " + request.getField(nameField))
+                    .build());
+                observer.onCompleted();
+            }))
+            .build();
+
+        Server server = Grpc.newServerBuilderForPort(port, InsecureServerCredentials.create())
+            .addService(service)
+            .build()
+            .start();
+        return new GreeterStubServer(server);
+    }
+
+    int port() {
+        return server.getPort();
+    }
+
+    void stop() throws InterruptedException {
+        server.shutdown();
+        if (!server.awaitTermination(5, TimeUnit.SECONDS)) {
+            server.shutdownNow();
+        }
+    }
+}
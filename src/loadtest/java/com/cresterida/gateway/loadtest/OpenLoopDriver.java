@@ -0,0 +1,135 @@
+package com.cresterida.gateway.loadtest;
+
+import io.vertx.core.Context;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.RequestOptions;
+import io.vertx.core.json.JsonObject;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends requests on a fixed schedule regardless of how fast responses come back (open loop),
+ * and measures each latency from the request's intended send time, so a stalled gateway shows
+ * up as queueing delay instead of silently lowering the offered load.
+ */
+final class OpenLoopDriver {
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    record Scenario(String name, HttpMethod method, String path, Buffer body) {
+    }
+
+    record Result(String scenario, int rate, long sent, long ok, long errors, double elapsedSeconds, Histogram latency) {
+
+        double throughput() {
+            return (ok + errors) / elapsedSeconds;
+        }
+
+        double errorRate() {
+            return sent == 0 ? 0 : (double) errors / sent;
+        }
+
+        double percentileMillis(double percentile) {
+            return latency.getValueAtPercentile(percentile) / 1000.0;
+        }
+
+        JsonObject toJson() {
+            return new JsonObject()
+                .put("rate", rate)
+                .put("sent", sent)
+                .put("ok", ok)
+                .put("errors", errors)
+                .put("errorRate", errorRate())
+                .put("throughput", throughput())
+                .put("p50Millis", percentileMillis(50))
+                .put("p90Millis", percentileMillis(90))
+                .put("p99Millis", percentileMillis(99))
+                .put("p999Millis", percentileMillis(99.9))
+                .put("maxMillis", latency.getMaxValue() / 1000.0);
+        }
+    }
+
+    private final Context context;
+    private final HttpClient client;
+    private final int port;
+
+    OpenLoopDriver(Context context, HttpClient client, int port) {
+        this.context = context;
+        this.client = client;
+        this.port = port;
+    }
+
+    Result run(Scenario scenario, int ratePerSecond, int durationSeconds) throws InterruptedException {
+        long total = (long) ratePerSecond * durationSeconds;
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / ratePerSecond;
+        Recorder recorder = new Recorder(HIGHEST_TRACKABLE_MICROS, 3);
+        AtomicLong ok = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        CountDownLatch done = new CountDownLatch((int) total);
+        // Set once per request, by its completion or by the timeout below, whichever comes first
+        AtomicIntegerArray settled = new AtomicIntegerArray((int) total);
+        RequestOptions options = new RequestOptions()
+            .setMethod(scenario.method())
+            .setHost("localhost")
+            .setPort(port)
+            .setURI(scenario.path())
+            .setIdleTimeout(10_000)
+            .putHeader("Content-Type", "application/json");
+
+        // The schedule runs on this thread; each send is handed to the client's context
+        long start = System.nanoTime();
+        for (int i = 0; i < total; i++) {
+            int index = i;
+            long intended = start + i * intervalNanos;
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            context.runOnContext(v -> client.request(options)
+                .compose(req -> req.send(scenario.body()))
+                .compose(resp -> resp.body().map(b -> resp))
+                .onComplete(ar -> {
+                    if (!settled.compareAndSet(index, 0, 1)) {
+                        return;
+                    }
+                    long latencyMicros = (System.nanoTime() - intended) / 1000;
+                    recorder.recordValue(Math.min(latencyMicros, HIGHEST_TRACKABLE_MICROS));
+                    if (ar.succeeded() && isSuccess(ar.result())) {
+                        ok.incrementAndGet();
+                    } else {
+                        errors.incrementAndGet();
+                    }
+                    done.countDown();
+                }));
+        }
+        boolean completed = done.await(durationSeconds + 30L, TimeUnit.SECONDS);
+        long now = System.nanoTime();
+        double elapsedSeconds = (now - start) / 1e9;
+        long unanswered = 0;
+        if (!completed) {
+            // Requests still outstanding count as errors and as waits of at least this long, and a
+            // late completion finds them settled and records nothing into this or a later run
+            for (int i = 0; i < total; i++) {
+                if (settled.compareAndSet(i, 0, 1)) {
+                    long latencyMicros = (now - (start + i * intervalNanos)) / 1000;
+                    recorder.recordValue(Math.min(latencyMicros, HIGHEST_TRACKABLE_MICROS));
+                    unanswered++;
+                }
+            }
+        }
+        return new Result(scenario.name(), ratePerSecond, total, ok.get(), errors.get() + unanswered,
+            elapsedSeconds, recorder.getIntervalHistogram());
+    }
+
+    private static boolean isSuccess(HttpClientResponse response) {
+        return response.statusCode() >= 200 && response.statusCode() < 300;
+    }
+}
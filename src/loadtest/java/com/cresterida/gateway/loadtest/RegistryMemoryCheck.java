@@ -0,0 +1,239 @@
+package com.cresterida.gateway.loadtest;
+
+import com.cresterida.gateway.model.ServiceDefinition;
+import com.cresterida.gateway.registry.CompiledService;
+import com.cresterida.gateway.registry.ProtoSourceStore;
+import com.cresterida.gateway.registry.ServiceCompiler;
+import com.cresterida.gateway.registry.ServiceRegistry;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Measures the heap held by a registry of many services, once as is and once compact (proto
+ * sources spilled to a {@link ProtoSourceStore}, strings interned, collections trimmed). Every
+ * fifth service is an HTTP service; the others are gRPC services spread over a number of
+ * distinct protos, as when many tenants register the same APIs. Each definition is parsed from
+ * its own JSON text, like an admin API request body, so nothing is shared by accident.
+ *
+ * <p>The compact definitions must serialize to the same JSON as the full ones. Exits with code 1
+ * when they do not, or when the compact registry does not use less heap.
+ */
+public final class RegistryMemoryCheck {
+    private static final int SERVICES = Integer.getInteger("registry.services", 50_000);
+    private static final int PROTOS = Integer.getInteger("registry.protos", 100);
+    private static final int BATCH = 1000;
+    private static final String PROTO = String.join("\n",
+        "syntax = \"proto3\";",
+        "package tenant%d;",
+        "import \"google/protobuf/timestamp.proto\";",
+        "// Orders of one tenant. Prices are in minor units of the order's currency.",
+        "service Orders {",
+        "  // Returns one order by id",
+        "  rpc GetOrder (OrderRequest) returns (Order) {}",
+        "  // Creates an order; the id is assigned by the service",
+        "  rpc CreateOrder (Order) returns (Order) {}",
+        "  // Cancels an order that has not shipped yet and returns it",
+        "  rpc CancelOrder (OrderRequest) returns (Order) {}",
+        "}",
+        "message OrderRequest {",
+        "  string order_id = 1;",
+        "  string customer_id = 2;",
+        "}",
+        "message LineItem {",
+        "  string sku = 1;",
+        "  string description = 2;",
+        "  int32 quantity = 3;",
+        "  int64 unit_price = 4;",
+        "}",
+        "message Address {",
+        "  string name = 1;",
+        "  string street = 2;",
+        "  string city = 3;",
+        "  string postal_code = 4;",
+        "  string country = 5;",
+        "}",
+        "message Order {",
+        "  enum Status {",
+        "    STATUS_UNSPECIFIED = 0;",
+        "    STATUS_PENDING = 1;",
+        "    STATUS_PAID = 2;",
+        "    STATUS_SHIPPED = 3;",
+        "    STATUS_CANCELLED = 4;",
+        "  }",
+        "  string order_id = 1;",
+        "  string customer_id = 2;",
+        "  Status status = 3;",
+        "  repeated LineItem items = 4;",
+        "  Address shipping_address = 5;",
+        "  Address billing_address = 6;",
+        "  string currency = 7;",
+        "  int64 total = 8;",
+        "  google.protobuf.Timestamp created = 9;",
+        "  google.protobuf.Timestamp updated = 10;",
+        "  map<string, string> labels = 11;",
+        "}");
+
+    private RegistryMemoryCheck() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> definitions = new ArrayList<>(SERVICES);
+        for (int i = 0; i < SERVICES; i++) {
+            definitions.add(definition(i).encode());
+        }
+        // protoc runs once per distinct proto, before either registry is measured
+        for (int i = 0; i < PROTOS; i++) {
+            ServiceCompiler.compile(ServiceDefinition.fromJson(new JsonObject(definitions.get(i + i / 4 + 1))));
+        }
+        System.out.printf(Locale.ROOT, "%d services, %d distinct protos%n", SERVICES, PROTOS);
+
+        Map<String, JsonObject> expected = new HashMap<>();
+        long fullBytes = measure("Full definitions", definitions, null, expected);
+
+        Path dir = Files.createTempDirectory("registry-memory");
+        try {
+            ProtoSourceStore store = new ProtoSourceStore(dir);
+            Map<String, JsonObject> compacted = new HashMap<>();
+            long compactBytes = measure("Compact definitions", definitions, store, compacted);
+            long spilled;
+            try (Stream<Path> files = Files.list(dir)) {
+                spilled = files.count();
+            }
+            System.out.printf(Locale.ROOT, "Compact heap %.1f%% of full; %d proto sources spilled%n",
+                100.0 * compactBytes / fullBytes, spilled);
+
+            boolean same = true;
+            for (Map.Entry<String, JsonObject> entry : expected.entrySet()) {
+                if (!normalized(entry.getValue()).equals(normalized(compacted.get(entry.getKey())))) {
+                    System.err.println("Compact definition of " + entry.getKey() + " does not serialize like the full one");
+                    same = false;
+                }
+            }
+            if (!same || compactBytes >= fullBytes) {
+                System.err.println("Registry memory check failed");
+                System.exit(1);
+            }
+            System.out.println("Registry memory check passed");
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    // Registers every service in a fresh registry and returns the heap it holds; samples a few definitions as JSON
+    private static long measure(String label, List<String> definitions, ProtoSourceStore store,
+                                Map<String, JsonObject> samples) throws Exception {
+        long baseline = usedHeap();
+        long start = System.nanoTime();
+        ServiceRegistry registry = new ServiceRegistry(store);
+        List<CompiledService> batch = new ArrayList<>(BATCH);
+        for (String definition : definitions) {
+            batch.add(ServiceCompiler.compile(ServiceDefinition.fromJson(new JsonObject(definition)), registry.getProtoStore()));
+            if (batch.size() == BATCH) {
+                registry.addAll(batch);
+                batch = new ArrayList<>(BATCH);
+            }
+        }
+        registry.addAll(batch);
+        long registerMillis = (System.nanoTime() - start) / 1_000_000;
+        long bytes = usedHeap() - baseline;
+        System.out.printf(Locale.ROOT, "%-20s %8.1f MB, %5.2f KB per service, registered in %d ms%n",
+            label, bytes / (1024.0 * 1024.0), bytes / 1024.0 / registry.size(), registerMillis);
+
+        for (int i = 0; i < SERVICES; i += SERVICES / 10) {
+            for (int id : new int[] {i, i + 1}) {
+                registry.getById("svc-" + id).ifPresent(definition -> samples.put(definition.getId(), definition.toJson()));
+            }
+        }
+        registry.apply(List.of(), registry.listCompiled());
+        return bytes;
+    }
+
+    private static JsonObject definition(int i) {
+        String id = "svc-" + i;
+        if (i % 5 == 0) {
+            return new JsonObject()
+                .put("id", id)
+                .put("name", "catalog")
+                .put("type", "HTTP")
+                .put("version", "v1")
+                .put("pathPrefix", "/api/" + id)
+                .put("upstreamBaseUrl", "http://127.0.0.1:" + (9000 + i % 10))
+                .put("stripPrefix", true);
+        }
+        // Numbered over the gRPC services only, so every proto is used
+        int proto = (i - i / 5 - 1) % PROTOS;
+        JsonArray endpoints = new JsonArray()
+            .add(endpoint("getOrder", "GetOrder", "OrderRequest", "Order")
+                .put("inputMapping", new JsonObject().put("order_id", "$.orderId").put("customer_id", "$.customerId"))
+                .put("outputMapping", new JsonObject().put("id", "$.orderId").put("status", "$.status")))
+            .add(endpoint("createOrder", "CreateOrder", "Order", "Order"))
+            .add(endpoint("cancelOrder", "CancelOrder", "OrderRequest", "Order")
+                .put("inputMapping", new JsonObject().put("order_id", "$.orderId")));
+        return new JsonObject()
+            .put("id", id)
+            .put("name", "Orders")
+            .put("type", "GRPC")
+            .put("version", "v1")
+            .put("packageName", "tenant" + proto)
+            .put("protoDefinition", String.format(Locale.ROOT, PROTO, proto))
+            .put("pathPrefix", "/api/" + id)
+            .put("instances", new JsonArray()
+                .add(new JsonObject().put("host", "orders-" + proto + ".internal").put("port", 50051))
+                .add(new JsonObject().put("host", "orders-" + proto + "-b.internal").put("port", 50051)))
+            .put("endpoints", endpoints)
+            .put("fieldMappings", new JsonArray().add(new JsonObject()
+                .put("jsonField", "state")
+                .put("protoField", "status")
+                .put("enumMappings", new JsonObject().put("pending", "STATUS_PENDING").put("paid", "STATUS_PAID"))));
+    }
+
+    private static JsonObject endpoint(String name, String method, String input, String output) {
+        return new JsonObject()
+            .put("name", name)
+            .put("methodName", method)
+            .put("inputMessage", input)
+            .put("outputMessage", output)
+            .put("idempotent", !"createOrder".equals(name));
+    }
+
+    // Endpoints are listed in map order, which differs between the two representations
+    private static JsonObject normalized(JsonObject definition) {
+        if (definition == null) {
+            return null;
+        }
+        JsonObject copy = definition.copy();
+        JsonArray endpoints = copy.getJsonArray("endpoints");
+        if (endpoints != null) {
+            Set<Object> unordered = new HashSet<>();
+            endpoints.forEach(unordered::add);
+            copy.put("endpoints", unordered);
+        }
+        return copy;
+    }
+
+    // Heap in use once garbage has been collected, as far as System.gc() can be made to do that
+    private static long usedHeap() throws InterruptedException {
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(100);
+            used = Math.min(used, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+}
@@ -1,14 +1,39 @@
 package com.cresterida.gateway;
 
+import com.cresterida.gateway.accesslog.AccessLogHandler;
+import com.cresterida.gateway.accesslog.AccessLogger;
 import com.cresterida.gateway.handlers.AdminServiceHandler;
 import com.cresterida.gateway.handlers.DynamicGrpcProxyHandler;
+import com.cresterida.gateway.handlers.GrpcPassthroughHandler;
+import com.cresterida.gateway.handlers.GrpcPassthroughRegistry;
 import com.cresterida.gateway.handlers.HttpProxyHandler;
+import com.cresterida.gateway.metrics.RequestTimings;
+import com.cresterida.gateway.metrics.ServiceMeters;
 import com.cresterida.gateway.model.ServiceType;
-import com.cresterida.gateway.ratelimit.TokenBucket;
+import com.cresterida.gateway.ratelimit.AdaptiveConcurrencyLimiter;
+import com.cresterida.gateway.ratelimit.LoadShedder;
+import com.cresterida.gateway.ratelimit.RateLimiter;
+import com.cresterida.gateway.registry.CompiledService;
+import com.cresterida.gateway.registry.ProtoSourceStore;
+import com.cresterida.gateway.registry.RegistryReplicator;
+import com.cresterida.gateway.registry.ServiceDirectoryWatcher;
 import com.cresterida.gateway.registry.ServiceRegistry;
+import com.cresterida.gateway.registry.ServiceWarmer;
+import com.cresterida.gateway.registry.UpstreamResolver;
+import com.cresterida.gateway.util.ExecutionStrategy;
+import com.cresterida.gateway.util.GrpcChannelPool;
+import com.cresterida.gateway.util.HttpCompression;
+import io.grpc.Grpc;
+import io.grpc.InsecureServerCredentials;
+import io.grpc.Server;
+import java.nio.file.Path;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
 import io.vertx.core.Promise;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerOptions;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.handler.BodyHandler;
@@ -18,23 +43,70 @@ import org.apache.logging.log4j.Logger;
 public class ApiGatewayVerticle extends AbstractVerticle {
     private static final Logger LOGGER = LogManager.getLogger(ApiGatewayVerticle.class);
     private static final int DEFAULT_PORT = 8080;
+    private static final int GRPC_CHANNEL_IDLE_TIMEOUT_SECONDS = 30;
+    private static final long DEFAULT_DNS_REFRESH_MILLIS = 30_000;
+    private static final long DEFAULT_REGISTRY_SYNC_INTERVAL_MILLIS = 30_000;
 
     private ServiceRegistry registry;
     private AdminServiceHandler adminHandler;
     private DynamicGrpcProxyHandler grpcHandler;
     private HttpProxyHandler httpHandler;
-    private final ConcurrentHashMap<String, TokenBucket> rateLimiters = new ConcurrentHashMap<>();
+    private GrpcChannelPool channelPool;
+    private Server grpcServer;
+    private LoadShedder loadShedder;
+    private AccessLogger accessLogger;
+    private ServiceDirectoryWatcher directoryWatcher;
+    private ExecutionStrategy execution;
+    private ServiceWarmer warmer;
+    private UpstreamResolver upstreamResolver;
+    private RegistryReplicator replicator;
+    private final ConcurrentHashMap<String, RateLimiter> rateLimiters = new ConcurrentHashMap<>();
 
     @Override
     public void start(Promise<Void> startPromise) {
+        // Blocking work runs on the configured execution strategy, which may deploy a verticle of its own
+        ExecutionStrategy.start(vertx, config())
+            .compose(strategy -> {
+                execution = strategy;
+                LOGGER.info("Running blocking work on the {} execution strategy", strategy.name());
+                Router router = createRouter();
+                // Start the server once the services from the cluster and the watched directory, if any, are registered
+                return startReplication()
+                    .compose(v -> loadServiceDirectory())
+                    .compose(v -> vertx.createHttpServer(HttpCompression.configure(new HttpServerOptions(), config()))
+                        .requestHandler(router)
+                        .listen(config().getInteger("http.port", DEFAULT_PORT)));
+            })
+            .compose(server -> {
+                LOGGER.info("Gateway started on port {}", server.actualPort());
+                return startGrpcPassthrough();
+            })
+            .onSuccess(v -> startPromise.complete())
+            .onFailure( err -> {;
+                LOGGER.error("Failed to start gateway: {}", err.getMessage());
+                startPromise.fail(err);
+            });
+    }
+
+    private Router createRouter() {
         // Initialize components
-        registry = new ServiceRegistry();
-        adminHandler = new AdminServiceHandler(registry, rateLimiters);
-        grpcHandler = new DynamicGrpcProxyHandler(vertx);
+        channelPool = new GrpcChannelPool(GRPC_CHANNEL_IDLE_TIMEOUT_SECONDS);
+        registry = new ServiceRegistry(protoSourceStore(), channelPool);
+        grpcHandler = new DynamicGrpcProxyHandler(vertx, channelPool, execution);
         httpHandler = new HttpProxyHandler(vertx);
+        warmer = service -> service.getType() == ServiceType.GRPC ? grpcHandler.warmUp(service) : httpHandler.warmUp(service);
+        adminHandler = new AdminServiceHandler(registry, rateLimiters, execution, warmer);
+        upstreamResolver = new UpstreamResolver(registry, execution,
+            config().getLong("upstream.dns.refreshMillis", DEFAULT_DNS_REFRESH_MILLIS));
+        upstreamResolver.start(vertx);
+        loadShedder = new LoadShedder(config(), grpcHandler::getQueuedCalls);
+        loadShedder.start(vertx);
+        accessLogger = new AccessLogger(config());
+        accessLogger.start();
 
         // Create router
         Router router = Router.router(vertx);
+        router.route().handler(new AccessLogHandler(accessLogger));
         router.route().handler(BodyHandler.create());
 
         // Admin routes
@@ -43,37 +115,177 @@ public class ApiGatewayVerticle extends AbstractVerticle {
         // API routes with service type routing
         setupApiRoutes(router);
         LOGGER.debug("API routes set up completed");
-        // Start the server
-        vertx.createHttpServer()
-            .requestHandler(router)
-            .listen(config().getInteger("http.port", DEFAULT_PORT))
-            .onSuccess(server -> {
-                LOGGER.info("Gateway started on port {}", server.actualPort());
-                startPromise.complete();
-            })
-            .onFailure( err -> {;
-                LOGGER.error("Failed to start gateway: {}", err.getMessage());
-                startPromise.fail(err);
-            });
+        return router;
+    }
+
+    @Override
+    public void stop(Promise<Void> stopPromise) {
+        loadShedder.stop(vertx);
+        upstreamResolver.stop(vertx);
+        Future<Void> replicationStopped = replicator != null ? replicator.stop() : Future.succeededFuture();
+        replicationStopped.compose(v -> vertx.executeBlocking(() -> {
+            if (directoryWatcher != null) {
+                directoryWatcher.stop();
+            }
+            if (grpcServer != null) {
+                grpcServer.shutdown();
+                if (!grpcServer.awaitTermination(5, TimeUnit.SECONDS)) {
+                    grpcServer.shutdownNow();
+                }
+            }
+            channelPool.close();
+            accessLogger.stop();
+            return null;
+        })).compose(v -> adminHandler.close()).compose(v -> execution.close()).onComplete(stopPromise);
+    }
+
+    // Compact registry: proto sources spilled to a local directory, only when registry.compact.enabled is set
+    private ProtoSourceStore protoSourceStore() {
+        if (!config().getBoolean("registry.compact.enabled", false)) {
+            return null;
+        }
+        Path dir = Path.of(config().getString("registry.compact.protoDir",
+            Path.of(System.getProperty("java.io.tmpdir"), "gateway-proto-sources").toString()));
+        LOGGER.info("Compact registry: proto sources are kept in {}", dir);
+        return new ProtoSourceStore(dir);
+    }
+
+    // Registry replication across clustered nodes: only started when registry.replication.enabled is set
+    private Future<Void> startReplication() {
+        if (!config().getBoolean("registry.replication.enabled", false)) {
+            return Future.succeededFuture();
+        }
+        if (!vertx.isClustered()) {
+            LOGGER.warn("Registry replication enabled on a non-clustered Vert.x: only verticles of this instance share services");
+        }
+        replicator = new RegistryReplicator(vertx, registry, rateLimiters, execution, warmer,
+            config().getLong("registry.replication.syncIntervalMillis", DEFAULT_REGISTRY_SYNC_INTERVAL_MILLIS));
+        return replicator.start();
+    }
+
+    // Service definitions from files: only loaded when services.dir is configured
+    private Future<Void> loadServiceDirectory() {
+        String dir = config().getString("services.dir");
+        if (dir == null || dir.isBlank()) {
+            return Future.succeededFuture();
+        }
+        directoryWatcher = new ServiceDirectoryWatcher(vertx, Path.of(dir), registry, rateLimiters,
+            config().getLong("services.dir.debounceMillis", 250L), warmer);
+        return directoryWatcher.start();
+    }
+
+    // Native gRPC listener: only started when grpc.port is configured
+    private Future<Void> startGrpcPassthrough() {
+        int grpcPort = config().getInteger("grpc.port", 0);
+        if (grpcPort <= 0) {
+            return Future.succeededFuture();
+        }
+        GrpcPassthroughHandler passthrough = new GrpcPassthroughHandler(registry, rateLimiters, channelPool);
+        return vertx.executeBlocking(() -> {
+            grpcServer = Grpc.newServerBuilderForPort(grpcPort, InsecureServerCredentials.create())
+                .fallbackHandlerRegistry(new GrpcPassthroughRegistry(registry, passthrough))
+                .build()
+                .start();
+            LOGGER.info("gRPC passthrough listener started on port {}", grpcServer.getPort());
+            return null;
+        });
     }
 
     private void setupAdminRoutes(Router router) {
-        router.post("/admin/services").handler(adminHandler::handleAddService);
-        router.get("/admin/services").handler(adminHandler::handleListServices);
-        router.get("/admin/services/:id").handler(adminHandler::handleGetService);
-        router.put("/admin/services/:id").handler(adminHandler::handleUpdateService);
-        router.delete("/admin/services/:id").handler(adminHandler::handleDeleteService);
+        // ':' is literal in a regex route, whereas a plain path would read ":bulk" as a parameter
+        router.routeWithRegex(HttpMethod.POST, AdminServiceHandler.BULK_PATH).setName(AdminServiceHandler.BULK_PATH)
+            .handler(adminHandler.withIncrementCounter(adminHandler::handleBulkImport));
+        router.routeWithRegex(HttpMethod.GET, AdminServiceHandler.BULK_PATH).setName(AdminServiceHandler.BULK_PATH)
+            .handler(adminHandler.withIncrementCounter(adminHandler::handleBulkExport));
+        router.post("/admin/services").handler(adminHandler.withIncrementCounter(adminHandler::handleAddService));
+        router.get("/admin/services").handler(adminHandler.withIncrementCounter(adminHandler::handleListServices));
+        router.get("/admin/services/:id").handler(adminHandler.withIncrementCounter(adminHandler::handleGetService));
+        router.put("/admin/services/:id").handler(adminHandler.withIncrementCounter(adminHandler::handleUpdateService));
+        router.delete("/admin/services/:id").handler(adminHandler.withIncrementCounter(adminHandler::handleDeleteService));
+    }
+
+    private static String endpointName(CompiledService service, String path) {
+        return service.getType() == ServiceType.GRPC ? path.substring(path.lastIndexOf('/') + 1) : null;
+    }
+
+    // Gateway-generated upstream failures shrink the limit; responses that never completed say nothing
+    private static void release(AdaptiveConcurrencyLimiter concurrency, boolean completed, int statusCode, long rttNanos) {
+        if (!completed) {
+            concurrency.onIgnore();
+        } else if (statusCode == 502 || statusCode == 503 || statusCode == 504) {
+            concurrency.onDropped();
+        } else {
+            concurrency.onSuccess(rttNanos);
+        }
     }
 
     private void setupApiRoutes(Router router) {
+        boolean serverTiming = config().getBoolean("server.timing.enabled", false);
         router.route("/api/*").handler(ctx -> {
             String path = ctx.request().path();
+            // Shed before any routing work so an overloaded gateway spends as little as possible here
+            if (!loadShedder.admit(ctx.request().getHeader(LoadShedder.PRIORITY_HEADER))) {
+                AccessLogHandler.recordError(ctx, "shed");
+                ctx.response()
+                    .setStatusCode(503)
+                    .putHeader("Content-Type", "application/json")
+                    .putHeader("Retry-After", "1")
+                    .end(new JsonObject()
+                        .put("error", "Gateway overloaded, request shed")
+                        .put("status", 503)
+                        .encode());
+                return;
+            }
+            RequestTimings timings = new RequestTimings();
+            ctx.put(RequestTimings.CONTEXT_KEY, timings);
+            if (serverTiming) {
+                ctx.addHeadersEndHandler(v -> ctx.response().putHeader("Server-Timing", timings.toServerTiming()));
+            }
 
             // Try to resolve the service first
             registry.resolveByPath(path).ifPresentOrElse(service -> {
-                // Set service in context for handlers to use
+                timings.mark(RequestTimings.Stage.ROUTE, timings.getStartNanos());
+                // Set service in context for handlers and the access log to use
                 ctx.put("service", service);
 
+                // Recorded once the response has actually been written, not when the handler returns
+                ServiceMeters.EndpointMeters meters = service.getMeters().endpoint(endpointName(service, path));
+                ctx.addEndHandler(ar -> {
+                    meters.recordHttp(ctx.response().getStatusCode(), System.nanoTime() - timings.getStartNanos());
+                    service.getMeters().recordStages(timings);
+                });
+
+                RateLimiter limiter = rateLimiters.get(service.getId());
+                if (limiter != null && !limiter.tryConsume()) {
+                    AccessLogHandler.recordError(ctx, "rate limited");
+                    ctx.response()
+                        .setStatusCode(429)
+                        .putHeader("Content-Type", "application/json")
+                        .end(new JsonObject()
+                            .put("error", "Rate limit exceeded for service: " + service.getId())
+                            .put("status", 429)
+                            .encode());
+                    return;
+                }
+
+                AdaptiveConcurrencyLimiter concurrency = service.getConcurrencyLimiter();
+                if (concurrency != null) {
+                    if (!concurrency.tryAcquire()) {
+                        AccessLogHandler.recordError(ctx, "concurrency limited");
+                        ctx.response()
+                            .setStatusCode(503)
+                            .putHeader("Content-Type", "application/json")
+                            .end(new JsonObject()
+                                .put("error", "Concurrency limit exceeded for service: " + service.getId())
+                                .put("status", 503)
+                                .encode());
+                        return;
+                    }
+                    long admitted = System.nanoTime();
+                    ctx.addEndHandler(ar -> release(concurrency, ar.succeeded(), ctx.response().getStatusCode(),
+                        System.nanoTime() - admitted));
+                }
+
                 // Route based on service type
                 if (service.getType() == ServiceType.GRPC) {
                     LOGGER.debug("Routing to gRPC handler: {}", path);
@@ -83,8 +295,9 @@ public class ApiGatewayVerticle extends AbstractVerticle {
                     httpHandler.handle(ctx);
                 }
             }, () -> {
-                // No service found for this path
-                LOGGER.warn("No service found for path: {}", path);
+                // No service found for this path; recorded by the access log, so only traced here
+                LOGGER.debug("No service found for path: {}", path);
+                AccessLogHandler.recordError(ctx, "no service");
                 ctx.response()
                     .setStatusCode(404)
                     .putHeader("Content-Type", "application/json")
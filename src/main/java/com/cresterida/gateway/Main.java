@@ -1,7 +1,9 @@
 package com.cresterida.gateway;
 
+import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Vertx;
 import io.vertx.core.VertxOptions;
+import io.vertx.core.json.JsonObject;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -10,6 +12,7 @@ import io.vertx.micrometer.MicrometerMetricsOptions;
 import io.vertx.micrometer.VertxPrometheusOptions;
 import io.vertx.micrometer.backends.BackendRegistries;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 public class Main {
     private static final Logger logger = LogManager.getLogger(Main.class);
@@ -27,13 +30,24 @@ public class Main {
                 .setPrometheusOptions(
                   new VertxPrometheusOptions().setEnabled(true)
                           .setStartEmbeddedServer(false))
-                .addLabels(Label.HTTP_METHOD, Label.HTTP_PATH, Label.HTTP_CODE);
+                .addLabels(Label.HTTP_METHOD, Label.HTTP_ROUTE, Label.HTTP_CODE);
 
-        vertx = Vertx.builder()
-                .with(new VertxOptions()
-                        .setMetricsOptions(metricsOptions))
+        VertxOptions options = new VertxOptions().setMetricsOptions(metricsOptions);
+        if (Boolean.parseBoolean(System.getenv("CLUSTER_ENABLED"))) {
+            // The cluster manager is found on the classpath, e.g. vertx-hazelcast from the cluster profile
+            try {
+                vertx = Vertx.builder().with(options).buildClustered()
+                        .toCompletionStage().toCompletableFuture().get();
+            } catch (Exception e) {
+                logger.error("Failed to join the cluster", e);
+                System.exit(1);
+            }
+        } else {
+            vertx = Vertx.builder()
+                    .with(options)
 
-                .build();
+                    .build();
+        }
 
         var registry = BackendRegistries.getDefaultNow();
 
@@ -54,7 +68,7 @@ public class Main {
             logger.info("No current Vert.x context");
         }
         // Deploy the API Gateway verticle
-        vertx.deployVerticle(new ApiGatewayVerticle())
+        vertx.deployVerticle(new ApiGatewayVerticle(), new DeploymentOptions().setConfig(gatewayConfig()))
                 .onSuccess(id -> logger.info("Gateway started successfully"))
                 .onFailure(err -> {
                     logger.error(err);
@@ -66,6 +80,46 @@ public class Main {
             printLogDetails();
 
     }
+    private static JsonObject gatewayConfig() {
+        JsonObject config = new JsonObject();
+        String grpcPort = System.getenv("GRPC_PORT");
+        if (grpcPort != null && !grpcPort.isBlank()) {
+            config.put("grpc.port", Integer.parseInt(grpcPort.trim()));
+        }
+        config.put("server.timing.enabled", Boolean.parseBoolean(System.getenv("SERVER_TIMING_ENABLED")));
+        config.put("shedding.enabled", Boolean.parseBoolean(System.getenv("LOAD_SHEDDING_ENABLED")));
+        putIfSet(config, "shedding.eventLoopLagMillis", "LOAD_SHEDDING_LAG_MILLIS", Long::parseLong);
+        putIfSet(config, "shedding.workerQueueDepth", "LOAD_SHEDDING_QUEUE_DEPTH", Integer::parseInt);
+        putIfSet(config, "shedding.ratio", "LOAD_SHEDDING_RATIO", Double::parseDouble);
+        putIfSet(config, "shedding.defaultPriority", "LOAD_SHEDDING_DEFAULT_PRIORITY", String::trim);
+        putIfSet(config, "compression.enabled", "COMPRESSION_ENABLED", Boolean::parseBoolean);
+        putIfSet(config, "compression.level", "COMPRESSION_LEVEL", Integer::parseInt);
+        putIfSet(config, "compression.minSize", "COMPRESSION_MIN_SIZE", Integer::parseInt);
+        putIfSet(config, "compression.codecs", "COMPRESSION_CODECS", String::trim);
+        putIfSet(config, "execution.strategy", "EXECUTION_STRATEGY", String::trim);
+        putIfSet(config, "execution.poolSize", "EXECUTION_POOL_SIZE", Integer::parseInt);
+        putIfSet(config, "services.dir", "SERVICES_DIR", String::trim);
+        putIfSet(config, "services.dir.debounceMillis", "SERVICES_DIR_DEBOUNCE_MILLIS", Long::parseLong);
+        putIfSet(config, "upstream.dns.refreshMillis", "UPSTREAM_DNS_REFRESH_MILLIS", Long::parseLong);
+        config.put("registry.replication.enabled", Boolean.parseBoolean(System.getenv("CLUSTER_ENABLED")));
+        putIfSet(config, "registry.replication.syncIntervalMillis", "REGISTRY_SYNC_INTERVAL_MILLIS", Long::parseLong);
+        putIfSet(config, "registry.compact.enabled", "REGISTRY_COMPACT_ENABLED", Boolean::parseBoolean);
+        putIfSet(config, "registry.compact.protoDir", "REGISTRY_PROTO_DIR", String::trim);
+        putIfSet(config, "accesslog.enabled", "ACCESS_LOG_ENABLED", Boolean::parseBoolean);
+        putIfSet(config, "accesslog.sampleRate", "ACCESS_LOG_SAMPLE_RATE", Double::parseDouble);
+        putIfSet(config, "accesslog.bufferSize", "ACCESS_LOG_BUFFER_SIZE", Integer::parseInt);
+        putIfSet(config, "accesslog.batchSize", "ACCESS_LOG_BATCH_SIZE", Integer::parseInt);
+        putIfSet(config, "accesslog.flushIntervalMillis", "ACCESS_LOG_FLUSH_INTERVAL_MILLIS", Long::parseLong);
+        return config;
+    }
+
+    private static void putIfSet(JsonObject config, String key, String env, Function<String, Object> parser) {
+        String value = System.getenv(env);
+        if (value != null && !value.isBlank()) {
+            config.put(key, parser.apply(value.trim()));
+        }
+    }
+
     private static void setupShutdownHook(Vertx vertx) {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             System.out.println("Initiating shutdown sequence...");
@@ -0,0 +1,54 @@
+package com.cresterida.gateway.accesslog;
+
+import io.vertx.core.json.JsonObject;
+
+import java.time.Instant;
+
+/**
+ * One finished request as captured on the event loop. Only raw values are taken there;
+ * formatting happens on the access log thread.
+ *
+ * @param upstreamNanos time spent in the upstream call, or -1 when the request never got there
+ * @param serviceId     the resolved service, or null when no service matched
+ * @param error         why the gateway failed the request, or null
+ * @param aborted       true when the client closed the connection before the response ended
+ */
+public record AccessLogEvent(
+    long timestampMillis,
+    String method,
+    String path,
+    int status,
+    long durationNanos,
+    long upstreamNanos,
+    String serviceId,
+    long bytesSent,
+    String remoteAddress,
+    String error,
+    boolean aborted) {
+
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject()
+            .put("timestamp", Instant.ofEpochMilli(timestampMillis).toString())
+            .put("method", method)
+            .put("path", path)
+            .put("status", status)
+            .put("durationMs", durationNanos / 1_000_000.0)
+            .put("bytesSent", bytesSent);
+        if (upstreamNanos >= 0) {
+            json.put("upstreamMs", upstreamNanos / 1_000_000.0);
+        }
+        if (serviceId != null) {
+            json.put("service", serviceId);
+        }
+        if (remoteAddress != null) {
+            json.put("remoteAddress", remoteAddress);
+        }
+        if (error != null) {
+            json.put("error", error);
+        }
+        if (aborted) {
+            json.put("aborted", true);
+        }
+        return json;
+    }
+}
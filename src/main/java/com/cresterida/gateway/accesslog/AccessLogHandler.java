@@ -0,0 +1,66 @@
+package com.cresterida.gateway.accesslog;
+
+import com.cresterida.gateway.metrics.RequestTimings;
+import com.cresterida.gateway.registry.CompiledService;
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.net.SocketAddress;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * First route of the router: notes when the request arrived and, once its response has been
+ * written (or the connection dropped), captures an {@link AccessLogEvent} for the access logger.
+ * Handlers that fail a request record why with {@link #recordError}, which replaces logging each
+ * expected failure from the event loop.
+ */
+public class AccessLogHandler implements Handler<RoutingContext> {
+    private static final String ERROR_KEY = "accessLogError";
+
+    private final AccessLogger accessLogger;
+
+    public AccessLogHandler(AccessLogger accessLogger) {
+        this.accessLogger = accessLogger;
+    }
+
+    /**
+     * Attaches a failure reason to the request's access log entry.
+     */
+    public static void recordError(RoutingContext ctx, String error) {
+        ctx.put(ERROR_KEY, error);
+    }
+
+    @Override
+    public void handle(RoutingContext ctx) {
+        if (accessLogger.isEnabled()) {
+            long start = System.nanoTime();
+            ctx.addEndHandler(ar -> {
+                int status = ctx.response().getStatusCode();
+                boolean aborted = ar.failed();
+                if (accessLogger.sample(status, aborted)) {
+                    accessLogger.log(event(ctx, start, status, aborted));
+                }
+            });
+        }
+        ctx.next();
+    }
+
+    private static AccessLogEvent event(RoutingContext ctx, long start, int status, boolean aborted) {
+        long now = System.nanoTime();
+        HttpServerRequest request = ctx.request();
+        RequestTimings timings = ctx.get(RequestTimings.CONTEXT_KEY);
+        CompiledService service = ctx.get("service");
+        SocketAddress remote = request.remoteAddress();
+        return new AccessLogEvent(
+            System.currentTimeMillis(),
+            request.method().name(),
+            request.path(),
+            status,
+            now - start,
+            timings != null && timings.isTouched(RequestTimings.Stage.UPSTREAM) ? timings.get(RequestTimings.Stage.UPSTREAM) : -1,
+            service != null ? service.getId() : null,
+            ctx.response().bytesWritten(),
+            remote != null ? remote.hostAddress() : null,
+            ctx.get(ERROR_KEY),
+            aborted);
+    }
+}
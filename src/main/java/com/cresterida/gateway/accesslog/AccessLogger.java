@@ -0,0 +1,148 @@
+package com.cresterida.gateway.accesslog;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.vertx.core.json.JsonObject;
+import io.vertx.micrometer.backends.BackendRegistries;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes one JSON line per request to the {@value #LOGGER_NAME} logger without ever blocking the
+ * caller. Events go into a bounded lock-free ring buffer; a single daemon thread drains it in
+ * batches, formats them and hands each batch to log4j as one message, so the appender's lock and
+ * file I/O are paid once per batch and never on an event loop. When the buffer is full the event
+ * is dropped and counted in {@code gateway_access_log_dropped}.
+ *
+ * <p>With {@code accesslog.sampleRate} below 1 only that share of successful requests is logged;
+ * server errors and aborted requests are always kept.
+ */
+public class AccessLogger {
+    public static final String LOGGER_NAME = "gateway.access";
+    private static final Logger ACCESS = LogManager.getLogger(LOGGER_NAME);
+    private static final Logger LOGGER = LogManager.getLogger(AccessLogger.class);
+    private static final long STOP_TIMEOUT_MILLIS = 5000;
+
+    private final boolean enabled;
+    private final double sampleRate;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final MpscRingBuffer<AccessLogEvent> buffer;
+    private final MeterRegistry registry;
+    private final List<Meter> meters = new ArrayList<>();
+    private final Counter droppedCounter;
+    private final StringBuilder batch = new StringBuilder(16 * 1024);
+    private volatile boolean running;
+    private Thread writer;
+
+    public AccessLogger(JsonObject config) {
+        this.enabled = config.getBoolean("accesslog.enabled", true);
+        this.sampleRate = Math.max(0, Math.min(1, config.getDouble("accesslog.sampleRate", 1.0)));
+        this.batchSize = Math.max(1, config.getInteger("accesslog.batchSize", 256));
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(
+            Math.max(1, config.getLong("accesslog.flushIntervalMillis", 100L)));
+        this.buffer = enabled ? new MpscRingBuffer<>(config.getInteger("accesslog.bufferSize", 8192)) : null;
+
+        this.registry = enabled ? BackendRegistries.getDefaultNow() : null;
+        if (registry != null) {
+            this.droppedCounter = Counter.builder("gateway_access_log_dropped").register(registry);
+            meters.add(droppedCounter);
+            meters.add(Gauge.builder("gateway_access_log_pending", buffer, MpscRingBuffer::size)
+                .register(registry));
+        } else {
+            this.droppedCounter = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns whether a request with this outcome should be logged. Checked before the event is
+     * built, so unsampled requests cost a random draw and nothing else.
+     */
+    public boolean sample(int status, boolean aborted) {
+        return enabled && (sampleRate >= 1 || status >= 500 || aborted
+            || ThreadLocalRandom.current().nextDouble() < sampleRate);
+    }
+
+    /**
+     * Queues the event, or drops it when the buffer is full. Never blocks.
+     */
+    public void log(AccessLogEvent event) {
+        if (!buffer.offer(event) && droppedCounter != null) {
+            droppedCounter.increment();
+        }
+    }
+
+    public synchronized void start() {
+        if (!enabled || writer != null) {
+            return;
+        }
+        running = true;
+        writer = new Thread(this::run, "gateway-access-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Stops the writer thread after it has written everything queued so far.
+     */
+    public synchronized void stop() {
+        if (writer != null) {
+            running = false;
+            LockSupport.unpark(writer);
+            try {
+                writer.join(STOP_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writer = null;
+        }
+        if (registry != null) {
+            meters.forEach(registry::remove);
+            meters.clear();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                if (flush() < batchSize) {
+                    LockSupport.parkNanos(flushIntervalNanos);
+                }
+            } catch (RuntimeException e) {
+                LOGGER.warn("Failed to write access log batch", e);
+            }
+        }
+        while (flush() > 0) {
+            // drain what was queued before stop
+        }
+    }
+
+    // Writes up to one batch as a single multi-line message and returns how many events it held
+    private int flush() {
+        batch.setLength(0);
+        int drained = buffer.drain(this::append, batchSize);
+        if (drained > 0) {
+            ACCESS.info(batch.toString());
+        }
+        return drained;
+    }
+
+    private void append(AccessLogEvent event) {
+        if (batch.length() > 0) {
+            batch.append('\n');
+        }
+        batch.append(event.toJson().encode());
+    }
+}
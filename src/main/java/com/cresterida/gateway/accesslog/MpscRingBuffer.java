@@ -0,0 +1,73 @@
+package com.cresterida.gateway.accesslog;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded lock-free queue for many producers and a single consumer. Producers claim a sequence
+ * with a CAS on the tail and publish into the slot with an ordered store; when the buffer is
+ * full {@link #offer} fails immediately instead of waiting, so a producer never blocks.
+ *
+ * <p>The consumer frees a slot before moving the head past it, so a producer that sees room
+ * behind the head always finds its slot empty. A claimed slot that is not published yet reads
+ * as null and ends the current drain; it is picked up on the next one.
+ */
+final class MpscRingBuffer<E> {
+    private final AtomicReferenceArray<E> slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    // Written only by the consumer
+    private volatile long head;
+
+    MpscRingBuffer(int requestedCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(2, requestedCapacity - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Adds the element, or returns false when the buffer is full. Safe from any thread.
+     */
+    boolean offer(E element) {
+        long current;
+        do {
+            current = tail.get();
+            if (current - head > mask) {
+                return false;
+            }
+        } while (!tail.compareAndSet(current, current + 1));
+        slots.lazySet((int) (current & mask), element);
+        return true;
+    }
+
+    /**
+     * Hands up to {@code limit} elements to the consumer in FIFO order and returns how many
+     * there were. Must only be called from the consumer thread.
+     */
+    int drain(Consumer<E> consumer, int limit) {
+        long current = head;
+        int drained = 0;
+        while (drained < limit) {
+            int index = (int) (current & mask);
+            E element = slots.get(index);
+            if (element == null) {
+                break;
+            }
+            slots.lazySet(index, null);
+            current++;
+            head = current;
+            consumer.accept(element);
+            drained++;
+        }
+        return drained;
+    }
+
+    int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+}
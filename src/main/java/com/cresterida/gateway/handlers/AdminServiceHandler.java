@@ -2,11 +2,22 @@ package com.cresterida.gateway.handlers;
 
 import com.cresterida.gateway.model.ServiceDefinition;
 import com.cresterida.gateway.model.ServiceInstance;
-import com.cresterida.gateway.ratelimit.TokenBucket;
+import com.cresterida.gateway.ratelimit.GcraRateLimiter;
+import com.cresterida.gateway.ratelimit.RateLimiter;
+import com.cresterida.gateway.registry.CompiledService;
+import com.cresterida.gateway.registry.ServiceCompiler;
 import com.cresterida.gateway.registry.ServiceRegistry;
+import com.cresterida.gateway.registry.ServiceWarmer;
 import com.cresterida.gateway.util.CounterMetrics;
+import com.cresterida.gateway.util.ExecutionStrategy;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.Router;
@@ -14,19 +25,53 @@ import io.vertx.ext.web.RoutingContext;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 public class AdminServiceHandler {
+    public static final String BULK_PATH = "/admin/services:bulk";
+    private static final String NDJSON = "application/x-ndjson";
+    // Compiling runs protoc, so a bulk import gets its own pool instead of tying up the shared workers
+    private static final String BULK_POOL_NAME = "gateway-bulk-compile";
+    private static final int BULK_POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
+    // Definitions per chunk written by the streaming export
+    private static final int EXPORT_CHUNK = 64;
+    private static final int MAX_PAGE_SIZE = 1000;
+
     private final ServiceRegistry registry;
-    private final Map<String, TokenBucket> limiters;
+    private final Map<String, RateLimiter> limiters;
+    private final ExecutionStrategy execution;
+    private final ServiceWarmer warmer;
+    private final ServiceListing listing;
+    private WorkerExecutor bulkExecutor;
+
+    // One bulk import item: the parsed definition, or why its line could not be parsed
+    private record BulkItem(int index, JsonObject json, String error) {
+    }
+
+    private record BulkResult(int index, String id, CompiledService compiled, String error) {
+    }
 
     private final Logger logger = LogManager.getLogger(AdminServiceHandler.class);
-    public AdminServiceHandler(ServiceRegistry registry, Map<String, TokenBucket> limiters) {
+    public AdminServiceHandler(ServiceRegistry registry, Map<String, RateLimiter> limiters, ExecutionStrategy execution) {
+        this(registry, limiters, execution, ServiceWarmer.NONE);
+    }
+
+    public AdminServiceHandler(ServiceRegistry registry, Map<String, RateLimiter> limiters, ExecutionStrategy execution,
+                               ServiceWarmer warmer) {
         this.registry = registry;
         this.limiters = limiters;
+        this.execution = execution;
+        this.warmer = warmer;
+        this.listing = new ServiceListing(registry);
     }
 
     public Handler<RoutingContext> withIncrementCounter(Handler<RoutingContext> handler) {
@@ -35,26 +80,142 @@ public class AdminServiceHandler {
 
 
     public void handleAddService(RoutingContext ctx) {
+        ServiceDefinition def;
         try {
             JsonObject body = ctx.body().asJsonObject();
-            ServiceDefinition def = ServiceDefinition.fromJson(body);
-
-            registry.add(def);
-            limiters.put(def.getId(), new TokenBucket(def.getBurstCapacity(), def.getRateLimitPerSecond()));
-            ctx.response().setStatusCode(201)
-                    .putHeader(HttpHeaders.CONTENT_TYPE, "application/json")
-                    .end(def.toJson().encode());
+            def = ServiceDefinition.fromJson(body);
         } catch (Exception e) {
             fail(ctx, 400, e.getMessage());
+            return;
         }
+
+        // Descriptors and mapping plans are compiled once here, off the event loop, and the
+        // upstream is warmed up before the service becomes routable
+        execution.execute(() -> ServiceCompiler.compile(def, registry.getProtoStore()))
+            .compose(compiled -> warmer.warmUp(compiled).map(compiled))
+            .onSuccess(compiled -> {
+                registry.add(compiled);
+                limiters.put(def.getId(), GcraRateLimiter.forService(def));
+                // The request's definition, which still holds its proto source in memory
+                ctx.response().setStatusCode(201)
+                        .putHeader(HttpHeaders.CONTENT_TYPE, "application/json")
+                        .end(def.toJson().encode());
+            })
+            .onFailure(e -> fail(ctx, 400, e.getMessage()));
     }
 
+    /**
+     * Lists the registered services by id, as a JSON array. {@code fields} keeps only the given
+     * top-level fields of each definition and {@code exclude} drops the given ones, e.g.
+     * {@code exclude=protoDefinition}. With {@code limit}, at most that many services are listed,
+     * starting after the id in {@code after}, and a {@code Link} header points to the next page.
+     *
+     * <p>The response carries an ETag that changes with the registry and is specific to the field
+     * selection and the page, and a request whose {@code If-None-Match} still matches it gets a 304
+     * without a body. The listing is cached per registry version, see {@link ServiceListing}.
+     */
     public void handleListServices(RoutingContext ctx) {
+        ServiceListing.Selection selection;
+        int limit;
+        try {
+            selection = selection(ctx);
+            limit = limit(ctx);
+        } catch (IllegalArgumentException e) {
+            fail(ctx, 400, e.getMessage());
+            return;
+        }
+
+        ServiceListing.Version current = listing.current();
+        String after = ctx.request().getParam("after");
+        String etag = current.etag(selection, after, limit);
+        HttpServerResponse response = ctx.response()
+            .putHeader(HttpHeaders.ETAG, etag)
+            .putHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        if (matches(ctx.request().getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            response.setStatusCode(304).end();
+            return;
+        }
+        // Proto sources a compact registry has not listed yet are read from disk off the event loop
+        Future<ServiceListing.Page> paged = current.readsProtoSources(selection)
+            ? execution.execute(() -> current.page(selection, after, limit))
+            : Future.succeededFuture(current.page(selection, after, limit));
+        paged.onSuccess(page -> {
+            if (page.nextAfter() != null) {
+                response.putHeader("Link", "<" + nextPage(ctx, limit, page.nextAfter()) + ">; rel=\"next\"");
+            }
+            response.putHeader(HttpHeaders.CONTENT_TYPE, "application/json").end(page.body());
+        }).onFailure(e -> fail(ctx, 500, e.getMessage()));
+    }
+
+    private static ServiceListing.Selection selection(RoutingContext ctx) {
+        Set<String> include = fieldList(ctx.request().getParam("fields"));
+        Set<String> exclude = fieldList(ctx.request().getParam("exclude"));
+        if (include == null && exclude == null) {
+            return ServiceListing.Selection.ALL;
+        }
+        return new ServiceListing.Selection(include, exclude == null ? Set.of() : exclude);
+    }
+
+    // Null when the parameter is absent
+    private static Set<String> fieldList(String param) {
+        if (param == null) {
+            return null;
+        }
+        Set<String> fields = new LinkedHashSet<>();
+        for (String field : param.split(",")) {
+            if (!field.isBlank()) {
+                fields.add(field.trim());
+            }
+        }
+        return fields;
+    }
+
+    private static int limit(RoutingContext ctx) {
+        String param = ctx.request().getParam("limit");
+        if (param == null) {
+            return Integer.MAX_VALUE;
+        }
+        int limit;
+        try {
+            limit = Integer.parseInt(param);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("limit must be a number: " + param);
+        }
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return limit;
+    }
+
+    // The same request with the cursor moved on
+    private static String nextPage(RoutingContext ctx, int limit, String after) {
+        StringBuilder uri = new StringBuilder(ctx.request().path())
+            .append("?limit=").append(limit)
+            .append("&after=").append(URLEncoder.encode(after, StandardCharsets.UTF_8));
+        for (String param : List.of("fields", "exclude")) {
+            String value = ctx.request().getParam(param);
+            if (value != null) {
+                uri.append('&').append(param).append('=').append(URLEncoder.encode(value, StandardCharsets.UTF_8));
+            }
+        }
+        return uri.toString();
+    }
 
-        List<ServiceDefinition> list = registry.list();
-        JsonArray arr = new JsonArray();
-        list.forEach(sd -> arr.add(sd.toJson()));
-        ctx.response().putHeader(HttpHeaders.CONTENT_TYPE, "application/json").end(arr.encode());
+    // If-None-Match holds a list of possibly weak tags, or *
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public void handleGetService(RoutingContext ctx) {
@@ -62,37 +223,44 @@ public class AdminServiceHandler {
         logger.info("Fetching service with id: {}", id);
 
         registry.getById(id)
-                .ifPresentOrElse(sd -> ctx.response()
-                        .putHeader(HttpHeaders.CONTENT_TYPE, "application/json")
-                        .end(sd.toJson().encode()),
+                .ifPresentOrElse(sd -> encode(sd)
+                        .onSuccess(json -> ctx.response()
+                            .putHeader(HttpHeaders.CONTENT_TYPE, "application/json")
+                            .end(json))
+                        .onFailure(e -> fail(ctx, 500, e.getMessage())),
                     () -> fail(ctx, 404, "Service not found"));
     }
 
     public void handleUpdateService(RoutingContext ctx) {
         String id = ctx.pathParam("id");
+        ServiceDefinition incoming;
         try {
+            // The whole definition is replaced; the id in the path wins over one in the body
             JsonObject body = ctx.body().asJsonObject();
-            ServiceDefinition incoming = new ServiceDefinition.Builder()
-                .setId(id)
-                .setName(body.getString("name"))
-                .setPackage(body.getString("packageName"))
-                .setVersion(body.getString("version"))
-                .setProtoDefinition(body.getString("protoDefinition"))
-                .setBurstCapacity(body.getInteger("burstCapacity", 100))
-                .setRateLimitPerSecond(body.getInteger("rateLimitPerSecond", 10))
-                .build();
-
-            Optional<ServiceDefinition> updated = registry.update(id, incoming);
-            if (updated.isEmpty()) {
-                fail(ctx, 404, "Service not found");
-                return;
-            }
-            ServiceDefinition def = updated.get();
-            limiters.put(def.getId(), new TokenBucket(def.getBurstCapacity(), def.getRateLimitPerSecond()));
-            ctx.response().putHeader(HttpHeaders.CONTENT_TYPE, "application/json").end(def.toJson().encode());
+            incoming = ServiceDefinition.fromJson(body.copy().put("id", id));
         } catch (Exception e) {
             fail(ctx, 400, e.getMessage());
+            return;
+        }
+        if (registry.getById(id).isEmpty()) {
+            fail(ctx, 404, "Service not found");
+            return;
         }
+
+        execution.execute(() -> ServiceCompiler.compile(incoming, registry.getProtoStore()))
+            .compose(compiled -> warmer.warmUp(compiled).map(compiled))
+            .onSuccess(compiled -> {
+                Optional<ServiceDefinition> updated = registry.update(id, compiled);
+                if (updated.isEmpty()) {
+                    fail(ctx, 404, "Service not found");
+                    return;
+                }
+                ServiceDefinition def = updated.get();
+                limiters.put(def.getId(), GcraRateLimiter.forService(def));
+                // From the request rather than the registered copy, which may have spilled its proto source
+                ctx.response().putHeader(HttpHeaders.CONTENT_TYPE, "application/json").end(incoming.toJson().encode());
+            })
+            .onFailure(e -> fail(ctx, 400, e.getMessage()));
     }
 
     public void handleDeleteService(RoutingContext ctx) {
@@ -106,6 +274,237 @@ public class AdminServiceHandler {
         }
     }
 
+    /**
+     * Registers many services at once. The body is either a JSON array of definitions or, with
+     * {@code Content-Type: application/x-ndjson}, one definition per line. Definitions are compiled
+     * in parallel on a bounded worker pool and every one that compiles is published in a single
+     * registry swap; the others are reported per item and leave the registry untouched.
+     */
+    public void handleBulkImport(RoutingContext ctx) {
+        Buffer body = ctx.body().buffer();
+        if (body == null || body.length() == 0) {
+            fail(ctx, 400, "Request body is empty");
+            return;
+        }
+        String contentType = ctx.request().getHeader(HttpHeaders.CONTENT_TYPE);
+        boolean ndjson = contentType != null && contentType.startsWith(NDJSON);
+        WorkerExecutor executor = bulkExecutor(ctx.vertx());
+
+        executor.<List<BulkItem>>executeBlocking(() -> parseBulk(body, ndjson), false)
+            .compose(items -> compileAll(executor, items))
+            .compose(this::warmUpAll)
+            .onSuccess(results -> publish(ctx, results))
+            .onFailure(e -> fail(ctx, 400, e.getMessage()));
+    }
+
+    /**
+     * Streams every registered definition, as a JSON array or as NDJSON when the client accepts
+     * {@code application/x-ndjson}. The definitions are taken from one registry snapshot and
+     * encoded a chunk at a time, following the connection's back-pressure.
+     */
+    public void handleBulkExport(RoutingContext ctx) {
+        String accept = ctx.request().getHeader(HttpHeaders.ACCEPT);
+        boolean ndjson = accept != null && accept.contains(NDJSON);
+        HttpServerResponse response = ctx.response()
+            .setChunked(true)
+            .putHeader(HttpHeaders.CONTENT_TYPE, ndjson ? NDJSON : "application/json");
+        if (!ndjson) {
+            response.write("[");
+        }
+        writeExport(response, registry.list().iterator(), ndjson, 0);
+    }
+
+    private synchronized WorkerExecutor bulkExecutor(Vertx vertx) {
+        if (bulkExecutor == null) {
+            bulkExecutor = vertx.createSharedWorkerExecutor(BULK_POOL_NAME, BULK_POOL_SIZE);
+        }
+        return bulkExecutor;
+    }
+
+    /**
+     * Closes the bulk import pool, if a bulk import created it. Called when the verticle stops.
+     */
+    public synchronized Future<Void> close() {
+        if (bulkExecutor == null) {
+            return Future.succeededFuture();
+        }
+        WorkerExecutor executor = bulkExecutor;
+        bulkExecutor = null;
+        return executor.close();
+    }
+
+    private static List<BulkItem> parseBulk(Buffer body, boolean ndjson) {
+        List<BulkItem> items = new ArrayList<>();
+        if (ndjson) {
+            String[] lines = body.toString().split("\\r?\\n");
+            for (String line : lines) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                int index = items.size();
+                try {
+                    items.add(new BulkItem(index, new JsonObject(line), null));
+                } catch (Exception e) {
+                    items.add(new BulkItem(index, null, "Invalid JSON: " + e.getMessage()));
+                }
+            }
+        } else {
+            JsonArray array = body.toJsonArray();
+            for (int i = 0; i < array.size(); i++) {
+                Object value = array.getValue(i);
+                items.add(value instanceof JsonObject json
+                    ? new BulkItem(i, json, null)
+                    : new BulkItem(i, null, "Expected a JSON object"));
+            }
+        }
+        if (items.isEmpty()) {
+            throw new IllegalArgumentException("No service definitions in request body");
+        }
+        return items;
+    }
+
+    private Future<List<BulkResult>> compileAll(WorkerExecutor executor, List<BulkItem> items) {
+        List<Future<BulkResult>> compiled = new ArrayList<>(items.size());
+        for (BulkItem item : items) {
+            compiled.add(executor.executeBlocking(() -> compile(item), false));
+        }
+        return Future.all(compiled).map(CompositeFuture::<BulkResult>list);
+    }
+
+    // Warms up every compiled service in parallel; warm-ups never fail
+    private Future<List<BulkResult>> warmUpAll(List<BulkResult> results) {
+        List<Future<Void>> warmUps = new ArrayList<>();
+        for (BulkResult result : results) {
+            if (result.compiled() != null) {
+                warmUps.add(warmer.warmUp(result.compiled()));
+            }
+        }
+        return Future.join(warmUps).transform(ar -> Future.succeededFuture(results));
+    }
+
+    // Never fails: a definition that does not parse or compile becomes an error result
+    private BulkResult compile(BulkItem item) {
+        if (item.error() != null) {
+            return new BulkResult(item.index(), null, null, item.error());
+        }
+        String id = item.json().getString("id");
+        try {
+            return new BulkResult(item.index(), id, ServiceCompiler.compile(ServiceDefinition.fromJson(item.json()), registry.getProtoStore()), null);
+        } catch (Exception e) {
+            return new BulkResult(item.index(), id, null, e.getMessage());
+        }
+    }
+
+    private void publish(RoutingContext ctx, List<BulkResult> results) {
+        List<CompiledService> accepted = new ArrayList<>();
+        Set<String> ids = new HashSet<>();
+        JsonArray report = new JsonArray();
+        int failed = 0;
+        for (BulkResult result : results) {
+            JsonObject entry = new JsonObject().put("index", result.index());
+            if (result.id() != null) {
+                entry.put("id", result.id());
+            }
+            String error = result.error();
+            if (error == null && !ids.add(result.id())) {
+                error = "Duplicate service id in request";
+            }
+            if (error != null) {
+                failed++;
+                report.add(entry.put("status", "failed").put("error", error));
+                continue;
+            }
+            accepted.add(result.compiled());
+            report.add(entry.put("status", registry.getCompiled(result.id()).isPresent() ? "replaced" : "created"));
+        }
+
+        registry.addAll(accepted);
+        for (CompiledService service : accepted) {
+            limiters.put(service.getId(), GcraRateLimiter.forService(service.getDefinition()));
+        }
+        logger.info("Bulk import registered {} services, {} failed", accepted.size(), failed);
+
+        int status = accepted.isEmpty() ? 400 : 200;
+        ctx.response().setStatusCode(status)
+            .putHeader(HttpHeaders.CONTENT_TYPE, "application/json")
+            .end(new JsonObject()
+                .put("imported", accepted.size())
+                .put("failed", failed)
+                .put("results", report)
+                .encode());
+    }
+
+    private void writeExport(HttpServerResponse response, Iterator<ServiceDefinition> definitions, boolean ndjson, int written) {
+        while (definitions.hasNext()) {
+            if (response.closed()) {
+                return;
+            }
+            List<ServiceDefinition> batch = new ArrayList<>(EXPORT_CHUNK);
+            boolean spilled = false;
+            while (batch.size() < EXPORT_CHUNK && definitions.hasNext()) {
+                ServiceDefinition definition = definitions.next();
+                spilled |= definition.getProtoSource() != null;
+                batch.add(definition);
+            }
+            int first = written;
+            written += batch.size();
+            if (spilled) {
+                // Proto sources are read back from disk off the event loop; the export goes on once they are in
+                int resumeAt = written;
+                execution.execute(() -> exportChunk(batch, ndjson, first))
+                    .onSuccess(chunk -> {
+                        if (!response.closed()) {
+                            response.write(chunk);
+                            resumeExport(response, definitions, ndjson, resumeAt);
+                        }
+                    })
+                    .onFailure(e -> {
+                        logger.warn("Export failed after {} definitions: {}", first, e.getMessage());
+                        response.reset();
+                    });
+                return;
+            }
+            response.write(exportChunk(batch, ndjson, first));
+            if (response.writeQueueFull()) {
+                resumeExport(response, definitions, ndjson, written);
+                return;
+            }
+        }
+        response.end(ndjson ? "" : "]");
+    }
+
+    // Goes on right away, or once the connection has drained when its write queue is full
+    private void resumeExport(HttpServerResponse response, Iterator<ServiceDefinition> definitions, boolean ndjson, int written) {
+        if (response.writeQueueFull()) {
+            response.drainHandler(v -> writeExport(response, definitions, ndjson, written));
+        } else {
+            writeExport(response, definitions, ndjson, written);
+        }
+    }
+
+    // Definitions from position first on in the export
+    private static Buffer exportChunk(List<ServiceDefinition> batch, boolean ndjson, int first) {
+        Buffer chunk = Buffer.buffer();
+        for (int i = 0; i < batch.size(); i++) {
+            if (!ndjson && first + i > 0) {
+                chunk.appendString(",");
+            }
+            chunk.appendBuffer(batch.get(i).toJson().toBuffer());
+            if (ndjson) {
+                chunk.appendString("\n");
+            }
+        }
+        return chunk;
+    }
+
+    // Serializes on the execution strategy when the proto source has to be read back from disk
+    private Future<Buffer> encode(ServiceDefinition definition) {
+        if (definition.getProtoSource() == null) {
+            return Future.succeededFuture(definition.toJson().toBuffer());
+        }
+        return execution.execute(() -> definition.toJson().toBuffer());
+    }
+
     private void fail(RoutingContext ctx, int status, String message) {
         JsonObject err = new JsonObject()
                 .put("error", message)
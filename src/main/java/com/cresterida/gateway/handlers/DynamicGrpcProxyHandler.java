@@ -1,35 +1,81 @@
 package com.cresterida.gateway.handlers;
 
-import com.cresterida.gateway.model.EndpointDefinition;
-import com.cresterida.gateway.model.ServiceDefinition;
+import com.cresterida.gateway.accesslog.AccessLogHandler;
+import com.cresterida.gateway.metrics.RequestTimings;
+import com.cresterida.gateway.ratelimit.Bulkhead;
+import com.cresterida.gateway.registry.CompiledEndpoint;
+import com.cresterida.gateway.registry.CompiledService;
 import com.cresterida.gateway.util.DynamicGrpcInvoker;
-import com.cresterida.gateway.util.ProtoDescriptorBuilder;
+import com.cresterida.gateway.util.ExecutionStrategy;
+import com.cresterida.gateway.util.GrpcChannelPool;
+import com.cresterida.gateway.util.RequestDeadline;
+import com.cresterida.gateway.util.StreamingJsonEncoder;
 import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import io.grpc.Context;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.RoutingContext;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.util.Map;
+import java.util.concurrent.TimeoutException;
 
 public class DynamicGrpcProxyHandler implements Handler<RoutingContext> {
     private static final Logger LOGGER = LogManager.getLogger(DynamicGrpcProxyHandler.class);
     private static final String CONTENT_TYPE = "Content-Type";
+    private static final String ACCEPT = "Accept";
     private static final String APPLICATION_JSON = "application/json";
+    private static final String APPLICATION_PROTOBUF = "application/x-protobuf";
+    private static final String APPLICATION_PROTOBUF_ALT = "application/protobuf";
     private static final int DEFAULT_TIMEOUT_SECONDS = 30;
     private static final int HTTP_NOT_FOUND = 404;
     private static final int HTTP_SERVER_ERROR = 500;
+    private static final int HTTP_SERVICE_UNAVAILABLE = 503;
+    private static final int HTTP_GATEWAY_TIMEOUT = 504;
+    // JSON responses larger than this are sent chunked, see streamJson
+    private static final int JSON_CHUNK_SIZE = 64 * 1024;
 
     private final DynamicGrpcInvoker grpcInvoker;
 
     public DynamicGrpcProxyHandler(Vertx vertx) {
-        this.grpcInvoker = new DynamicGrpcInvoker(vertx, DEFAULT_TIMEOUT_SECONDS);
+        this(vertx, new GrpcChannelPool(DEFAULT_TIMEOUT_SECONDS));
+    }
+
+    public DynamicGrpcProxyHandler(Vertx vertx, GrpcChannelPool channelPool) {
+        this.grpcInvoker = new DynamicGrpcInvoker(vertx, channelPool);
+    }
+
+    public DynamicGrpcProxyHandler(Vertx vertx, GrpcChannelPool channelPool, ExecutionStrategy execution) {
+        this.grpcInvoker = new DynamicGrpcInvoker(vertx, channelPool, execution);
+    }
+
+    // See DynamicGrpcInvoker#warmUp
+    public Future<Void> warmUp(CompiledService service) {
+        return grpcInvoker.warmUp(service);
+    }
+
+    // gRPC calls waiting for a thread to run on
+    public int getQueuedCalls() {
+        return grpcInvoker.getQueuedCalls();
     }
 
     private void handleError(RoutingContext ctx, int statusCode, String message) {
-        LOGGER.error("Handling error: {} - {}", statusCode, message);
+        // Client and upstream failures are reported by the access log; only gateway faults are logged here
+        if (statusCode >= HTTP_SERVER_ERROR && statusCode != HTTP_SERVICE_UNAVAILABLE && statusCode != HTTP_GATEWAY_TIMEOUT) {
+            LOGGER.error("Handling error: {} - {}", statusCode, message);
+        } else {
+            LOGGER.debug("Handling error: {} - {}", statusCode, message);
+        }
+        AccessLogHandler.recordError(ctx, message);
         ctx.response()
             .setStatusCode(statusCode)
             .putHeader(CONTENT_TYPE, APPLICATION_JSON)
@@ -42,84 +88,216 @@ public class DynamicGrpcProxyHandler implements Handler<RoutingContext> {
 
     @Override
     public void handle(RoutingContext ctx) {
-        ServiceDefinition sd = ctx.get("service");
-        if (sd == null) {
+        CompiledService service = ctx.get("service");
+        if (service == null) {
             ctx.next();
             return;
         }
 
+        RequestTimings timings = RequestTimings.of(ctx);
         try {
-            // Extract method name from path
+            long stageStart = System.nanoTime();
+            // Extract endpoint name from path
             String path = ctx.request().path();
-            String methodName = path.substring(path.lastIndexOf('/') + 1);
+            String endpointName = path.substring(path.lastIndexOf('/') + 1);
 
-            // Find matching endpoint
-            Map<String, EndpointDefinition> endpoints = sd.getEndpoints();
-            EndpointDefinition endpoint = endpoints.get(methodName);
+            // Find matching endpoint; descriptors and mappings were compiled at registration
+            CompiledEndpoint endpoint = service.getEndpoint(endpointName);
             if (endpoint == null) {
-                handleError(ctx, HTTP_NOT_FOUND, "Endpoint not found: " + methodName);
+                handleError(ctx, HTTP_NOT_FOUND, "Endpoint not found: " + endpointName);
                 return;
             }
+            stageStart = timings.mark(RequestTimings.Stage.DESCRIPTOR, stageStart);
 
-            // Use the shared builder to get the descriptors
-            String serviceName = sd.getName();
-            ProtoDescriptorBuilder.BuildResult buildResult = ProtoDescriptorBuilder.buildFromProtoDefinition(
-                sd.getId(),
-                sd.getProtoDefinition()
-            );
-
-            Descriptors.FileDescriptor mainFileDescriptor = buildResult.getFileDescriptor();
+            // Protobuf bodies are already in the proto shape, so field mappings do not apply to them
+            boolean protobufRequest = isProtobuf(ctx.request().getHeader(CONTENT_TYPE));
+            boolean protobufResponse = acceptsProtobuf(ctx.request().getHeader(ACCEPT));
 
-            // Find the ServiceDescriptor
-            Descriptors.ServiceDescriptor serviceDescriptor = mainFileDescriptor.findServiceByName(serviceName);
-            if (serviceDescriptor == null) {
-                handleError(ctx, HTTP_SERVER_ERROR, "Failed to find service " + serviceName);
-                return;
-            }
-
-            // Verify the method exists
-            if (serviceDescriptor.findMethodByName(endpoint.getMethodName()) == null) {
-                handleError(ctx, HTTP_SERVER_ERROR, "Method not found in service: " + endpoint.getMethodName());
-                return;
-            }
+            JsonObject requestBody = null;
+            if (!protobufRequest) {
+                // Get request body
+                requestBody = ctx.body().asJsonObject();
+                if (requestBody == null) {
+                    requestBody = new JsonObject(); // Treat empty body as empty JSON
+                }
 
-            // Get request body
-            JsonObject requestBody = ctx.body().asJsonObject();
-            if (requestBody == null) {
-                requestBody = new JsonObject(); // Treat empty body as empty JSON
-            }
+                // Map the client payload onto the proto input shape
+                requestBody = endpoint.getInputPlan().apply(requestBody);
 
-            // Validate basic request
-            Descriptors.MethodDescriptor methodDesc = serviceDescriptor.findMethodByName(endpoint.getMethodName());
-            if (!requestBody.isEmpty() && endpoint.getInputMapping().isEmpty()) {
-                // Only validate fields if we have a request body and no explicit mapping
+                // Validate basic request
+                Descriptors.Descriptor inputType = endpoint.getInputType();
                 for (String fieldName : requestBody.fieldNames()) {
-                    if (methodDesc.getInputType().findFieldByName(fieldName) == null) {
+                    if (inputType.findFieldByName(fieldName) == null) {
                         handleError(ctx, 400, String.format(
                             "Invalid field '%s'. Available fields are: %s",
                             fieldName,
-                            methodDesc.getInputType().getFields().stream()
+                            inputType.getFields().stream()
                                 .map(Descriptors.FieldDescriptor::getName)
                                 .toList()
                         ));
                         return;
                     }
                 }
+                timings.mark(RequestTimings.Stage.REQUEST_TRANSCODE, stageStart);
+            }
+
+            RequestDeadline deadline = RequestDeadline.of(ctx.request(), timings.getStartNanos(), endpoint.getTimeoutMillis());
+            if (deadline.isExpired()) {
+                handleError(ctx, HTTP_GATEWAY_TIMEOUT, "Request deadline expired before the upstream call");
+                return;
             }
 
-            // Make the gRPC call using DynamicGrpcInvoker
-            grpcInvoker.invoke(sd, endpoint.getMethodName(), requestBody)
-                .onSuccess(response -> ctx.response()
-                    .putHeader(CONTENT_TYPE, APPLICATION_JSON)
-                    .end(response.encode()))
-                .onFailure(e -> {
-                    LOGGER.error("Error processing gRPC request", e);
-                    handleError(ctx, HTTP_SERVER_ERROR, "Error processing request: " + e.getMessage());
-                });
+            // Cancelled when the response ends, or early when the client connection closes first
+            Context.CancellableContext callContext = Context.current().withCancellation();
+            ctx.addEndHandler(ar -> callContext.cancel(
+                ar.failed() ? Status.CANCELLED.withDescription("Client closed the connection").asRuntimeException() : null));
+
+            if (!protobufRequest && !protobufResponse) {
+                // Make the gRPC call using DynamicGrpcInvoker
+                if (endpoint.getOutputPlan().isIdentity()) {
+                    grpcInvoker.invoke(service, endpoint, requestBody, message -> message, timings,
+                            deadline.toGrpcDeadline(), callContext)
+                        .onSuccess(response -> streamJson(ctx, timings, response))
+                        .onFailure(e -> handleCallFailure(ctx, callContext, e));
+                } else {
+                    grpcInvoker.invoke(service, endpoint, requestBody, timings, deadline.toGrpcDeadline(), callContext)
+                        .onSuccess(response -> writeJson(ctx, endpoint, timings, response))
+                        .onFailure(e -> handleCallFailure(ctx, callContext, e));
+                }
+                return;
+            }
+
+            // Either side is protobuf: the message crosses the gateway serialized, as the client sent it or wants it
+            byte[] request;
+            if (protobufRequest) {
+                Buffer body = ctx.body().buffer();
+                request = body != null ? body.getBytes() : new byte[0];
+            } else {
+                long transcodeStart = System.nanoTime();
+                try {
+                    request = DynamicGrpcInvoker.toMessage(requestBody, endpoint.getInputType()).toByteArray();
+                } catch (InvalidProtocolBufferException e) {
+                    handleError(ctx, 400, "Invalid request format: " + e.getMessage());
+                    return;
+                }
+                timings.mark(RequestTimings.Stage.REQUEST_TRANSCODE, transcodeStart);
+            }
+
+            if (protobufResponse) {
+                grpcInvoker.invokeRaw(service, endpoint, request, bytes -> bytes, timings, deadline.toGrpcDeadline(), callContext)
+                    .onSuccess(response -> ctx.response()
+                        .putHeader(CONTENT_TYPE, APPLICATION_PROTOBUF)
+                        .end(Buffer.buffer(response)))
+                    .onFailure(e -> handleCallFailure(ctx, callContext, e));
+            } else if (endpoint.getOutputPlan().isIdentity()) {
+                Descriptors.Descriptor outputType = endpoint.getOutputType();
+                grpcInvoker.invokeRaw(service, endpoint, request, bytes -> DynamicMessage.parseFrom(outputType, bytes),
+                        timings, deadline.toGrpcDeadline(), callContext)
+                    .onSuccess(response -> streamJson(ctx, timings, response))
+                    .onFailure(e -> handleCallFailure(ctx, callContext, e));
+            } else {
+                Descriptors.Descriptor outputType = endpoint.getOutputType();
+                grpcInvoker.invokeRaw(service, endpoint, request,
+                        bytes -> DynamicGrpcInvoker.toJson(DynamicMessage.parseFrom(outputType, bytes)),
+                        timings, deadline.toGrpcDeadline(), callContext)
+                    .onSuccess(response -> writeJson(ctx, endpoint, timings, response))
+                    .onFailure(e -> handleCallFailure(ctx, callContext, e));
+            }
 
         } catch (Exception e) {
             LOGGER.error("Error setting up gRPC request", e);
             handleError(ctx, HTTP_SERVER_ERROR, "Error setting up gRPC request: " + e.getMessage());
         }
     }
+
+    private static void writeJson(RoutingContext ctx, CompiledEndpoint endpoint, RequestTimings timings, JsonObject response) {
+        long encodeStart = System.nanoTime();
+        String encoded = endpoint.getOutputPlan().apply(response).encode();
+        timings.mark(RequestTimings.Stage.RESPONSE_TRANSCODE, encodeStart);
+        ctx.response()
+            .putHeader(CONTENT_TYPE, APPLICATION_JSON)
+            .end(encoded);
+    }
+
+    /**
+     * Writes a response that needs no output mapping straight from the message, without building
+     * a JsonObject and a String of it first. A response that fits in one chunk is sent with a
+     * Content-Length; a larger one is sent chunked, encoding the next chunk only once the client
+     * has taken the previous ones, so the message stays the only full copy of the data.
+     */
+    private void streamJson(RoutingContext ctx, RequestTimings timings, Message response) {
+        long encodeStart = System.nanoTime();
+        StreamingJsonEncoder encoder;
+        Buffer first;
+        try {
+            encoder = new StreamingJsonEncoder(response, JSON_CHUNK_SIZE);
+            first = encoder.next();
+        } catch (Exception e) {
+            LOGGER.error("Failed to encode gRPC response", e);
+            handleError(ctx, HTTP_SERVER_ERROR, "Failed to encode response: " + e.getMessage());
+            return;
+        }
+        timings.add(RequestTimings.Stage.RESPONSE_TRANSCODE, System.nanoTime() - encodeStart);
+        HttpServerResponse http = ctx.response().putHeader(CONTENT_TYPE, APPLICATION_JSON);
+        if (!encoder.hasNext()) {
+            http.end(first);
+            return;
+        }
+        http.setChunked(true).write(first);
+        writeChunks(http, encoder, timings);
+    }
+
+    private static void writeChunks(HttpServerResponse http, StreamingJsonEncoder encoder, RequestTimings timings) {
+        try {
+            while (encoder.hasNext()) {
+                if (http.closed()) {
+                    return;
+                }
+                if (http.writeQueueFull()) {
+                    http.drainHandler(v -> writeChunks(http, encoder, timings));
+                    return;
+                }
+                long encodeStart = System.nanoTime();
+                Buffer chunk = encoder.next();
+                timings.add(RequestTimings.Stage.RESPONSE_TRANSCODE, System.nanoTime() - encodeStart);
+                http.write(chunk);
+            }
+            http.end();
+        } catch (Exception e) {
+            // The status and part of the body are out already; all that is left is to abort
+            LOGGER.error("Failed to encode gRPC response", e);
+            http.reset();
+        }
+    }
+
+    private void handleCallFailure(RoutingContext ctx, Context.CancellableContext callContext, Throwable e) {
+        if (callContext.isCancelled()) {
+            return;
+        }
+        int status = e instanceof TimeoutException ? HTTP_GATEWAY_TIMEOUT
+            : e instanceof Bulkhead.BulkheadFullException || isUnavailable(e) ? HTTP_SERVICE_UNAVAILABLE
+            : HTTP_SERVER_ERROR;
+        // Logged by the invoker where it is unexpected, and by handleError and the access log otherwise
+        String message = e instanceof StatusRuntimeException statusError ? statusError.getStatus().getDescription() : e.getMessage();
+        handleError(ctx, status, "Error processing request: " + message);
+    }
+
+    // Answered with 503, so the concurrency limit is cut as for the same status on the passthrough path
+    private static boolean isUnavailable(Throwable e) {
+        if (!(e instanceof StatusRuntimeException statusError)) {
+            return false;
+        }
+        Status.Code code = statusError.getStatus().getCode();
+        return code == Status.Code.UNAVAILABLE || code == Status.Code.RESOURCE_EXHAUSTED;
+    }
+
+    private static boolean isProtobuf(String contentType) {
+        return contentType != null
+            && (contentType.startsWith(APPLICATION_PROTOBUF) || contentType.startsWith(APPLICATION_PROTOBUF_ALT));
+    }
+
+    // Protobuf is returned whenever the client lists it; q-values are not weighed
+    private static boolean acceptsProtobuf(String accept) {
+        return accept != null && (accept.contains(APPLICATION_PROTOBUF) || accept.contains(APPLICATION_PROTOBUF_ALT));
+    }
 }
@@ -0,0 +1,215 @@
+package com.cresterida.gateway.handlers;
+
+import com.cresterida.gateway.metrics.ServiceMeters;
+import com.cresterida.gateway.model.ServiceDefinition;
+import com.cresterida.gateway.model.ServiceInstance;
+import com.cresterida.gateway.ratelimit.AdaptiveConcurrencyLimiter;
+import com.cresterida.gateway.ratelimit.RateLimiter;
+import com.cresterida.gateway.registry.CompiledEndpoint;
+import com.cresterida.gateway.registry.CompiledService;
+import com.cresterida.gateway.registry.ServiceRegistry;
+import com.cresterida.gateway.util.GrpcChannelPool;
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.Status;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Proxies a native gRPC call to the upstream of the registered service without
+ * decoding the messages: request and response frames are forwarded as raw bytes
+ * over the pooled channel, with gRPC flow control carried across both legs.
+ */
+public class GrpcPassthroughHandler implements ServerCallHandler<byte[], byte[]> {
+    private static final Logger LOGGER = LogManager.getLogger(GrpcPassthroughHandler.class);
+
+    private final ServiceRegistry registry;
+    private final Map<String, RateLimiter> limiters;
+    private final GrpcChannelPool channelPool;
+
+    public GrpcPassthroughHandler(ServiceRegistry registry, Map<String, RateLimiter> limiters, GrpcChannelPool channelPool) {
+        this.registry = registry;
+        this.limiters = limiters;
+        this.channelPool = channelPool;
+    }
+
+    @Override
+    public ServerCall.Listener<byte[]> startCall(ServerCall<byte[], byte[]> serverCall, Metadata headers) {
+        long start = System.nanoTime();
+        String serviceName = serverCall.getMethodDescriptor().getServiceName();
+        CompiledService service = registry.resolveByGrpcService(serviceName).orElse(null);
+        if (service == null) {
+            return reject(serverCall, Status.UNIMPLEMENTED.withDescription("No service registered for " + serviceName));
+        }
+        ServiceDefinition sd = service.getDefinition();
+        CompiledEndpoint endpoint = service.getEndpointByMethod(serverCall.getMethodDescriptor().getBareMethodName());
+        ServiceMeters.EndpointMeters meters = service.getMeters()
+            .endpoint(endpoint != null ? endpoint.getName() : null);
+
+        RateLimiter limiter = limiters.get(sd.getId());
+        if (limiter != null && !limiter.tryConsume()) {
+            meters.recordGrpc(Status.Code.RESOURCE_EXHAUSTED, System.nanoTime() - start);
+            return reject(serverCall, Status.RESOURCE_EXHAUSTED.withDescription("Rate limit exceeded for " + sd.getId()));
+        }
+
+        ServiceInstance instance = sd.getActiveInstance();
+        if (instance == null) {
+            meters.recordGrpc(Status.Code.UNAVAILABLE, System.nanoTime() - start);
+            return reject(serverCall, Status.UNAVAILABLE.withDescription("No active service instance available"));
+        }
+
+        AdaptiveConcurrencyLimiter concurrency = service.getConcurrencyLimiter();
+        if (concurrency != null && !concurrency.tryAcquire()) {
+            meters.recordGrpc(Status.Code.UNAVAILABLE, System.nanoTime() - start);
+            return reject(serverCall, Status.UNAVAILABLE.withDescription("Concurrency limit exceeded for " + sd.getId()));
+        }
+
+        LOGGER.debug("Passing through {} to {}:{}", serverCall.getMethodDescriptor().getFullMethodName(),
+            instance.getHost(), instance.getPort());
+
+        // The server call's context carries the caller's deadline, which newCall picks up;
+        // gRPC uses whichever of that and the configured timeout expires first
+        long timeoutMillis = endpoint != null ? endpoint.getTimeoutMillis() : sd.getTimeoutMillis();
+        CallOptions callOptions = CallOptions.DEFAULT.withDeadlineAfter(timeoutMillis, TimeUnit.MILLISECONDS);
+        if (sd.getGrpcCompression() != null) {
+            callOptions = callOptions.withCompression(sd.getGrpcCompression());
+        }
+        ClientCall<byte[], byte[]> clientCall = channelPool.get(instance)
+            .newCall(serverCall.getMethodDescriptor(), callOptions);
+        CallProxy proxy = new CallProxy(meters, concurrency, serverCall, clientCall, start);
+        clientCall.start(proxy.clientListener, headers);
+        serverCall.request(1);
+        clientCall.request(1);
+        return proxy.serverListener;
+    }
+
+    private ServerCall.Listener<byte[]> reject(ServerCall<byte[], byte[]> serverCall, Status status) {
+        serverCall.close(status, new Metadata());
+        return new ServerCall.Listener<>() {};
+    }
+
+    private class CallProxy {
+        final RequestProxy serverListener;
+        final ResponseProxy clientListener;
+
+        CallProxy(ServiceMeters.EndpointMeters meters, AdaptiveConcurrencyLimiter concurrency,
+                  ServerCall<byte[], byte[]> serverCall, ClientCall<byte[], byte[]> clientCall, long start) {
+            serverListener = new RequestProxy(clientCall);
+            clientListener = new ResponseProxy(meters, concurrency, serverCall, start);
+        }
+
+        // Client -> gateway -> upstream
+        private class RequestProxy extends ServerCall.Listener<byte[]> {
+            private final ClientCall<byte[], byte[]> clientCall;
+            private boolean needToRequest;
+
+            RequestProxy(ClientCall<byte[], byte[]> clientCall) {
+                this.clientCall = clientCall;
+            }
+
+            @Override
+            public void onCancel() {
+                clientCall.cancel("Client cancelled", null);
+            }
+
+            @Override
+            public void onHalfClose() {
+                clientCall.halfClose();
+            }
+
+            @Override
+            public void onMessage(byte[] message) {
+                clientCall.sendMessage(message);
+                synchronized (this) {
+                    if (clientCall.isReady()) {
+                        clientListener.serverCall.request(1);
+                    } else {
+                        needToRequest = true;
+                    }
+                }
+            }
+
+            @Override
+            public void onReady() {
+                clientListener.onServerReady();
+            }
+
+            synchronized void onClientReady() {
+                if (needToRequest) {
+                    clientListener.serverCall.request(1);
+                    needToRequest = false;
+                }
+            }
+        }
+
+        // Upstream -> gateway -> client
+        private class ResponseProxy extends ClientCall.Listener<byte[]> {
+            private final ServiceMeters.EndpointMeters meters;
+            private final AdaptiveConcurrencyLimiter concurrency;
+            private final ServerCall<byte[], byte[]> serverCall;
+            private final long start;
+            private boolean needToRequest;
+
+            ResponseProxy(ServiceMeters.EndpointMeters meters, AdaptiveConcurrencyLimiter concurrency,
+                          ServerCall<byte[], byte[]> serverCall, long start) {
+                this.meters = meters;
+                this.concurrency = concurrency;
+                this.serverCall = serverCall;
+                this.start = start;
+            }
+
+            @Override
+            public void onClose(Status status, Metadata trailers) {
+                serverCall.close(status, trailers);
+                long elapsed = System.nanoTime() - start;
+                meters.recordGrpc(status.getCode(), elapsed);
+                if (concurrency != null) {
+                    release(status.getCode(), elapsed);
+                }
+            }
+
+            private void release(Status.Code code, long rttNanos) {
+                switch (code) {
+                    case CANCELLED -> concurrency.onIgnore();
+                    case DEADLINE_EXCEEDED, UNAVAILABLE, RESOURCE_EXHAUSTED -> concurrency.onDropped();
+                    default -> concurrency.onSuccess(rttNanos);
+                }
+            }
+
+            @Override
+            public void onHeaders(Metadata headers) {
+                serverCall.sendHeaders(headers);
+            }
+
+            @Override
+            public void onMessage(byte[] message) {
+                serverCall.sendMessage(message);
+                synchronized (this) {
+                    if (serverCall.isReady()) {
+                        serverListener.clientCall.request(1);
+                    } else {
+                        needToRequest = true;
+                    }
+                }
+            }
+
+            @Override
+            public void onReady() {
+                serverListener.onClientReady();
+            }
+
+            synchronized void onServerReady() {
+                if (needToRequest) {
+                    serverListener.clientCall.request(1);
+                    needToRequest = false;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.cresterida.gateway.handlers;
+
+import com.cresterida.gateway.registry.CompiledService;
+import com.cresterida.gateway.registry.ServiceRegistry;
+import com.cresterida.gateway.util.ByteArrayMarshaller;
+import io.grpc.HandlerRegistry;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerMethodDefinition;
+
+/**
+ * Fallback handler registry for the native gRPC listener. Any
+ * {@code /package.Service/Method} that belongs to a registered gRPC service is
+ * bound to the {@link GrpcPassthroughHandler}; everything else is left to the
+ * server, which answers UNIMPLEMENTED. Method definitions are built per lookup
+ * rather than cached, since the method names come from clients.
+ */
+public class GrpcPassthroughRegistry extends HandlerRegistry {
+    private final ServiceRegistry registry;
+    private final GrpcPassthroughHandler handler;
+
+    public GrpcPassthroughRegistry(ServiceRegistry registry, GrpcPassthroughHandler handler) {
+        this.registry = registry;
+        this.handler = handler;
+    }
+
+    @Override
+    public ServerMethodDefinition<?, ?> lookupMethod(String fullMethodName, String authority) {
+        String serviceName = MethodDescriptor.extractFullServiceName(fullMethodName);
+        if (serviceName == null) {
+            return null;
+        }
+        CompiledService service = registry.resolveByGrpcService(serviceName).orElse(null);
+        if (service == null || !exposesMethod(service, fullMethodName.substring(serviceName.length() + 1))) {
+            return null;
+        }
+        return createMethod(fullMethodName);
+    }
+
+    // Services without declared endpoints expose every method of the proto service
+    private boolean exposesMethod(CompiledService service, String methodName) {
+        return service.getEndpoints().isEmpty() || service.getEndpointByMethod(methodName) != null;
+    }
+
+    private ServerMethodDefinition<byte[], byte[]> createMethod(String fullMethodName) {
+        // Method type is not known without parsing the proto; UNKNOWN lets any call shape through
+        MethodDescriptor<byte[], byte[]> descriptor = MethodDescriptor.<byte[], byte[]>newBuilder()
+            .setType(MethodDescriptor.MethodType.UNKNOWN)
+            .setFullMethodName(fullMethodName)
+            .setRequestMarshaller(ByteArrayMarshaller.INSTANCE)
+            .setResponseMarshaller(ByteArrayMarshaller.INSTANCE)
+            .build();
+        return ServerMethodDefinition.create(descriptor, handler);
+    }
+}
@@ -1,59 +1,82 @@
 package com.cresterida.gateway.handlers;
 
+import com.cresterida.gateway.accesslog.AccessLogHandler;
+import com.cresterida.gateway.metrics.RequestTimings;
+import com.cresterida.gateway.metrics.ServiceMeters;
 import com.cresterida.gateway.model.ServiceDefinition;
+import com.cresterida.gateway.model.WarmupConfig;
+import com.cresterida.gateway.registry.CompiledService;
+import com.cresterida.gateway.registry.TrafficMirror;
+import com.cresterida.gateway.registry.UpstreamTarget;
+import com.cresterida.gateway.util.RequestDeadline;
+import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.RequestOptions;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.SocketAddress;
 import io.vertx.ext.web.RoutingContext;
-import io.vertx.ext.web.client.WebClient;
-import io.vertx.ext.web.client.WebClientOptions;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import java.net.URI;
 import java.net.ConnectException;
+import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class HttpProxyHandler implements Handler<RoutingContext> {
     private record ErrorResponse(int statusCode, String userMessage, String logMessage) {}
+    private record ProxiedResponse(HttpClientResponse response, Buffer body) {}
 
     private static final Logger LOGGER = LogManager.getLogger(HttpProxyHandler.class);
     private static final String CONTENT_TYPE = "Content-Type";
     private static final String APPLICATION_JSON = "application/json";
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    // Lets upstreams tell warm-up requests apart from real traffic
+    private static final String WARMUP_HEADER = "X-Gateway-Warmup";
+    // Lets shadow upstreams tell mirrored copies apart, e.g. to skip side effects
+    private static final String SHADOW_HEADER = "X-Gateway-Shadow";
 
-    private final WebClient client;
+    private final Vertx vertx;
+    private final HttpClient client;
 
     public HttpProxyHandler(Vertx vertx) {
-        WebClientOptions options = new WebClientOptions()
-            .setConnectTimeout(5000)  // 5 seconds
+        HttpClientOptions options = new HttpClientOptions()
+            .setConnectTimeout(CONNECT_TIMEOUT_MILLIS)
             .setIdleTimeout(60)       // 1 minute
             .setKeepAlive(true);
-        this.client = WebClient.create(vertx, options);
+        this.vertx = vertx;
+        this.client = vertx.createHttpClient(options);
     }
 
     @Override
     public void handle(RoutingContext ctx) {
-        ServiceDefinition sd = ctx.get("service");
-        if (sd == null) {
+        CompiledService service = ctx.get("service");
+        if (service == null) {
             ctx.next();
             return;
         }
+        ServiceDefinition sd = service.getDefinition();
+        RequestTimings timings = RequestTimings.of(ctx);
 
         try {
-            // Parse the upstream URL and validate
-            String upstreamUrl = sd.getUpstreamBaseUrl();
-            if (upstreamUrl == null || upstreamUrl.isEmpty()) {
+            long prepareStart = System.nanoTime();
+            // Parsed and resolved when the service was registered
+            UpstreamTarget target = service.getUpstreamTarget();
+            if (target == null) {
                 throw new IllegalStateException("Upstream URL is not configured for service: " + sd.getId());
             }
 
-            URI upstreamUri = new URI(upstreamUrl);
-            String host = upstreamUri.getHost();
-            int port = upstreamUri.getPort();
-            if (port == -1) {
-                port = upstreamUri.getScheme().equalsIgnoreCase("https") ? 443 : 80;
-            }
-
             // Build the path
             String path = ctx.request().path();
             if (sd.isStripPrefix() && path.startsWith(sd.getPathPrefix())) {
@@ -63,54 +86,190 @@ public class HttpProxyHandler implements Handler<RoutingContext> {
                 path = "/" + path;
             }
 
-            LOGGER.debug("Proxying request to {}:{}{}", host, port, path);
+            RequestDeadline deadline = RequestDeadline.of(ctx.request(), timings.getStartNanos(), sd.getTimeoutMillis());
+            if (deadline.isExpired()) {
+                throw new TimeoutException("Request deadline expired before the upstream call");
+            }
+
+            LOGGER.debug("Proxying request to {}{}", target, path);
+
+            RequestOptions options = upstreamRequest(target, ctx.request().method(), path)
+                // Waiting for a pooled connection also counts against the budget
+                .setConnectTimeout(Math.max(1, Math.min(CONNECT_TIMEOUT_MILLIS, deadline.remainingMillis())));
 
-            // Start building the request
-            io.vertx.ext.web.client.HttpRequest<io.vertx.core.buffer.Buffer> request = client
-                .request(ctx.request().method(), port, host, path);
+            copyHeaders(ctx, options);
+            // Hand the remaining budget to the upstream so it can give up when we do
+            options.putHeader(RequestDeadline.DEADLINE_HEADER, String.valueOf(deadline.toEpochMillis()));
 
-            // Copy original request headers, excluding hop-by-hop headers
-            ctx.request().headers().forEach(header -> {
-                String headerName = header.getKey();
-                String headerValue = header.getValue();
-                if (!isHopByHopHeader(headerName)) {
-                    request.putHeader(headerName, headerValue);
+            long sendStart = timings.mark(RequestTimings.Stage.REQUEST_TRANSCODE, prepareStart);
+            Buffer body = ctx.body().buffer();
+            mirror(ctx, service, path, body);
+            AtomicBoolean timedOut = new AtomicBoolean();
+            client.request(options)
+                .compose(request -> {
+                    // Resetting the request fails the pending response future and frees the connection
+                    long timerId = vertx.setTimer(Math.max(1, deadline.remainingMillis()), id -> {
+                        timedOut.set(true);
+                        request.reset();
+                    });
+                    ctx.addEndHandler(ar -> {
+                        vertx.cancelTimer(timerId);
+                        if (ar.failed()) {
+                            LOGGER.debug("Client closed the connection, cancelling upstream request to {}", sd.getId());
+                            request.reset();
+                        }
+                    });
+
+                    // Send the request with or without body
+                    if (body != null && body.length() > 0) {
+                        LOGGER.debug("Sending request with body of size: {}", body.length());
+                        return request.send(body);
+                    }
+                    LOGGER.debug("Sending request without body");
+                    return request.send();
+                })
+                .compose(response -> response.body().map(responseBody -> new ProxiedResponse(response, responseBody)))
+                .recover(err -> Future.failedFuture(timedOut.get()
+                    ? new TimeoutException("Request deadline exceeded waiting for upstream")
+                    : err))
+                .onSuccess(response -> handleResponse(ctx, response, timings.mark(RequestTimings.Stage.UPSTREAM, sendStart)))
+                .onFailure(err -> {
+                    if (!ctx.response().closed()) {
+                        handleError(ctx, err);
+                    }
+                });
+
+        } catch (Exception e) {
+            handleError(ctx, e);
+        }
+    }
+
+    /**
+     * Sends a copy of a sampled request to the service's mirror. Nothing waits for the copy: its
+     * response body is discarded and only its latency and status are recorded, and it is reset
+     * once the mirror's timeout has passed.
+     */
+    private void mirror(RoutingContext ctx, CompiledService service, String path, Buffer body) {
+        TrafficMirror mirror = service.getMirror();
+        if (mirror == null || !mirror.tryAcquire()) {
+            return;
+        }
+        long start = System.nanoTime();
+        RequestOptions options = upstreamRequest(mirror.getUpstreamTarget(), ctx.request().method(), path)
+            .setConnectTimeout(Math.min(CONNECT_TIMEOUT_MILLIS, mirror.getTimeoutMillis()));
+        copyHeaders(ctx, options);
+        options.putHeader(SHADOW_HEADER, "true")
+            .putHeader(RequestDeadline.DEADLINE_HEADER, String.valueOf(System.currentTimeMillis() + mirror.getTimeoutMillis()));
+        client.request(options)
+            .compose(request -> {
+                long timerId = vertx.setTimer(mirror.getTimeoutMillis(), id -> request.reset());
+                Future<HttpClientResponse> sent = body != null && body.length() > 0 ? request.send(body) : request.send();
+                return sent
+                    .compose(response -> response.end().map(v -> ServiceMeters.httpStatusClass(response.statusCode())))
+                    .onComplete(ar -> vertx.cancelTimer(timerId));
+            })
+            .onComplete(ar -> {
+                mirror.release();
+                if (ar.failed()) {
+                    LOGGER.debug("Mirrored request to {} failed: {}", mirror.getUpstreamTarget(), ar.cause().getMessage());
                 }
+                service.getMeters().recordShadow(ar.succeeded() ? ar.result() : "error", System.nanoTime() - start);
             });
+    }
 
-            // Send the request with or without body
-            if (ctx.body().buffer() != null && ctx.body().buffer().length() > 0) {
-                LOGGER.debug("Sending request with body of size: {}", ctx.body().buffer().length());
-                request.sendBuffer(ctx.body().buffer())
-                    .onSuccess(response -> handleResponse(ctx, response))
-                    .onFailure(err -> handleError(ctx, err));
-            } else {
-                LOGGER.debug("Sending request without body");
-                request.send()
-                    .onSuccess(response -> handleResponse(ctx, response))
-                    .onFailure(err -> handleError(ctx, err));
+    // Copies the client's request headers, excluding hop-by-hop headers
+    private void copyHeaders(RoutingContext ctx, RequestOptions options) {
+        ctx.request().headers().forEach(header -> {
+            if (!isHopByHopHeader(header.getKey())) {
+                options.addHeader(header.getKey(), header.getValue());
             }
+        });
+    }
 
-        } catch (Exception e) {
-            handleError(ctx, e);
+    /**
+     * Sends the service's configured warm-up requests through the proxy's own connection pool, so
+     * the connections they open are the ones routed requests reuse. Never fails.
+     */
+    public Future<Void> warmUp(CompiledService service) {
+        WarmupConfig warmup = service.getDefinition().getWarmup();
+        UpstreamTarget target = service.getUpstreamTarget();
+        if (warmup == null || target == null) {
+            return Future.succeededFuture();
+        }
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(warmup.getTimeoutMillis());
+        int requests = Math.max(warmup.getRequests(), warmup.getConnections());
+        AtomicInteger remaining = new AtomicInteger(requests);
+        AtomicInteger answered = new AtomicInteger();
+        // One sequence of requests per connection; they run concurrently so each needs its own connection
+        List<Future<Void>> sequences = new ArrayList<>(warmup.getConnections());
+        for (int i = 0; i < warmup.getConnections(); i++) {
+            sequences.add(warmUpSequence(target, warmup.getPath(), deadline, remaining, answered));
         }
+        return Future.join(sequences)
+            .transform(ar -> {
+                LOGGER.info("Warmed up service {} ({}): {}/{} requests answered in {}ms", service.getId(), target,
+                    answered.get(), requests, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                return Future.succeededFuture();
+            });
     }
 
-    private void handleResponse(RoutingContext ctx,
-                              io.vertx.ext.web.client.HttpResponse<io.vertx.core.buffer.Buffer> response) {
+    private Future<Void> warmUpSequence(UpstreamTarget target, String path, long deadline,
+                                        AtomicInteger remaining, AtomicInteger answered) {
+        long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remainingMillis <= 0 || remaining.getAndDecrement() <= 0) {
+            return Future.succeededFuture();
+        }
+        RequestOptions options = upstreamRequest(target, HttpMethod.GET, path)
+            .setConnectTimeout(remainingMillis)
+            .setIdleTimeout(remainingMillis)
+            .putHeader(WARMUP_HEADER, "true");
+        return client.request(options)
+            .compose(request -> request.send())
+            .compose(response -> response.body())
+            .transform(ar -> {
+                if (ar.succeeded()) {
+                    answered.incrementAndGet();
+                } else {
+                    LOGGER.debug("Warm-up request to {} failed: {}", target, ar.cause().getMessage());
+                }
+                return warmUpSequence(target, path, deadline, remaining, answered);
+            });
+    }
+
+    // Connects to the resolved address when there is one; the host still goes into Host and SNI. The
+    // address is passed as an IP literal, as connections are pooled per server and a named address
+    // would keep using the connections to the old IP after a DNS change.
+    private static RequestOptions upstreamRequest(UpstreamTarget target, HttpMethod method, String path) {
+        RequestOptions options = new RequestOptions()
+            .setMethod(method)
+            .setHost(target.getHost())
+            .setPort(target.getPort())
+            .setSsl(target.isSsl())
+            .setURI(path);
+        InetAddress address = target.getAddress();
+        if (address != null) {
+            options.setServer(SocketAddress.inetSocketAddress(target.getPort(), address.getHostAddress()));
+        }
+        return options;
+    }
+
+    private void handleResponse(RoutingContext ctx, ProxiedResponse proxied, long receivedNanos) {
+        HttpClientResponse response = proxied.response();
         // Copy status code
         ctx.response().setStatusCode(response.statusCode());
 
-        // Copy headers
-        response.headers().forEach(header ->
-            ctx.response().putHeader(header.getKey(), header.getValue()));
+        // Copy headers, excluding hop-by-hop headers; the body is re-framed by our response
+        response.headers().forEach(header -> {
+            if (!isHopByHopHeader(header.getKey()) && !header.getKey().equalsIgnoreCase("content-length")) {
+                ctx.response().putHeader(header.getKey(), header.getValue());
+            }
+        });
+
+        RequestTimings.of(ctx).mark(RequestTimings.Stage.RESPONSE_TRANSCODE, receivedNanos);
 
         // Send response
-        if (response.body() != null) {
-            ctx.response().end(response.body());
-        } else {
-            ctx.response().end();
-        }
+        ctx.response().end(proxied.body());
     }
 
     private boolean isHopByHopHeader(String headerName) {
@@ -148,8 +307,14 @@ public class HttpProxyHandler implements Handler<RoutingContext> {
                 "Unexpected error in proxy");
         };
 
-        // Log the error with appropriate message
-        LOGGER.error(response.logMessage(), err);
+        // Upstream failures are reported by the access log; only unexpected proxy errors are logged here
+        if (response.statusCode() == 500) {
+            LOGGER.error(response.logMessage(), err);
+        } else {
+            LOGGER.debug(response.logMessage(), err);
+        }
+        AccessLogHandler.recordError(ctx, err.getMessage() != null
+            ? response.logMessage() + ": " + err.getMessage() : response.logMessage());
 
         JsonObject jsonResponse = new JsonObject()
             .put("error", response.userMessage())
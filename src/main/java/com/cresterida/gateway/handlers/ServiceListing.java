@@ -0,0 +1,242 @@
+package com.cresterida.gateway.handlers;
+
+import com.cresterida.gateway.model.ServiceDefinition;
+import com.cresterida.gateway.registry.CompiledService;
+import com.cresterida.gateway.registry.ProtoSourceStore;
+import com.cresterida.gateway.registry.ServiceRegistry;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * The service listing served by {@code GET /admin/services}, cached per registry version.
+ *
+ * <p>Services are listed by id. Each one is encoded at most once per field selection and the
+ * encoding is kept for as long as that exact service stays registered, so serving a page copies
+ * bytes instead of encoding definitions (proto sources included) again. When the registry
+ * changes, the next request re-sorts the services and takes over the encodings of those that did
+ * not change; a changed service is encoded once a page containing it is asked for.
+ *
+ * <p>For a compact registry, the encodings kept per service leave out {@code protoDefinition},
+ * so they do not bring back into memory the proto sources the registry spilled to disk. A
+ * listing that includes it reads each distinct source once, off the event loop (see
+ * {@link Version#readsProtoSources}), and keeps its encoding per {@link ProtoSourceStore.Source},
+ * i.e. per content hash, so services with the same proto share one copy.
+ */
+final class ServiceListing {
+    // Selections cached per listing; a request with yet another one is encoded without caching
+    private static final int MAX_CACHED_SELECTIONS = 8;
+
+    /**
+     * Which top-level fields of a definition to list: only those in {@code include} when it is
+     * not null, minus those in {@code exclude}.
+     */
+    record Selection(Set<String> include, Set<String> exclude) {
+        static final Selection ALL = new Selection(null, Set.of());
+
+        boolean includes(String field) {
+            return (include == null || include.contains(field)) && !exclude.contains(field);
+        }
+
+        String key() {
+            return (include == null ? "*" : String.join(",", include.stream().sorted().toList()))
+                + "-" + String.join(",", exclude.stream().sorted().toList());
+        }
+
+        // Without a spilled proto source, which the page adds from its own cache
+        Buffer encode(CompiledService service) {
+            ServiceDefinition definition = service.getDefinition();
+            JsonObject json = definition.toJson(includes("protoDefinition") && definition.getProtoSource() == null);
+            if (include != null) {
+                JsonObject selected = new JsonObject();
+                for (String field : include) {
+                    if (json.containsKey(field)) {
+                        selected.put(field, json.getValue(field));
+                    }
+                }
+                json = selected;
+            }
+            exclude.forEach(json::remove);
+            return json.toBuffer();
+        }
+    }
+
+    /**
+     * A page of the listing as a JSON array, and the id to list after for the next page, or null
+     * when this is the last one.
+     */
+    record Page(Buffer body, String nextAfter) {
+    }
+
+    /**
+     * The services of one registry version, sorted by id, with their encodings so far.
+     */
+    final class Version {
+        private final long version;
+        private final List<CompiledService> services;
+        private final String[] ids;
+        private final Map<String, Map<CompiledService, Buffer>> encoded;
+        // Spilled proto sources encoded as JSON strings
+        private final Map<Supplier<String>, Buffer> sources;
+
+        private Version(long version, List<CompiledService> services, Map<String, Map<CompiledService, Buffer>> encoded,
+                        Map<Supplier<String>, Buffer> sources) {
+            this.version = version;
+            this.services = services;
+            this.ids = services.stream().map(CompiledService::getId).toArray(String[]::new);
+            this.encoded = encoded;
+            this.sources = sources;
+        }
+
+        /**
+         * The tag of the page {@link #page} returns for the same arguments. It changes whenever the
+         * registry does, differs between nodes and restarts, and differs between selections and
+         * pages of the same listing.
+         */
+        String etag(Selection selection, String after, int limit) {
+            String representation = new JsonArray().add(selection.key()).add(after).add(limit).encode();
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-256").digest(representation.getBytes(StandardCharsets.UTF_8));
+                return "\"" + epoch + "-" + version + "-" + HexFormat.of().formatHex(digest, 0, 8) + "\"";
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * Whether {@link #page} may read proto sources from disk for {@code selection}, in which
+         * case it must not run on the event loop.
+         */
+        boolean readsProtoSources(Selection selection) {
+            return registry.getProtoStore() != null && selection.includes("protoDefinition");
+        }
+
+        /**
+         * Returns up to {@code limit} services with ids after {@code after} (from the first when
+         * null), encoded with {@code selection}.
+         */
+        Page page(Selection selection, String after, int limit) {
+            int from = 0;
+            if (after != null) {
+                int found = Arrays.binarySearch(ids, after);
+                from = found >= 0 ? found + 1 : -found - 1;
+            }
+            int to = (int) Math.min(ids.length, (long) from + limit);
+            Map<CompiledService, Buffer> cache = encoded.get(selection.key());
+            if (cache == null && encoded.size() < MAX_CACHED_SELECTIONS) {
+                cache = encoded.computeIfAbsent(selection.key(), k -> new ConcurrentHashMap<>());
+            }
+            boolean withSources = selection.includes("protoDefinition");
+
+            List<Buffer> items = new ArrayList<>(Math.max(0, to - from));
+            int length = 2;
+            for (int i = from; i < to; i++) {
+                CompiledService service = services.get(i);
+                Buffer item = cache == null ? selection.encode(service) : cache.computeIfAbsent(service, selection::encode);
+                Supplier<String> source = service.getDefinition().getProtoSource();
+                if (withSources && source != null) {
+                    item = withProtoDefinition(item, encodedSource(source));
+                }
+                items.add(item);
+                length += item.length() + 1;
+            }
+            Buffer body = Buffer.buffer(length).appendByte((byte) '[');
+            for (int i = 0; i < items.size(); i++) {
+                if (i > 0) {
+                    body.appendByte((byte) ',');
+                }
+                body.appendBuffer(items.get(i));
+            }
+            body.appendByte((byte) ']');
+            return new Page(body, to < ids.length ? ids[to - 1] : null);
+        }
+
+        // Reads the source on first use, blocking; a concurrent page may read it too, but only one copy is kept
+        private Buffer encodedSource(Supplier<String> source) {
+            Buffer encodedSource = sources.get(source);
+            if (encodedSource == null) {
+                encodedSource = Buffer.buffer(Json.encode(source.get()));
+                Buffer raced = sources.putIfAbsent(source, encodedSource);
+                if (raced != null) {
+                    encodedSource = raced;
+                }
+            }
+            return encodedSource;
+        }
+    }
+
+    // Adds protoDefinition as the last field of an encoded object, so the rest can be cached without it
+    private static Buffer withProtoDefinition(Buffer object, Buffer source) {
+        Buffer item = Buffer.buffer(object.length() + source.length() + 20)
+            .appendBuffer(object, 0, object.length() - 1);
+        if (object.length() > 2) {
+            item.appendByte((byte) ',');
+        }
+        return item.appendString("\"protoDefinition\":").appendBuffer(source).appendByte((byte) '}');
+    }
+
+    private final ServiceRegistry registry;
+    private final String epoch = UUID.randomUUID().toString().substring(0, 8);
+    private volatile Version current;
+
+    ServiceListing(ServiceRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Returns the listing of the registry as it is now, building it if the registry has changed
+     * since the last call.
+     */
+    Version current() {
+        Version cached = current;
+        if (cached != null && cached.version == registry.getVersion()) {
+            return cached;
+        }
+        ServiceRegistry.Versioned versioned = registry.listVersioned();
+        List<CompiledService> sorted = new ArrayList<>(versioned.services());
+        sorted.sort(Comparator.comparing(CompiledService::getId));
+        Map<String, Map<CompiledService, Buffer>> encoded = new ConcurrentHashMap<>();
+        Map<Supplier<String>, Buffer> sources = new ConcurrentHashMap<>();
+        if (cached != null) {
+            // Services are immutable, so an encoding stays valid while the same instance is registered
+            cached.encoded.forEach((key, previous) -> {
+                Map<CompiledService, Buffer> kept = new ConcurrentHashMap<>();
+                for (CompiledService service : sorted) {
+                    Buffer item = previous.get(service);
+                    if (item != null) {
+                        kept.put(service, item);
+                    }
+                }
+                encoded.put(key, kept);
+            });
+            // Sources no service of this version uses any more are dropped
+            if (!cached.sources.isEmpty()) {
+                for (CompiledService service : sorted) {
+                    Supplier<String> source = service.getDefinition().getProtoSource();
+                    Buffer encodedSource = source != null ? cached.sources.get(source) : null;
+                    if (encodedSource != null) {
+                        sources.put(source, encodedSource);
+                    }
+                }
+            }
+        }
+        Version built = new Version(versioned.version(), sorted, encoded, sources);
+        current = built;
+        return built;
+    }
+}
@@ -0,0 +1,151 @@
+package com.cresterida.gateway.mapping;
+
+import com.google.protobuf.Descriptors;
+import io.vertx.core.json.JsonObject;
+
+import java.util.Arrays;
+
+/**
+ * A JSONPath-style field reference ({@code $.user.id}, or simply {@code user.id}) parsed once
+ * into its segments so reads and writes walk a {@link JsonObject} without re-parsing the
+ * expression. Only dotted object member access is supported.
+ */
+public final class JsonPath {
+    private final String expression;
+    private final String[] segments;
+
+    private JsonPath(String expression, String[] segments) {
+        this.expression = expression;
+        this.segments = segments;
+    }
+
+    public static JsonPath compile(String expression) {
+        if (expression == null || expression.isBlank()) {
+            throw new IllegalArgumentException("JSONPath expression cannot be empty");
+        }
+        String path = expression.trim();
+        if (path.equals("$")) {
+            return new JsonPath(expression, new String[0]);
+        }
+        if (path.startsWith("$.")) {
+            path = path.substring(2);
+        }
+        String[] segments = path.split("\\.", -1);
+        for (String segment : segments) {
+            if (segment.isEmpty() || segment.indexOf('[') >= 0 || segment.indexOf('*') >= 0) {
+                throw new IllegalArgumentException("Unsupported JSONPath expression: " + expression);
+            }
+        }
+        return new JsonPath(expression, segments);
+    }
+
+    public Object read(JsonObject root) {
+        JsonObject current = root;
+        int last = segments.length - 1;
+        if (last < 0) {
+            return root;
+        }
+        for (int i = 0; i < last; i++) {
+            Object next = current.getValue(segments[i]);
+            if (!(next instanceof JsonObject)) {
+                return null;
+            }
+            current = (JsonObject) next;
+        }
+        return current.getValue(segments[last]);
+    }
+
+    public void write(JsonObject root, Object value) {
+        if (segments.length == 0) {
+            if (value instanceof JsonObject) {
+                root.mergeIn((JsonObject) value);
+            }
+            return;
+        }
+        JsonObject current = root;
+        int last = segments.length - 1;
+        for (int i = 0; i < last; i++) {
+            Object next = current.getValue(segments[i]);
+            if (!(next instanceof JsonObject)) {
+                next = new JsonObject();
+                current.put(segments[i], next);
+            }
+            current = (JsonObject) next;
+        }
+        current.put(segments[last], value);
+    }
+
+    public void remove(JsonObject root) {
+        if (segments.length == 0) {
+            return;
+        }
+        JsonObject current = root;
+        int last = segments.length - 1;
+        for (int i = 0; i < last; i++) {
+            Object next = current.getValue(segments[i]);
+            if (!(next instanceof JsonObject)) {
+                return;
+            }
+            current = (JsonObject) next;
+        }
+        current.remove(segments[last]);
+    }
+
+    /**
+     * Checks that the path addresses a field of the given message type, descending into
+     * nested message fields. Field names may use either the proto or the JSON spelling.
+     */
+    public void validateAgainst(Descriptors.Descriptor message) {
+        Descriptors.Descriptor current = message;
+        for (int i = 0; i < segments.length; i++) {
+            if (current == null) {
+                throw new IllegalArgumentException(String.format(
+                    "Path '%s' descends into non-message field '%s'", expression, segments[i - 1]));
+            }
+            Descriptors.FieldDescriptor field = findField(current, segments[i]);
+            if (field == null) {
+                throw new IllegalArgumentException(String.format(
+                    "Path '%s' does not match a field of %s", expression, current.getFullName()));
+            }
+            current = field.getJavaType() == Descriptors.FieldDescriptor.JavaType.MESSAGE && !field.isRepeated()
+                ? field.getMessageType()
+                : null;
+        }
+    }
+
+    private static Descriptors.FieldDescriptor findField(Descriptors.Descriptor message, String name) {
+        Descriptors.FieldDescriptor field = message.findFieldByName(name);
+        if (field != null) {
+            return field;
+        }
+        for (Descriptors.FieldDescriptor candidate : message.getFields()) {
+            if (candidate.getJsonName().equals(name)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    public boolean isRoot() {
+        return segments.length == 0;
+    }
+
+    public String expression() {
+        return expression;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof JsonPath && Arrays.equals(segments, ((JsonPath) o).segments);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(segments);
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
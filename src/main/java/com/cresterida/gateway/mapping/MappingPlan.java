@@ -0,0 +1,131 @@
+package com.cresterida.gateway.mapping;
+
+import com.cresterida.gateway.model.JsonFieldMapping;
+import com.google.protobuf.Descriptors;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Precompiled JSON transformation for one direction of an endpoint.
+ *
+ * <p>With an explicit mapping ({@code inputMapping}/{@code outputMapping}) the result is
+ * projected from the mapped paths only. Without one, the document passes through unchanged
+ * except for the service-level {@link JsonFieldMapping} renames and enum translations, which
+ * are applied in place.
+ */
+public final class MappingPlan {
+    public static final MappingPlan IDENTITY = new MappingPlan(true, new Step[0]);
+
+    private final boolean inPlace;
+    private final Step[] steps;
+
+    private MappingPlan(boolean inPlace, Step[] steps) {
+        this.inPlace = inPlace;
+        this.steps = steps;
+    }
+
+    /**
+     * Client JSON -> proto JSON. Targets are validated against the method's input type.
+     */
+    public static MappingPlan forInput(Map<String, String> inputMapping,
+                                       Collection<JsonFieldMapping> fieldMappings,
+                                       Descriptors.Descriptor inputType) {
+        List<Step> steps = new ArrayList<>();
+        if (!inputMapping.isEmpty()) {
+            Map<String, Map<String, String>> enumsByProtoField = new HashMap<>();
+            fieldMappings.forEach(fm -> enumsByProtoField.put(fm.getProtoField(), fm.getEnumMappings()));
+            inputMapping.forEach((protoField, sourcePath) -> {
+                JsonPath to = JsonPath.compile(protoField);
+                to.validateAgainst(inputType);
+                steps.add(new Step(JsonPath.compile(sourcePath), to, enumsByProtoField.get(protoField)));
+            });
+            return new MappingPlan(false, steps.toArray(new Step[0]));
+        }
+        for (JsonFieldMapping fm : fieldMappings) {
+            JsonPath to = JsonPath.compile(fm.getProtoField());
+            to.validateAgainst(inputType);
+            steps.add(new Step(JsonPath.compile(fm.getJsonField()), to, fm.getEnumMappings()));
+        }
+        return steps.isEmpty() ? IDENTITY : new MappingPlan(true, steps.toArray(new Step[0]));
+    }
+
+    /**
+     * Proto JSON -> client JSON. Sources are validated against the method's output type.
+     */
+    public static MappingPlan forOutput(Map<String, String> outputMapping,
+                                        Collection<JsonFieldMapping> fieldMappings,
+                                        Descriptors.Descriptor outputType) {
+        List<Step> steps = new ArrayList<>();
+        if (!outputMapping.isEmpty()) {
+            Map<String, Map<String, String>> enumsByJsonField = new HashMap<>();
+            fieldMappings.forEach(fm -> enumsByJsonField.put(fm.getJsonField(), invert(fm.getEnumMappings())));
+            outputMapping.forEach((jsonField, sourcePath) -> {
+                JsonPath from = JsonPath.compile(sourcePath);
+                from.validateAgainst(outputType);
+                steps.add(new Step(from, JsonPath.compile(jsonField), enumsByJsonField.get(jsonField)));
+            });
+            return new MappingPlan(false, steps.toArray(new Step[0]));
+        }
+        for (JsonFieldMapping fm : fieldMappings) {
+            JsonPath from = JsonPath.compile(fm.getProtoField());
+            from.validateAgainst(outputType);
+            steps.add(new Step(from, JsonPath.compile(fm.getJsonField()), invert(fm.getEnumMappings())));
+        }
+        return steps.isEmpty() ? IDENTITY : new MappingPlan(true, steps.toArray(new Step[0]));
+    }
+
+    /**
+     * Applies the plan. Pass-through plans rewrite {@code source} in place and return it.
+     */
+    public JsonObject apply(JsonObject source) {
+        if (steps.length == 0) {
+            return source;
+        }
+        JsonObject target = inPlace ? source : new JsonObject();
+        for (Step step : steps) {
+            Object value = step.from.read(source);
+            if (value == null) {
+                continue;
+            }
+            if (inPlace) {
+                step.from.remove(source);
+            }
+            step.to.write(target, step.translate(value));
+        }
+        return target;
+    }
+
+    public boolean isIdentity() {
+        return steps.length == 0;
+    }
+
+    private static Map<String, String> invert(Map<String, String> values) {
+        Map<String, String> inverted = new HashMap<>();
+        values.forEach((k, v) -> inverted.put(v, k));
+        return inverted;
+    }
+
+    private static final class Step {
+        final JsonPath from;
+        final JsonPath to;
+        final Map<String, String> enumValues;
+
+        Step(JsonPath from, JsonPath to, Map<String, String> enumValues) {
+            this.from = from;
+            this.to = to;
+            this.enumValues = enumValues == null || enumValues.isEmpty() ? null : Map.copyOf(enumValues);
+        }
+
+        Object translate(Object value) {
+            if (enumValues == null || !(value instanceof String)) {
+                return value;
+            }
+            return enumValues.getOrDefault(value, (String) value);
+        }
+    }
+}
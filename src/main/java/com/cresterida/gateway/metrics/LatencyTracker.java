@@ -0,0 +1,53 @@
+package com.cresterida.gateway.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps the last {@value #WINDOW} latencies of an endpoint and a percentile over them. The
+ * percentile is recomputed every {@value #REFRESH_EVERY} samples by whichever thread records
+ * the sample that crosses the boundary, so reads are a volatile load and writes are two
+ * atomic operations most of the time.
+ */
+public class LatencyTracker {
+    private static final int WINDOW = 1024;
+    private static final int REFRESH_EVERY = 128;
+    // Below this many samples the percentile is not meaningful yet
+    private static final int MIN_SAMPLES = 100;
+
+    private final double percentile;
+    private final AtomicLongArray samples = new AtomicLongArray(WINDOW);
+    private final AtomicLong count = new AtomicLong();
+    private volatile long percentileNanos = -1;
+
+    public LatencyTracker(double percentile) {
+        this.percentile = percentile;
+    }
+
+    public void record(long latencyNanos) {
+        long n = count.getAndIncrement();
+        samples.set((int) (n % WINDOW), latencyNanos);
+        if ((n + 1) % REFRESH_EVERY == 0 || n + 1 == MIN_SAMPLES) {
+            refresh(Math.min(n + 1, WINDOW));
+        }
+    }
+
+    /**
+     * Returns the tracked percentile of the recent latencies, or -1 while there are too few
+     * samples to tell.
+     */
+    public long getPercentileNanos() {
+        return percentileNanos;
+    }
+
+    private void refresh(long size) {
+        long[] sorted = new long[(int) size];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = samples.get(i);
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        percentileNanos = sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
@@ -0,0 +1,111 @@
+package com.cresterida.gateway.metrics;
+
+import io.vertx.ext.web.RoutingContext;
+
+import java.util.Locale;
+
+/**
+ * Per-request stage durations collected with {@link System#nanoTime()} along the proxy path.
+ * A request only touches the stages that apply to it; untouched stages are neither recorded
+ * into histograms nor reported in {@code Server-Timing}.
+ *
+ * <p>Not thread-safe: stages are written by one thread at a time as the request moves between
+ * the event loop and the worker, with the hand-offs providing the necessary ordering.
+ */
+public final class RequestTimings {
+    public static final String CONTEXT_KEY = "requestTimings";
+
+    public enum Stage {
+        ROUTE("route"),
+        DESCRIPTOR("descriptor"),
+        REQUEST_TRANSCODE("req-transcode"),
+        QUEUE("queue"),
+        UPSTREAM("upstream"),
+        RESPONSE_TRANSCODE("resp-transcode");
+
+        private final String metricName;
+
+        Stage(String metricName) {
+            this.metricName = metricName;
+        }
+
+        public String metricName() {
+            return metricName;
+        }
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private final long startNanos;
+    private final long[] nanos = new long[STAGES.length];
+    private int touched;
+
+    public RequestTimings() {
+        this(System.nanoTime());
+    }
+
+    public RequestTimings(long startNanos) {
+        this.startNanos = startNanos;
+    }
+
+    // Returns the timings attached to the request, or a detached instance when none were attached
+    public static RequestTimings of(RoutingContext ctx) {
+        RequestTimings timings = ctx.get(CONTEXT_KEY);
+        return timings != null ? timings : new RequestTimings();
+    }
+
+    public void add(Stage stage, long durationNanos) {
+        nanos[stage.ordinal()] += durationNanos;
+        touched |= 1 << stage.ordinal();
+    }
+
+    // Adds every stage the other timings touched, e.g. those of the attempt that answered a hedged call
+    public void addAll(RequestTimings other) {
+        for (Stage stage : STAGES) {
+            if (other.isTouched(stage)) {
+                add(stage, other.get(stage));
+            }
+        }
+    }
+
+    // Adds the time elapsed since sinceNanos to the stage and returns the current nanoTime
+    public long mark(Stage stage, long sinceNanos) {
+        long now = System.nanoTime();
+        add(stage, now - sinceNanos);
+        return now;
+    }
+
+    public boolean isTouched(Stage stage) {
+        return (touched & (1 << stage.ordinal())) != 0;
+    }
+
+    public long get(Stage stage) {
+        return nanos[stage.ordinal()];
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * Formats the touched stages plus the total so far as a {@code Server-Timing} header value,
+     * with durations in milliseconds.
+     */
+    public String toServerTiming() {
+        StringBuilder sb = new StringBuilder(128);
+        for (Stage stage : STAGES) {
+            if (isTouched(stage)) {
+                appendMetric(sb, stage.metricName(), nanos[stage.ordinal()]);
+            }
+        }
+        appendMetric(sb, "total", System.nanoTime() - startNanos);
+        return sb.toString();
+    }
+
+    private static void appendMetric(StringBuilder sb, String name, long durationNanos) {
+        if (sb.length() > 0) {
+            sb.append(", ");
+        }
+        sb.append(name).append(";dur=").append(String.format(Locale.ROOT, "%.3f", durationNanos / 1_000_000.0));
+    }
+}
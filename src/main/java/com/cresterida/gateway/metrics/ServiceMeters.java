@@ -0,0 +1,293 @@
+package com.cresterida.gateway.metrics;
+
+import com.cresterida.gateway.ratelimit.AdaptiveConcurrencyLimiter;
+import com.cresterida.gateway.ratelimit.Bulkhead;
+import com.cresterida.gateway.registry.TrafficMirror;
+import io.grpc.Status;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.vertx.micrometer.backends.BackendRegistries;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Request meters for one registered service, keyed by endpoint name. Meters are created when
+ * the service is registered and held here, so the request path records into them directly
+ * instead of looking them up by tags. Label values are limited to the service id, the
+ * declared endpoint names and a status class, which keeps the series count bounded no matter
+ * what paths clients send.
+ */
+public class ServiceMeters {
+    public static final String DEFAULT_ENDPOINT = "default";
+    private static final String DURATION_METRIC = "gateway_request_duration";
+    private static final String REQUESTS_METRIC = "gateway_requests";
+    private static final String STAGE_METRIC = "gateway_stage_duration";
+    private static final String CONCURRENCY_LIMIT_METRIC = "gateway_concurrency_limit";
+    private static final String CONCURRENCY_IN_FLIGHT_METRIC = "gateway_concurrency_in_flight";
+    private static final String BULKHEAD_ACTIVE_METRIC = "gateway_bulkhead_active_calls";
+    private static final String BULKHEAD_QUEUED_METRIC = "gateway_bulkhead_queued_calls";
+    private static final String BULKHEAD_MAX_METRIC = "gateway_bulkhead_max_concurrent_calls";
+    private static final String BULKHEAD_REJECTED_METRIC = "gateway_bulkhead_rejected_calls";
+    private static final String HEDGE_METRIC = "gateway_hedged_requests";
+    private static final String SHADOW_DURATION_METRIC = "gateway_shadow_request_duration";
+    private static final String SHADOW_IN_FLIGHT_METRIC = "gateway_shadow_in_flight";
+    private static final String SHADOW_SKIPPED_METRIC = "gateway_shadow_skipped_requests";
+    private static final String[] HEDGE_OUTCOMES = {"won", "lost"};
+    // A few fixed buckets rather than a percentile histogram, whose ~60 buckets per timer multiplied
+    // by stages and services would far outgrow the bounded label values
+    private static final Duration[] STAGE_BUCKETS = {
+        Duration.ofMillis(1), Duration.ofMillis(10), Duration.ofMillis(100), Duration.ofSeconds(1), Duration.ofSeconds(10)
+    };
+    private static final RequestTimings.Stage[] STAGES = RequestTimings.Stage.values();
+
+    private final MeterRegistry registry;
+    private final String serviceId;
+    private final Collection<String> endpointNames;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final Bulkhead bulkhead;
+    private final TrafficMirror mirror;
+    private final Queue<Meter> owned = new ConcurrentLinkedQueue<>();
+    private volatile Map<String, EndpointMeters> endpoints = Map.of();
+    private volatile EndpointMeters fallback;
+    private volatile Timer[] stages;
+    private final AtomicReferenceArray<Counter> hedges = new AtomicReferenceArray<>(HEDGE_OUTCOMES.length);
+    // Keyed by status: an HTTP status class, a gRPC code or "error"
+    private final Map<String, Timer> shadows = new ConcurrentHashMap<>();
+
+    public ServiceMeters(String serviceId, Collection<String> endpointNames, AdaptiveConcurrencyLimiter concurrencyLimiter,
+                         Bulkhead bulkhead, TrafficMirror mirror) {
+        this(BackendRegistries.getDefaultNow(), serviceId, endpointNames, concurrencyLimiter, bulkhead, mirror);
+    }
+
+    public ServiceMeters(MeterRegistry registry, String serviceId, Collection<String> endpointNames,
+                         AdaptiveConcurrencyLimiter concurrencyLimiter, Bulkhead bulkhead, TrafficMirror mirror) {
+        this.registry = registry;
+        this.serviceId = serviceId;
+        this.endpointNames = endpointNames;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.bulkhead = bulkhead;
+        this.mirror = mirror;
+    }
+
+    /**
+     * Registers the meters with the backend. Called when the service enters the registry,
+     * after any previous version of it has been closed, since Micrometer hands out the
+     * same meter instance for identical names and tags.
+     */
+    public void bind() {
+        Map<String, EndpointMeters> bound = new HashMap<>();
+        for (String name : endpointNames) {
+            bound.put(name, new EndpointMeters(name));
+        }
+        endpoints = bound;
+        fallback = new EndpointMeters(DEFAULT_ENDPOINT);
+        if (registry != null) {
+            Timer[] timers = new Timer[STAGES.length];
+            for (RequestTimings.Stage stage : STAGES) {
+                timers[stage.ordinal()] = own(Timer.builder(STAGE_METRIC)
+                    .tag("service", serviceId)
+                    .tag("stage", stage.metricName())
+                    .serviceLevelObjectives(STAGE_BUCKETS)
+                    .register(registry));
+            }
+            stages = timers;
+
+            if (concurrencyLimiter != null) {
+                own(Gauge.builder(CONCURRENCY_LIMIT_METRIC, concurrencyLimiter, AdaptiveConcurrencyLimiter::getLimit)
+                    .tag("service", serviceId)
+                    .strongReference(true)
+                    .register(registry));
+                own(Gauge.builder(CONCURRENCY_IN_FLIGHT_METRIC, concurrencyLimiter, AdaptiveConcurrencyLimiter::getInFlight)
+                    .tag("service", serviceId)
+                    .strongReference(true)
+                    .register(registry));
+            }
+
+            if (bulkhead != null) {
+                own(Gauge.builder(BULKHEAD_ACTIVE_METRIC, bulkhead, Bulkhead::getActive)
+                    .tag("service", serviceId)
+                    .strongReference(true)
+                    .register(registry));
+                own(Gauge.builder(BULKHEAD_QUEUED_METRIC, bulkhead, Bulkhead::getQueued)
+                    .tag("service", serviceId)
+                    .strongReference(true)
+                    .register(registry));
+                own(Gauge.builder(BULKHEAD_MAX_METRIC, bulkhead, Bulkhead::getMaxConcurrentCalls)
+                    .tag("service", serviceId)
+                    .strongReference(true)
+                    .register(registry));
+                own(FunctionCounter.builder(BULKHEAD_REJECTED_METRIC, bulkhead, Bulkhead::getRejected)
+                    .tag("service", serviceId)
+                    .register(registry));
+            }
+
+            if (mirror != null) {
+                own(Gauge.builder(SHADOW_IN_FLIGHT_METRIC, mirror, TrafficMirror::getInFlight)
+                    .tag("service", serviceId)
+                    .tag("version", mirror.getVersion())
+                    .strongReference(true)
+                    .register(registry));
+                own(FunctionCounter.builder(SHADOW_SKIPPED_METRIC, mirror, TrafficMirror::getSkipped)
+                    .tag("service", serviceId)
+                    .tag("version", mirror.getVersion())
+                    .register(registry));
+            }
+        }
+    }
+
+    /**
+     * Records the stages the request went through into this service's stage histograms.
+     */
+    public void recordStages(RequestTimings timings) {
+        Timer[] timers = stages;
+        if (timers == null) {
+            return;
+        }
+        for (RequestTimings.Stage stage : STAGES) {
+            if (timings.isTouched(stage)) {
+                timers[stage.ordinal()].record(timings.get(stage), TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * Counts a hedged call by whether the hedge or the original attempt answered first.
+     */
+    public void recordHedge(boolean hedgeWon) {
+        if (registry == null) {
+            return;
+        }
+        int index = hedgeWon ? 0 : 1;
+        Counter counter = hedges.get(index);
+        if (counter == null) {
+            Counter created = Counter.builder(HEDGE_METRIC)
+                .tag("service", serviceId)
+                .tag("outcome", HEDGE_OUTCOMES[index])
+                .register(registry);
+            if (hedges.compareAndSet(index, null, created)) {
+                own(created);
+            }
+            counter = hedges.get(index);
+        }
+        counter.increment();
+    }
+
+    /**
+     * Records a mirrored copy of a request by how the shadow upstream answered: an HTTP status
+     * class, a gRPC status code, or {@code error} when no response came back. Only valid for a
+     * service with a mirror.
+     */
+    public void recordShadow(String status, long durationNanos) {
+        if (registry == null) {
+            return;
+        }
+        shadows.computeIfAbsent(status, s -> own(Timer.builder(SHADOW_DURATION_METRIC)
+                .tag("service", serviceId)
+                .tag("version", mirror.getVersion())
+                .tag("status", s)
+                .serviceLevelObjectives(STAGE_BUCKETS)
+                .register(registry)))
+            .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // HTTP status code as the status class the request meters use
+    public static String httpStatusClass(int statusCode) {
+        int statusClass = statusCode / 100;
+        return statusClass >= 1 && statusClass <= 5 ? statusClass + "xx" : "5xx";
+    }
+
+    /**
+     * Removes every meter created for this service. Called when the service leaves the registry.
+     */
+    public void close() {
+        if (registry == null) {
+            return;
+        }
+        Meter meter;
+        while ((meter = owned.poll()) != null) {
+            registry.remove(meter);
+        }
+    }
+
+    // Unknown endpoint names share the default bucket rather than creating new series.
+    // Only valid once bound.
+    public EndpointMeters endpoint(String name) {
+        EndpointMeters meters = name == null ? null : endpoints.get(name);
+        return meters != null ? meters : fallback;
+    }
+
+    public String getServiceId() {
+        return serviceId;
+    }
+
+    private <M extends Meter> M own(M meter) {
+        owned.add(meter);
+        return meter;
+    }
+
+    public class EndpointMeters {
+        private static final String[] HTTP_STATUS_CLASSES = {"1xx", "1xx", "2xx", "3xx", "4xx", "5xx"};
+
+        private final String name;
+        private final Timer duration;
+        private final AtomicReferenceArray<Counter> httpStatus = new AtomicReferenceArray<>(HTTP_STATUS_CLASSES.length);
+        private final AtomicReferenceArray<Counter> grpcStatus = new AtomicReferenceArray<>(Status.Code.values().length);
+
+        EndpointMeters(String name) {
+            this.name = name;
+            this.duration = registry == null ? null : own(Timer.builder(DURATION_METRIC)
+                .tag("service", serviceId)
+                .tag("endpoint", name)
+                .register(registry));
+        }
+
+        public void recordHttp(int statusCode, long durationNanos) {
+            if (registry == null) {
+                return;
+            }
+            int statusClass = statusCode / 100;
+            if (statusClass < 1 || statusClass >= HTTP_STATUS_CLASSES.length) {
+                statusClass = 5;
+            }
+            duration.record(durationNanos, TimeUnit.NANOSECONDS);
+            counter(httpStatus, statusClass, HTTP_STATUS_CLASSES[statusClass]).increment();
+        }
+
+        public void recordGrpc(Status.Code code, long durationNanos) {
+            if (registry == null) {
+                return;
+            }
+            duration.record(durationNanos, TimeUnit.NANOSECONDS);
+            counter(grpcStatus, code.ordinal(), code.name()).increment();
+        }
+
+        // Status counters are created on first use and cached, so each one is looked up once
+        private Counter counter(AtomicReferenceArray<Counter> cache, int index, String status) {
+            Counter counter = cache.get(index);
+            if (counter == null) {
+                Counter created = Counter.builder(REQUESTS_METRIC)
+                    .tag("service", serviceId)
+                    .tag("endpoint", name)
+                    .tag("status", status)
+                    .register(registry);
+                if (cache.compareAndSet(index, null, created)) {
+                    own(created);
+                }
+                counter = cache.get(index);
+            }
+            return counter;
+        }
+    }
+}
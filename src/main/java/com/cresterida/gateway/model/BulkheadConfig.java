@@ -0,0 +1,40 @@
+package com.cresterida.gateway.model;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Bounds for a service's bulkhead: at most {@code maxConcurrentCalls} blocking gRPC calls of the
+ * service run at once, and at most {@code maxQueuedCalls} more wait for one of them to finish.
+ * Calls beyond that are rejected straight away.
+ */
+public class BulkheadConfig {
+    private int maxConcurrentCalls = 10;
+    private int maxQueuedCalls = 20;
+
+    public static BulkheadConfig fromJson(JsonObject json) {
+        BulkheadConfig config = new BulkheadConfig();
+        config.maxConcurrentCalls = json.getInteger("maxConcurrentCalls", config.maxConcurrentCalls);
+        config.maxQueuedCalls = json.getInteger("maxQueuedCalls", config.maxQueuedCalls);
+        if (config.maxConcurrentCalls < 1) {
+            throw new IllegalArgumentException("bulkhead.maxConcurrentCalls must be positive");
+        }
+        if (config.maxQueuedCalls < 0) {
+            throw new IllegalArgumentException("bulkhead.maxQueuedCalls must not be negative");
+        }
+        return config;
+    }
+
+    public JsonObject toJson() {
+        return new JsonObject()
+            .put("maxConcurrentCalls", maxConcurrentCalls)
+            .put("maxQueuedCalls", maxQueuedCalls);
+    }
+
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    public int getMaxQueuedCalls() {
+        return maxQueuedCalls;
+    }
+}
@@ -0,0 +1,57 @@
+package com.cresterida.gateway.model;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Bounds for a service's adaptive concurrency limit. The limit starts at {@code initialLimit}
+ * and moves between {@code minLimit} and {@code maxLimit} as upstream latency changes.
+ */
+public class ConcurrencyLimitConfig {
+    private int initialLimit = 20;
+    private int minLimit = 1;
+    private int maxLimit = 200;
+
+    public static ConcurrencyLimitConfig fromJson(JsonObject json) {
+        ConcurrencyLimitConfig config = new ConcurrencyLimitConfig();
+        config.initialLimit = json.getInteger("initialLimit", config.initialLimit);
+        config.minLimit = json.getInteger("minLimit", config.minLimit);
+        config.maxLimit = json.getInteger("maxLimit", config.maxLimit);
+        if (config.minLimit < 1 || config.maxLimit < config.minLimit
+            || config.initialLimit < config.minLimit || config.initialLimit > config.maxLimit) {
+            throw new IllegalArgumentException(
+                "concurrencyLimit requires 1 <= minLimit <= initialLimit <= maxLimit");
+        }
+        return config;
+    }
+
+    public JsonObject toJson() {
+        return new JsonObject()
+            .put("initialLimit", initialLimit)
+            .put("minLimit", minLimit)
+            .put("maxLimit", maxLimit);
+    }
+
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+
+    public void setInitialLimit(int initialLimit) {
+        this.initialLimit = initialLimit;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public void setMinLimit(int minLimit) {
+        this.minLimit = minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public void setMaxLimit(int maxLimit) {
+        this.maxLimit = maxLimit;
+    }
+}
@@ -11,6 +11,10 @@ public class EndpointDefinition {
     private String outputMessage;
     private Map<String, String> inputMapping;
     private Map<String, String> outputMapping;
+    // Upstream timeout for this endpoint; falls back to the service timeout when unset
+    private Long timeoutMillis;
+    // Safe to send more than once, which makes the endpoint eligible for hedging
+    private boolean idempotent;
 
     public EndpointDefinition() {
         this.inputMapping = new HashMap<>();
@@ -23,6 +27,12 @@ public class EndpointDefinition {
         endpoint.methodName = json.getString("methodName");
         endpoint.inputMessage = json.getString("inputMessage");
         endpoint.outputMessage = json.getString("outputMessage");
+        endpoint.timeoutMillis = json.getLong("timeoutMillis");
+        if (endpoint.timeoutMillis != null && endpoint.timeoutMillis <= 0) {
+            throw new IllegalArgumentException("timeoutMillis must be positive for endpoint " + endpoint.name);
+        }
+
+        endpoint.idempotent = json.getBoolean("idempotent", false);
 
         if (json.containsKey("inputMapping")) {
             JsonObject inputMap = json.getJsonObject("inputMapping");
@@ -37,6 +47,36 @@ public class EndpointDefinition {
         return endpoint;
     }
 
+    /**
+     * Returns a copy with its names and mappings interned and its maps immutable and sized to fit,
+     * for definitions kept by a compact registry.
+     */
+    public EndpointDefinition compact() {
+        EndpointDefinition endpoint = new EndpointDefinition();
+        endpoint.name = intern(name);
+        endpoint.methodName = intern(methodName);
+        endpoint.inputMessage = intern(inputMessage);
+        endpoint.outputMessage = intern(outputMessage);
+        endpoint.inputMapping = internAll(inputMapping);
+        endpoint.outputMapping = internAll(outputMapping);
+        endpoint.timeoutMillis = timeoutMillis;
+        endpoint.idempotent = idempotent;
+        return endpoint;
+    }
+
+    static String intern(String value) {
+        return value == null ? null : value.intern();
+    }
+
+    static Map<String, String> internAll(Map<String, String> map) {
+        if (map.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, String> interned = new HashMap<>(map.size() * 2);
+        map.forEach((key, value) -> interned.put(key.intern(), value.intern()));
+        return Map.copyOf(interned);
+    }
+
     public JsonObject toJson() {
         JsonObject json = new JsonObject()
             .put("name", name)
@@ -52,6 +92,13 @@ public class EndpointDefinition {
         outputMapping.forEach(outputMapJson::put);
         json.put("outputMapping", outputMapJson);
 
+        if (timeoutMillis != null) {
+            json.put("timeoutMillis", timeoutMillis);
+        }
+        if (idempotent) {
+            json.put("idempotent", true);
+        }
+
         return json;
     }
 
@@ -103,4 +150,20 @@ public class EndpointDefinition {
     public void setOutputMapping(Map<String, String> outputMapping) {
         this.outputMapping = outputMapping;
     }
+
+    public Long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public void setTimeoutMillis(Long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public boolean isIdempotent() {
+        return idempotent;
+    }
+
+    public void setIdempotent(boolean idempotent) {
+        this.idempotent = idempotent;
+    }
 }
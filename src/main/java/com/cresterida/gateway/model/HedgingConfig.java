@@ -0,0 +1,63 @@
+package com.cresterida.gateway.model;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Hedging settings for a service's idempotent endpoints. A second attempt is sent once the
+ * first has been outstanding for the endpoint's recent {@code delayPercentile} latency (but
+ * never sooner than {@code minDelayMillis}), and hedges may add at most {@code budgetPercent}
+ * percent on top of the service's hedgeable requests.
+ */
+public class HedgingConfig {
+    private double delayPercentile = 95.0;
+    private long minDelayMillis = 10;
+    private double budgetPercent = 10.0;
+
+    public static HedgingConfig fromJson(JsonObject json) {
+        HedgingConfig config = new HedgingConfig();
+        config.delayPercentile = json.getDouble("delayPercentile", config.delayPercentile);
+        config.minDelayMillis = json.getLong("minDelayMillis", config.minDelayMillis);
+        config.budgetPercent = json.getDouble("budgetPercent", config.budgetPercent);
+        if (config.delayPercentile <= 0 || config.delayPercentile >= 100) {
+            throw new IllegalArgumentException("hedging.delayPercentile must be between 0 and 100");
+        }
+        if (config.minDelayMillis < 0) {
+            throw new IllegalArgumentException("hedging.minDelayMillis must not be negative");
+        }
+        if (config.budgetPercent <= 0 || config.budgetPercent > 100) {
+            throw new IllegalArgumentException("hedging.budgetPercent must be in (0, 100]");
+        }
+        return config;
+    }
+
+    public JsonObject toJson() {
+        return new JsonObject()
+            .put("delayPercentile", delayPercentile)
+            .put("minDelayMillis", minDelayMillis)
+            .put("budgetPercent", budgetPercent);
+    }
+
+    public double getDelayPercentile() {
+        return delayPercentile;
+    }
+
+    public void setDelayPercentile(double delayPercentile) {
+        this.delayPercentile = delayPercentile;
+    }
+
+    public long getMinDelayMillis() {
+        return minDelayMillis;
+    }
+
+    public void setMinDelayMillis(long minDelayMillis) {
+        this.minDelayMillis = minDelayMillis;
+    }
+
+    public double getBudgetPercent() {
+        return budgetPercent;
+    }
+
+    public void setBudgetPercent(double budgetPercent) {
+        this.budgetPercent = budgetPercent;
+    }
+}
@@ -1,5 +1,6 @@
 package com.cresterida.gateway.model;
 
+import io.vertx.core.json.JsonObject;
 import java.util.Map;
 import java.util.HashMap;
 
@@ -13,6 +14,43 @@ public class JsonFieldMapping {
         this.enumMappings = new HashMap<>();
     }
 
+    public static JsonFieldMapping fromJson(JsonObject json) {
+        JsonFieldMapping mapping = new JsonFieldMapping();
+        mapping.protoField = json.getString("protoField");
+        mapping.jsonField = json.getString("jsonField");
+        mapping.type = json.getString("type");
+
+        if (json.containsKey("enumMappings")) {
+            JsonObject enumMap = json.getJsonObject("enumMappings");
+            enumMap.forEach(entry -> mapping.enumMappings.put(entry.getKey(), entry.getValue().toString()));
+        }
+
+        return mapping;
+    }
+
+    // Copy with interned strings and an immutable enum map, for compact registries
+    public JsonFieldMapping compact() {
+        JsonFieldMapping mapping = new JsonFieldMapping();
+        mapping.protoField = EndpointDefinition.intern(protoField);
+        mapping.jsonField = EndpointDefinition.intern(jsonField);
+        mapping.type = EndpointDefinition.intern(type);
+        mapping.enumMappings = EndpointDefinition.internAll(enumMappings);
+        return mapping;
+    }
+
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject()
+            .put("protoField", protoField)
+            .put("jsonField", jsonField)
+            .put("type", type);
+
+        JsonObject enumMapJson = new JsonObject();
+        enumMappings.forEach(enumMapJson::put);
+        json.put("enumMappings", enumMapJson);
+
+        return json;
+    }
+
     public String getProtoField() {
         return protoField;
     }
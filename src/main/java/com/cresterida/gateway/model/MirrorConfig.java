@@ -0,0 +1,93 @@
+package com.cresterida.gateway.model;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Traffic mirroring to a candidate version of a service. {@code samplePercent} percent of the
+ * service's requests are copied to the shadow upstream, {@code upstreamBaseUrl} for an HTTP
+ * service or {@code instances} for a gRPC service, with at most {@code maxInFlight} copies
+ * outstanding at once and each given up after {@code timeoutMillis}. {@code version} labels the
+ * shadow metrics.
+ */
+public class MirrorConfig {
+    private String version = "shadow";
+    private double samplePercent = 10.0;
+    private int maxInFlight = 50;
+    private long timeoutMillis = 5000;
+    private String upstreamBaseUrl;
+    private List<ServiceInstance> instances = new ArrayList<>();
+
+    public static MirrorConfig fromJson(JsonObject json) {
+        MirrorConfig config = new MirrorConfig();
+        config.version = json.getString("version", config.version);
+        config.samplePercent = json.getDouble("samplePercent", config.samplePercent);
+        config.maxInFlight = json.getInteger("maxInFlight", config.maxInFlight);
+        config.timeoutMillis = json.getLong("timeoutMillis", config.timeoutMillis);
+        config.upstreamBaseUrl = json.getString("upstreamBaseUrl");
+        JsonArray instances = json.getJsonArray("instances");
+        if (instances != null) {
+            for (int i = 0; i < instances.size(); i++) {
+                JsonObject instance = instances.getJsonObject(i);
+                config.instances.add(new ServiceInstance(instance.getString("host"), instance.getInteger("port")));
+            }
+        }
+        if (config.samplePercent <= 0 || config.samplePercent > 100) {
+            throw new IllegalArgumentException("mirror.samplePercent must be in (0, 100]");
+        }
+        if (config.maxInFlight < 1) {
+            throw new IllegalArgumentException("mirror.maxInFlight must be positive");
+        }
+        if (config.timeoutMillis <= 0) {
+            throw new IllegalArgumentException("mirror.timeoutMillis must be positive");
+        }
+        return config;
+    }
+
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject()
+            .put("version", version)
+            .put("samplePercent", samplePercent)
+            .put("maxInFlight", maxInFlight)
+            .put("timeoutMillis", timeoutMillis);
+        if (upstreamBaseUrl != null) {
+            json.put("upstreamBaseUrl", upstreamBaseUrl);
+        }
+        if (!instances.isEmpty()) {
+            JsonArray array = new JsonArray();
+            instances.forEach(instance -> array.add(instance.toJson()));
+            json.put("instances", array);
+        }
+        return json;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public double getSamplePercent() {
+        return samplePercent;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    // Shadow upstream of an HTTP service
+    public String getUpstreamBaseUrl() {
+        return upstreamBaseUrl;
+    }
+
+    // Shadow instances of a gRPC service
+    public List<ServiceInstance> getInstances() {
+        return Collections.unmodifiableList(instances);
+    }
+}
@@ -1,5 +1,6 @@
 package com.cresterida.gateway.model;
 
+import io.grpc.CompressorRegistry;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.json.JsonArray;
 import java.util.List;
@@ -8,6 +9,7 @@ import java.util.Map;
 import java.util.HashMap;
 import java.util.Collections;
 import java.net.URI;
+import java.util.function.Supplier;
 
 public class ServiceDefinition {
     private final String id;
@@ -15,14 +17,23 @@ public class ServiceDefinition {
     private final String packageName;
     private final String version;
     private final String protoDefinition;
+    // Reads the source back from where a compact registry spilled it; null otherwise
+    private final Supplier<String> protoSource;
     private final List<ServiceInstance> instances;
     private final Map<String, EndpointDefinition> endpoints;
     private final int burstCapacity;
     private final int rateLimitPerSecond;
     private final Map<String, JsonFieldMapping> fieldMappings;
+    private final ConcurrencyLimitConfig concurrencyLimit;
+    private final HedgingConfig hedging;
+    private final BulkheadConfig bulkhead;
+    private final WarmupConfig warmup;
+    private final MirrorConfig mirror;
     private final String pathPrefix;
     private final String upstreamBaseUrl;
     private final boolean stripPrefix;
+    private final long timeoutMillis;
+    private final String grpcCompression;
     private final ServiceType type;
 
     private ServiceDefinition(Builder builder) {
@@ -31,19 +42,66 @@ public class ServiceDefinition {
         this.packageName = builder.packageName;
         this.version = builder.version;
         this.protoDefinition = builder.protoDefinition;
+        this.protoSource = null;
         this.instances = new ArrayList<>(builder.instances);
         this.endpoints = new HashMap<>(builder.endpoints);
         this.burstCapacity = builder.burstCapacity;
         this.rateLimitPerSecond = builder.rateLimitPerSecond;
         this.fieldMappings = new HashMap<>(builder.fieldMappings);
+        this.concurrencyLimit = builder.concurrencyLimit;
+        this.hedging = builder.hedging;
+        this.bulkhead = builder.bulkhead;
+        this.warmup = builder.warmup;
+        this.mirror = builder.mirror;
         this.pathPrefix = builder.pathPrefix;
         this.upstreamBaseUrl = builder.upstreamBaseUrl;
         this.stripPrefix = builder.stripPrefix;
+        this.timeoutMillis = builder.timeoutMillis;
+        this.grpcCompression = builder.grpcCompression;
         // Default to GRPC if protoDefinition is present, otherwise HTTP
         this.type = builder.type != null ? builder.type :
                    (builder.protoDefinition != null && !builder.protoDefinition.isEmpty() ? ServiceType.GRPC : ServiceType.HTTP);
     }
 
+    // See compact(Supplier)
+    private ServiceDefinition(ServiceDefinition source, Supplier<String> protoSource) {
+        this.id = source.id;
+        this.name = EndpointDefinition.intern(source.name);
+        this.packageName = EndpointDefinition.intern(source.packageName);
+        this.version = EndpointDefinition.intern(source.version);
+        this.protoDefinition = protoSource == null ? source.protoDefinition : null;
+        this.protoSource = protoSource == null ? source.protoSource : protoSource;
+        this.instances = source.instances.stream().map(ServiceInstance::compact).toList();
+        Map<String, EndpointDefinition> endpoints = new HashMap<>();
+        source.endpoints.forEach((key, endpoint) -> endpoints.put(key.intern(), endpoint.compact()));
+        this.endpoints = Map.copyOf(endpoints);
+        this.burstCapacity = source.burstCapacity;
+        this.rateLimitPerSecond = source.rateLimitPerSecond;
+        Map<String, JsonFieldMapping> fieldMappings = new HashMap<>();
+        source.fieldMappings.forEach((key, mapping) -> fieldMappings.put(key.intern(), mapping.compact()));
+        this.fieldMappings = Map.copyOf(fieldMappings);
+        this.concurrencyLimit = source.concurrencyLimit;
+        this.hedging = source.hedging;
+        this.bulkhead = source.bulkhead;
+        this.warmup = source.warmup;
+        this.mirror = source.mirror;
+        this.pathPrefix = source.pathPrefix;
+        this.upstreamBaseUrl = EndpointDefinition.intern(source.upstreamBaseUrl);
+        this.stripPrefix = source.stripPrefix;
+        this.timeoutMillis = source.timeoutMillis;
+        this.grpcCompression = EndpointDefinition.intern(source.grpcCompression);
+        this.type = source.type;
+    }
+
+    /**
+     * Returns the copy of this definition a compact registry keeps once the service is compiled:
+     * the proto source is read through {@code protoSource} instead of held (kept as is when null),
+     * names, hosts and mappings are interned, and collections are immutable and sized to fit.
+     */
+    public ServiceDefinition compact(Supplier<String> protoSource) {
+        return new ServiceDefinition(this, protoSource);
+    }
+
     public static ServiceDefinition fromJson(JsonObject json) {
         if (json == null) {
             throw new IllegalArgumentException("JSON cannot be null");
@@ -59,7 +117,9 @@ public class ServiceDefinition {
             .setRateLimitPerSecond(json.getInteger("rateLimitPerSecond", 10))
             .setPathPrefix(json.getString("pathPrefix", "/"))
             .setUpstreamBaseUrl(json.getString("upstreamBaseUrl"))
-            .setStripPrefix(json.getBoolean("stripPrefix", false));
+            .setStripPrefix(json.getBoolean("stripPrefix", false))
+            .setTimeoutMillis(json.getLong("timeoutMillis", Builder.DEFAULT_TIMEOUT_MILLIS))
+            .setGrpcCompression(json.getString("grpcCompression"));
 
         // Set service type, with smart default based on presence of protoDefinition
         String type = json.getString("type");
@@ -97,6 +157,45 @@ public class ServiceDefinition {
             }
         }
 
+        if (json.containsKey("fieldMappings")) {
+            JsonArray mappings = json.getJsonArray("fieldMappings");
+            if (mappings != null) {
+                mappings.forEach(m -> {
+                    if (m instanceof JsonObject) {
+                        JsonFieldMapping fm = JsonFieldMapping.fromJson((JsonObject) m);
+                        if (fm.getProtoField() != null && fm.getJsonField() != null) {
+                            builder.addFieldMapping(fm);
+                        }
+                    }
+                });
+            }
+        }
+
+        JsonObject concurrencyLimit = json.getJsonObject("concurrencyLimit");
+        if (concurrencyLimit != null) {
+            builder.setConcurrencyLimit(ConcurrencyLimitConfig.fromJson(concurrencyLimit));
+        }
+
+        JsonObject hedging = json.getJsonObject("hedging");
+        if (hedging != null) {
+            builder.setHedging(HedgingConfig.fromJson(hedging));
+        }
+
+        JsonObject bulkhead = json.getJsonObject("bulkhead");
+        if (bulkhead != null) {
+            builder.setBulkhead(BulkheadConfig.fromJson(bulkhead));
+        }
+
+        JsonObject warmup = json.getJsonObject("warmup");
+        if (warmup != null) {
+            builder.setWarmup(WarmupConfig.fromJson(warmup));
+        }
+
+        JsonObject mirror = json.getJsonObject("mirror");
+        if (mirror != null) {
+            builder.setMirror(MirrorConfig.fromJson(mirror));
+        }
+
         return builder.build();
     }
 
@@ -105,14 +204,37 @@ public class ServiceDefinition {
     public String getName() { return name; }
     public String getPackageName() { return packageName; }
     public String getVersion() { return version; }
-    public String getProtoDefinition() { return protoDefinition; }
+    // Read from the proto source store, blocking, for a definition held by a compact registry
+    public String getProtoDefinition() { return protoSource != null ? protoSource.get() : protoDefinition; }
+    // Where getProtoDefinition() reads the source from; null unless held by a compact registry
+    public Supplier<String> getProtoSource() { return protoSource; }
     public List<ServiceInstance> getInstances() { return Collections.unmodifiableList(instances); }
     public Map<String, EndpointDefinition> getEndpoints() { return Collections.unmodifiableMap(endpoints); }
     public int getBurstCapacity() { return burstCapacity; }
     public int getRateLimitPerSecond() { return rateLimitPerSecond; }
+    public Map<String, JsonFieldMapping> getFieldMappings() { return Collections.unmodifiableMap(fieldMappings); }
+    // Null when the service has no adaptive concurrency limit
+    public ConcurrencyLimitConfig getConcurrencyLimit() { return concurrencyLimit; }
+    // Null when hedging is off; only endpoints marked idempotent are hedged
+    public HedgingConfig getHedging() { return hedging; }
+    // Null when the service's gRPC calls are not isolated in a bulkhead
+    public BulkheadConfig getBulkhead() { return bulkhead; }
+    // Null when the upstream is not warmed up before the service is routed to
+    public WarmupConfig getWarmup() { return warmup; }
+    // Null when no traffic is copied to a candidate version
+    public MirrorConfig getMirror() { return mirror; }
     public String getPathPrefix() { return pathPrefix; }
     public String getUpstreamBaseUrl() { return upstreamBaseUrl; }
     public boolean isStripPrefix() { return stripPrefix; }
+    // Upstream timeout for requests to this service, unless the endpoint declares its own
+    public long getTimeoutMillis() { return timeoutMillis; }
+    // gRPC compressor for messages sent upstream (e.g. "gzip"), or null to send them uncompressed
+    public String getGrpcCompression() { return grpcCompression; }
+
+    // Fully qualified gRPC service name as it appears in /package.Service/Method paths
+    public String getFullServiceName() {
+        return packageName == null || packageName.isEmpty() ? name : packageName + "." + name;
+    }
 
     // Returns an active instance from the list of instances, or null if no instances are available
     public ServiceInstance getActiveInstance() {
@@ -124,18 +246,33 @@ public class ServiceDefinition {
         return instances.get(0);
     }
 
+    // Blocks on file IO when the proto source is spilled, see getProtoSource()
     public JsonObject toJson() {
+        return toJson(true);
+    }
+
+    /**
+     * Serializes the definition, without the {@code protoDefinition} field unless
+     * {@code withProtoDefinition} is set; without it, serializing never reads a spilled source.
+     */
+    public JsonObject toJson(boolean withProtoDefinition) {
         JsonObject json = new JsonObject()
             .put("id", id)
             .put("name", name)
             .put("packageName", packageName)
-            .put("version", version)
-            .put("protoDefinition", protoDefinition)
-            .put("burstCapacity", burstCapacity)
+            .put("version", version);
+        if (withProtoDefinition) {
+            json.put("protoDefinition", getProtoDefinition());
+        }
+        json.put("burstCapacity", burstCapacity)
             .put("rateLimitPerSecond", rateLimitPerSecond)
             .put("pathPrefix", pathPrefix)
             .put("upstreamBaseUrl", upstreamBaseUrl)
-            .put("stripPrefix", stripPrefix);
+            .put("stripPrefix", stripPrefix)
+            .put("timeoutMillis", timeoutMillis);
+        if (grpcCompression != null) {
+            json.put("grpcCompression", grpcCompression);
+        }
 
         if (!instances.isEmpty()) {
             JsonArray instancesArray = new JsonArray();
@@ -152,6 +289,28 @@ public class ServiceDefinition {
             json.put("endpoints", eps);
         }
 
+        if (!fieldMappings.isEmpty()) {
+            JsonArray mappings = new JsonArray();
+            fieldMappings.values().forEach(fm -> mappings.add(fm.toJson()));
+            json.put("fieldMappings", mappings);
+        }
+
+        if (concurrencyLimit != null) {
+            json.put("concurrencyLimit", concurrencyLimit.toJson());
+        }
+        if (hedging != null) {
+            json.put("hedging", hedging.toJson());
+        }
+        if (bulkhead != null) {
+            json.put("bulkhead", bulkhead.toJson());
+        }
+        if (warmup != null) {
+            json.put("warmup", warmup.toJson());
+        }
+        if (mirror != null) {
+            json.put("mirror", mirror.toJson());
+        }
+
         return json;
     }
 
@@ -160,6 +319,8 @@ public class ServiceDefinition {
     }
 
     public static class Builder {
+        static final long DEFAULT_TIMEOUT_MILLIS = 30_000;
+
         private String id;
         private String name;
         private String packageName;
@@ -170,9 +331,16 @@ public class ServiceDefinition {
         private int burstCapacity = 100;
         private int rateLimitPerSecond = 10;
         private Map<String, JsonFieldMapping> fieldMappings = new HashMap<>();
+        private ConcurrencyLimitConfig concurrencyLimit;
+        private HedgingConfig hedging;
+        private BulkheadConfig bulkhead;
+        private WarmupConfig warmup;
+        private MirrorConfig mirror;
         private String pathPrefix = "/";
         private String upstreamBaseUrl;
         private boolean stripPrefix;
+        private long timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+        private String grpcCompression;
         private ServiceType type;
 
         public Builder setId(String id) { this.id = id; return this; }
@@ -182,12 +350,33 @@ public class ServiceDefinition {
         public Builder setProtoDefinition(String protoDefinition) { this.protoDefinition = protoDefinition; return this; }
         public Builder addInstance(ServiceInstance instance) { this.instances.add(instance); return this; }
         public Builder addEndpoint(EndpointDefinition endpoint) { this.endpoints.put(endpoint.getName(), endpoint); return this; }
+        public Builder addFieldMapping(JsonFieldMapping mapping) { this.fieldMappings.put(mapping.getProtoField(), mapping); return this; }
+        public Builder setConcurrencyLimit(ConcurrencyLimitConfig concurrencyLimit) { this.concurrencyLimit = concurrencyLimit; return this; }
+        public Builder setHedging(HedgingConfig hedging) { this.hedging = hedging; return this; }
+        public Builder setBulkhead(BulkheadConfig bulkhead) { this.bulkhead = bulkhead; return this; }
+        public Builder setWarmup(WarmupConfig warmup) { this.warmup = warmup; return this; }
+        public Builder setMirror(MirrorConfig mirror) { this.mirror = mirror; return this; }
         public Builder setBurstCapacity(int burstCapacity) { this.burstCapacity = burstCapacity; return this; }
         public Builder setRateLimitPerSecond(int rateLimitPerSecond) { this.rateLimitPerSecond = rateLimitPerSecond; return this; }
         public Builder setPathPrefix(String pathPrefix) { this.pathPrefix = pathPrefix; return this; }
         public Builder setUpstreamBaseUrl(String upstreamBaseUrl) { this.upstreamBaseUrl = upstreamBaseUrl; return this; }
         public Builder setStripPrefix(boolean stripPrefix) { this.stripPrefix = stripPrefix; return this; }
         public Builder setType(ServiceType type) { this.type = type; return this; }
+        public Builder setTimeoutMillis(long timeoutMillis) {
+            if (timeoutMillis <= 0) {
+                throw new IllegalArgumentException("timeoutMillis must be positive");
+            }
+            this.timeoutMillis = timeoutMillis;
+            return this;
+        }
+
+        public Builder setGrpcCompression(String grpcCompression) {
+            if (grpcCompression != null && CompressorRegistry.getDefaultInstance().lookupCompressor(grpcCompression) == null) {
+                throw new IllegalArgumentException("Unsupported grpcCompression: " + grpcCompression);
+            }
+            this.grpcCompression = grpcCompression;
+            return this;
+        }
 
         public ServiceDefinition build() {
             return new ServiceDefinition(this);
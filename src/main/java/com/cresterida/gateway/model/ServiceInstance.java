@@ -13,6 +13,13 @@ public class ServiceInstance {
         this.health = "UP";
     }
 
+    // Copy with interned host, for compact registries
+    public ServiceInstance compact() {
+        ServiceInstance instance = new ServiceInstance(EndpointDefinition.intern(host), port);
+        instance.health = EndpointDefinition.intern(health);
+        return instance;
+    }
+
     public String getHost() {
         return host;
     }
@@ -0,0 +1,80 @@
+package com.cresterida.gateway.model;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Warm-up of a service's upstream, run after the service compiles and before it is routed to.
+ * For an HTTP service, {@code requests} GET requests to {@code path} are sent over
+ * {@code connections} concurrent connections (at least one request per connection). For a gRPC
+ * service, the channel of every instance is connected, then {@code requests} calls of
+ * {@code endpoint} with {@code body} are sent, {@code connections} at a time. The whole warm-up
+ * gives up after {@code timeoutMillis}.
+ */
+public class WarmupConfig {
+    private int connections = 1;
+    private int requests = 0;
+    private String path = "/";
+    private String endpoint;
+    private JsonObject body = new JsonObject();
+    private long timeoutMillis = 5000;
+
+    public static WarmupConfig fromJson(JsonObject json) {
+        WarmupConfig config = new WarmupConfig();
+        config.connections = json.getInteger("connections", config.connections);
+        config.requests = json.getInteger("requests", config.requests);
+        config.path = json.getString("path", config.path);
+        config.endpoint = json.getString("endpoint");
+        config.body = json.getJsonObject("body", config.body);
+        config.timeoutMillis = json.getLong("timeoutMillis", config.timeoutMillis);
+        if (config.connections < 1) {
+            throw new IllegalArgumentException("warmup.connections must be positive");
+        }
+        if (config.requests < 0) {
+            throw new IllegalArgumentException("warmup.requests must not be negative");
+        }
+        if (!config.path.startsWith("/")) {
+            throw new IllegalArgumentException("warmup.path must start with /");
+        }
+        if (config.timeoutMillis <= 0) {
+            throw new IllegalArgumentException("warmup.timeoutMillis must be positive");
+        }
+        return config;
+    }
+
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject()
+            .put("connections", connections)
+            .put("requests", requests)
+            .put("path", path)
+            .put("timeoutMillis", timeoutMillis);
+        if (endpoint != null) {
+            json.put("endpoint", endpoint).put("body", body);
+        }
+        return json;
+    }
+
+    public int getConnections() {
+        return connections;
+    }
+
+    public int getRequests() {
+        return requests;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    // gRPC endpoint called by the warm-up, or null to only connect the channels
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public JsonObject getBody() {
+        return body;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+}
@@ -0,0 +1,145 @@
+package com.cresterida.gateway.ratelimit;
+
+import com.cresterida.gateway.model.ConcurrencyLimitConfig;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Gradient-based adaptive concurrency limit for one upstream service.
+ *
+ * <p>The limiter compares the smallest round-trip time seen recently (the upstream's latency when
+ * nothing is queued) with a short moving average of the current RTT. Their ratio is the gradient:
+ * while the current RTT stays within {@link #RTT_TOLERANCE} of the no-load RTT the limit grows by
+ * about {@code sqrt(limit)} per sample; once requests start queueing upstream the current RTT
+ * rises and the limit shrinks proportionally (by at most half per sample, before smoothing).
+ * Dropped requests (timeouts, unavailable upstream) cut the limit by {@link #BACKOFF_RATIO}.
+ *
+ * <p>Under sustained load every sample is a queued one, so the no-load RTT is re-learned every
+ * {@link #PROBE_INTERVAL} samples: it becomes the minimum of the interval that just ended, and the
+ * limit is halved so the next interval contains samples taken with the upstream queue drained.
+ * This also picks up permanent latency changes in either direction.
+ *
+ * <p>Admission is a CAS on the in-flight counter. Limit updates happen under a lock that is only
+ * tried, never waited for: a sample that arrives while another is being applied is skipped,
+ * which loses nothing an average would notice.
+ */
+public class AdaptiveConcurrencyLimiter {
+    private static final double RTT_TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.05;
+    private static final double BACKOFF_RATIO = 0.9;
+    private static final int SHORT_WINDOW = 10;
+    private static final int PROBE_INTERVAL = 1000;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final ReentrantLock updateLock = new ReentrantLock();
+    private volatile int limit;
+
+    // Guarded by updateLock
+    private double estimatedLimit;
+    private long noLoadRttNanos;
+    private long intervalMinRttNanos = Long.MAX_VALUE;
+    private double shortRttNanos;
+    private long samples;
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.estimatedLimit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.limit = (int) estimatedLimit;
+    }
+
+    public static AdaptiveConcurrencyLimiter fromConfig(ConcurrencyLimitConfig config) {
+        return new AdaptiveConcurrencyLimiter(config.getInitialLimit(), config.getMinLimit(), config.getMaxLimit());
+    }
+
+    /**
+     * Takes an in-flight slot if the service is under its limit. Every successful acquire must
+     * be followed by exactly one of {@link #onSuccess}, {@link #onDropped} or {@link #onIgnore}.
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases the slot and feeds the request's round-trip time into the limit.
+     */
+    public void onSuccess(long rttNanos) {
+        int inFlightBefore = inFlight.getAndDecrement();
+        if (rttNanos <= 0 || !updateLock.tryLock()) {
+            return;
+        }
+        try {
+            sample(rttNanos, inFlightBefore);
+        } finally {
+            updateLock.unlock();
+        }
+    }
+
+    /**
+     * Releases the slot of a request the upstream failed to serve in time, reducing the limit.
+     */
+    public void onDropped() {
+        inFlight.decrementAndGet();
+        updateLock.lock();
+        try {
+            publish(estimatedLimit * BACKOFF_RATIO);
+        } finally {
+            updateLock.unlock();
+        }
+    }
+
+    /**
+     * Releases the slot without affecting the limit, e.g. when the client went away or the
+     * request was rejected before reaching the upstream.
+     */
+    public void onIgnore() {
+        inFlight.decrementAndGet();
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private void sample(long rttNanos, int inFlightBefore) {
+        intervalMinRttNanos = Math.min(intervalMinRttNanos, rttNanos);
+        if (++samples % PROBE_INTERVAL == 0) {
+            noLoadRttNanos = intervalMinRttNanos;
+            intervalMinRttNanos = Long.MAX_VALUE;
+            publish(estimatedLimit / 2);
+            return;
+        }
+        if (noLoadRttNanos == 0 || rttNanos < noLoadRttNanos) {
+            noLoadRttNanos = rttNanos;
+        }
+        shortRttNanos = shortRttNanos == 0 ? rttNanos : shortRttNanos + (rttNanos - shortRttNanos) / SHORT_WINDOW;
+
+        double gradient = Math.max(0.5, Math.min(1.0, RTT_TOLERANCE * noLoadRttNanos / shortRttNanos));
+        double queueAllowance = Math.sqrt(estimatedLimit);
+        double target = estimatedLimit * gradient + queueAllowance;
+        // Not using the current limit, so low latency says nothing about whether it could be higher
+        if (target > estimatedLimit && inFlightBefore < estimatedLimit / 2) {
+            return;
+        }
+        publish(estimatedLimit * (1 - SMOOTHING) + target * SMOOTHING);
+    }
+
+    private void publish(double newLimit) {
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        limit = (int) estimatedLimit;
+    }
+}
@@ -0,0 +1,120 @@
+package com.cresterida.gateway.ratelimit;
+
+import com.cresterida.gateway.model.BulkheadConfig;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Caps the blocking gRPC calls of one service, so a slow upstream can hold at most
+ * {@code maxConcurrentCalls} threads of the execution strategy however many requests pile up
+ * for it, and the other services keep the rest. Calls beyond the cap wait in a FIFO queue of
+ * {@code maxQueuedCalls}; once that is full too, calls are rejected at once with
+ * {@link BulkheadFullException} rather than waiting for a thread.
+ *
+ * <p>A queued call is started by the call that frees its slot, on that call's thread. Calls
+ * complete on worker threads, hence the lock; it is only held to count and queue.
+ */
+public class Bulkhead {
+    private final String serviceId;
+    private final int maxConcurrentCalls;
+    private final int maxQueuedCalls;
+    // Guarded by this
+    private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+    private int active;
+    private final AtomicLong rejected = new AtomicLong();
+
+    public Bulkhead(String serviceId, int maxConcurrentCalls, int maxQueuedCalls) {
+        this.serviceId = serviceId;
+        this.maxConcurrentCalls = Math.max(1, maxConcurrentCalls);
+        this.maxQueuedCalls = Math.max(0, maxQueuedCalls);
+    }
+
+    public static Bulkhead fromConfig(String serviceId, BulkheadConfig config) {
+        return new Bulkhead(serviceId, config.getMaxConcurrentCalls(), config.getMaxQueuedCalls());
+    }
+
+    /**
+     * Starts the call now if a slot is free, queues it otherwise, or fails with
+     * {@link BulkheadFullException} when the queue is full as well. The slot is held until the
+     * future the call returns completes.
+     */
+    public <T> Future<T> submit(Supplier<Future<T>> call) {
+        Promise<T> result = Promise.promise();
+        Runnable start = () -> {
+            Future<T> future;
+            try {
+                future = call.get();
+            } catch (RuntimeException e) {
+                future = Future.failedFuture(e);
+            }
+            future.onComplete(ar -> {
+                // Freed before the caller hears back, so the next call is not kept waiting on it
+                release();
+                result.handle(ar);
+            });
+        };
+        synchronized (this) {
+            if (active >= maxConcurrentCalls) {
+                if (queue.size() >= maxQueuedCalls) {
+                    rejected.incrementAndGet();
+                    return Future.failedFuture(new BulkheadFullException(serviceId));
+                }
+                queue.add(start);
+                return result.future();
+            }
+            active++;
+        }
+        start.run();
+        return result.future();
+    }
+
+    // Hands the slot to the oldest queued call, if any
+    private void release() {
+        Runnable next;
+        synchronized (this) {
+            next = queue.poll();
+            if (next == null) {
+                active--;
+            }
+        }
+        if (next != null) {
+            next.run();
+        }
+    }
+
+    public synchronized int getActive() {
+        return active;
+    }
+
+    public synchronized int getQueued() {
+        return queue.size();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    public int getMaxQueuedCalls() {
+        return maxQueuedCalls;
+    }
+
+    /**
+     * A call turned away because the service's bulkhead and its queue were full.
+     */
+    public static class BulkheadFullException extends RejectedExecutionException {
+        private static final long serialVersionUID = 1L;
+
+        public BulkheadFullException(String serviceId) {
+            super("Too many concurrent calls for service: " + serviceId);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.cresterida.gateway.ratelimit;
+
+import com.cresterida.gateway.model.ServiceDefinition;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generic cell rate algorithm (GCRA) limiter. The whole state is one "theoretical arrival time"
+ * (TAT): the instant at which the limiter would be fully drained again if no further requests
+ * arrived. A request is admitted when the TAT is no more than the burst tolerance ahead of now,
+ * and admitting it moves the TAT one emission interval forward.
+ *
+ * <p>Rejections only read the TAT; an admission is a single compare-and-set, retried only when
+ * another thread admitted a request in between. Time is tracked in nanoseconds, so rates that are
+ * not whole permits per second (e.g. 5 per 100ms, 1 per 3s) carry no rounding beyond one
+ * nanosecond per interval.
+ */
+public class GcraRateLimiter implements RateLimiter {
+    private static final long MAX_TOLERANCE_NANOS = Long.MAX_VALUE / 4;
+
+    private final long emissionIntervalNanos;
+    // How far ahead of now the TAT may run: burst - 1 intervals
+    private final long toleranceNanos;
+    private final long burst;
+    private final AtomicLong tat;
+
+    /**
+     * @param permits permits released per period, at least 1
+     * @param period  length of the period, at least 1ns
+     * @param burst   permits that may be taken at once after an idle period, at least 1
+     */
+    public GcraRateLimiter(long permits, Duration period, long burst) {
+        long periodNanos = Math.max(1, period.toNanos());
+        this.emissionIntervalNanos = Math.max(1, Math.round((double) periodNanos / Math.max(1, permits)));
+        this.burst = Math.max(1, burst);
+        // Capped well below the nanoTime wrap-around so TAT comparisons stay meaningful
+        this.toleranceNanos = this.burst - 1 > MAX_TOLERANCE_NANOS / emissionIntervalNanos
+            ? MAX_TOLERANCE_NANOS
+            : emissionIntervalNanos * (this.burst - 1);
+        // Starts idle: the full burst is available immediately
+        this.tat = new AtomicLong(System.nanoTime());
+    }
+
+    public static GcraRateLimiter perSecond(long permitsPerSecond, long burst) {
+        return new GcraRateLimiter(permitsPerSecond, Duration.ofSeconds(1), burst);
+    }
+
+    public static GcraRateLimiter forService(ServiceDefinition def) {
+        return perSecond(def.getRateLimitPerSecond(), def.getBurstCapacity());
+    }
+
+    @Override
+    public boolean tryConsume() {
+        long now = System.nanoTime();
+        long current = tat.get();
+        while (true) {
+            // nanoTime may wrap, so compare differences rather than absolute values
+            long base = current - now > 0 ? current : now;
+            if (base - now > toleranceNanos) {
+                return false;
+            }
+            long witness = tat.compareAndExchange(current, base + emissionIntervalNanos);
+            if (witness == current) {
+                return true;
+            }
+            current = witness;
+        }
+    }
+
+    public long getEmissionIntervalNanos() { return emissionIntervalNanos; }
+    public long getBurst() { return burst; }
+
+    /**
+     * Permits that could be taken right now without being rejected.
+     */
+    public long getAvailablePermits() {
+        long ahead = tat.get() - System.nanoTime();
+        if (ahead <= 0) {
+            return burst;
+        }
+        if (ahead > toleranceNanos) {
+            return 0;
+        }
+        return (toleranceNanos - ahead) / emissionIntervalNanos + 1;
+    }
+}
@@ -0,0 +1,68 @@
+package com.cresterida.gateway.ratelimit;
+
+import com.cresterida.gateway.metrics.LatencyTracker;
+import com.cresterida.gateway.model.HedgingConfig;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * When and how often a service's idempotent calls may be hedged.
+ *
+ * <p>The hedge delay is the endpoint's recent latency at the configured percentile, so only
+ * calls that are already slower than almost all of their peers get a second attempt. The budget
+ * works like a token bucket filled by traffic rather than by time: every hedgeable call deposits
+ * {@code budgetPercent / 100} of a token and every hedge takes a whole one, so hedges can never
+ * exceed that share of the calls, however slow the upstream gets. The balance is capped so a
+ * quiet period cannot save up a burst of hedges.
+ */
+public class HedgingPolicy {
+    // Balance is kept in thousandths of a hedge so deposits stay integral
+    private static final long ONE_HEDGE = 1000;
+    private static final long MAX_BALANCE = 10 * ONE_HEDGE;
+
+    private final long minDelayNanos;
+    private final long deposit;
+    private final AtomicLong balance = new AtomicLong();
+
+    public HedgingPolicy(HedgingConfig config) {
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(config.getMinDelayMillis());
+        this.deposit = Math.max(1, Math.round(config.getBudgetPercent() / 100.0 * ONE_HEDGE));
+    }
+
+    /**
+     * Credits the budget for one hedgeable call.
+     */
+    public void onRequest() {
+        long current;
+        do {
+            current = balance.get();
+            if (current >= MAX_BALANCE) {
+                return;
+            }
+        } while (!balance.compareAndSet(current, Math.min(MAX_BALANCE, current + deposit)));
+    }
+
+    /**
+     * Takes one hedge from the budget, or returns false when it is spent.
+     */
+    public boolean tryHedge() {
+        long current;
+        do {
+            current = balance.get();
+            if (current < ONE_HEDGE) {
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - ONE_HEDGE));
+        return true;
+    }
+
+    /**
+     * Returns how long to wait before hedging a call to the tracked endpoint, or -1 while its
+     * latency is not known yet.
+     */
+    public long delayNanos(LatencyTracker tracker) {
+        long observed = tracker.getPercentileNanos();
+        return observed < 0 ? -1 : Math.max(minDelayNanos, observed);
+    }
+}
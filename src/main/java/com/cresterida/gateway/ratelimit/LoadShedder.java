@@ -0,0 +1,123 @@
+package com.cresterida.gateway.ratelimit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.micrometer.backends.BackendRegistries;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * Gateway-wide admission control for {@code /api/*}. The gateway counts as overloaded while the
+ * event loop runs late (measured by how late a periodic timer fires) or while too many blocking
+ * gRPC calls wait for a worker thread. While overloaded, a configurable share of low-priority
+ * requests is rejected before any routing work is done; high-priority requests are always
+ * admitted, and admin routes never pass through here.
+ *
+ * <p>Priority comes from the {@value #PRIORITY_HEADER} header ({@code high} or {@code low});
+ * requests without it get the configured default priority.
+ */
+public class LoadShedder {
+    public static final String PRIORITY_HEADER = "X-Request-Priority";
+    private static final long PROBE_INTERVAL_MILLIS = 100;
+
+    private final boolean enabled;
+    private final long maxLagNanos;
+    private final int maxWorkerQueue;
+    private final double shedRatio;
+    private final boolean defaultHighPriority;
+    private final IntSupplier workerQueueDepth;
+    private final MeterRegistry registry;
+    private final List<Meter> meters = new ArrayList<>();
+    // Null until started with a metrics registry
+    private Counter shedCounter;
+    private volatile long lagNanos;
+    private long timerId = -1;
+
+    public LoadShedder(JsonObject config, IntSupplier workerQueueDepth) {
+        this.enabled = config.getBoolean("shedding.enabled", false);
+        this.maxLagNanos = TimeUnit.MILLISECONDS.toNanos(config.getLong("shedding.eventLoopLagMillis", 50L));
+        this.maxWorkerQueue = config.getInteger("shedding.workerQueueDepth", 100);
+        this.shedRatio = Math.max(0, Math.min(1, config.getDouble("shedding.ratio", 1.0)));
+        this.defaultHighPriority = "high".equalsIgnoreCase(config.getString("shedding.defaultPriority", "low"));
+        this.workerQueueDepth = workerQueueDepth;
+
+        this.registry = enabled ? BackendRegistries.getDefaultNow() : null;
+    }
+
+    /**
+     * Registers the meters and starts measuring the lag of the calling context's event loop. Must
+     * be called from the verticle whose event loop serves {@code /api/*}.
+     */
+    public void start(Vertx vertx) {
+        if (!enabled) {
+            return;
+        }
+        if (registry != null) {
+            meters.add(Gauge.builder("gateway_event_loop_lag", this, s -> s.lagNanos / 1e9)
+                .baseUnit("seconds")
+                .register(registry));
+            meters.add(Gauge.builder("gateway_worker_queue_depth", workerQueueDepth, IntSupplier::getAsInt)
+                .strongReference(true)
+                .register(registry));
+            shedCounter = Counter.builder("gateway_shed_requests").register(registry);
+            meters.add(shedCounter);
+        }
+        scheduleProbe(vertx);
+    }
+
+    // One-shot timers re-armed from each tick, so every tick measures its own delay
+    private void scheduleProbe(Vertx vertx) {
+        long expected = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(PROBE_INTERVAL_MILLIS);
+        timerId = vertx.setTimer(PROBE_INTERVAL_MILLIS, id -> {
+            lagNanos = Math.max(0, System.nanoTime() - expected);
+            if (timerId == id) {
+                scheduleProbe(vertx);
+            }
+        });
+    }
+
+    public void stop(Vertx vertx) {
+        if (timerId >= 0) {
+            vertx.cancelTimer(timerId);
+            timerId = -1;
+        }
+        if (registry != null) {
+            meters.forEach(registry::remove);
+            meters.clear();
+            shedCounter = null;
+        }
+    }
+
+    public boolean isOverloaded() {
+        return lagNanos > maxLagNanos || workerQueueDepth.getAsInt() > maxWorkerQueue;
+    }
+
+    /**
+     * Returns false when the request should be rejected.
+     */
+    public boolean admit(String priorityHeader) {
+        if (!enabled || !isOverloaded()) {
+            return true;
+        }
+        boolean high = priorityHeader == null ? defaultHighPriority : "high".equalsIgnoreCase(priorityHeader);
+        if (high || ThreadLocalRandom.current().nextDouble() >= shedRatio) {
+            return true;
+        }
+        if (shedCounter != null) {
+            shedCounter.increment();
+        }
+        return false;
+    }
+
+    public long getLagNanos() {
+        return lagNanos;
+    }
+}
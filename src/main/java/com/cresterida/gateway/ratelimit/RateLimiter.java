@@ -0,0 +1,12 @@
+package com.cresterida.gateway.ratelimit;
+
+/**
+ * Per-service admission decision, shared by every event loop and gRPC thread that serves the service.
+ */
+public interface RateLimiter {
+
+    /**
+     * Takes one permit if available. Never blocks.
+     */
+    boolean tryConsume();
+}
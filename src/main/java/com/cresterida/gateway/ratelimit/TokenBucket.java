@@ -5,7 +5,7 @@ import java.util.concurrent.atomic.AtomicLong;
 /**
  * A very lightweight lock-free token bucket for per-service rate limiting.
  */
-public class TokenBucket {
+public class TokenBucket implements RateLimiter {
   private final long capacity;
   private final long refillPerSecond;
   private final AtomicLong tokens;
@@ -18,6 +18,7 @@ public class TokenBucket {
     this.lastRefillNanos = System.nanoTime();
   }
 
+  @Override
   public boolean tryConsume() {
     refillIfNeeded();
     while (true) {
@@ -0,0 +1,56 @@
+package com.cresterida.gateway.registry;
+
+import com.cresterida.gateway.mapping.MappingPlan;
+import com.cresterida.gateway.metrics.LatencyTracker;
+import com.cresterida.gateway.model.EndpointDefinition;
+import com.cresterida.gateway.util.ByteArrayMarshaller;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.Message;
+import io.grpc.MethodDescriptor;
+
+/**
+ * Everything the transcoding path needs for one gRPC endpoint, resolved at registration.
+ */
+public class CompiledEndpoint {
+    private final EndpointDefinition definition;
+    private final Descriptors.MethodDescriptor methodDescriptor;
+    private final MethodDescriptor<Message, Message> grpcMethod;
+    private final MethodDescriptor<byte[], byte[]> rawGrpcMethod;
+    private final MappingPlan inputPlan;
+    private final MappingPlan outputPlan;
+    private final long timeoutMillis;
+    private final LatencyTracker latencyTracker;
+
+    CompiledEndpoint(EndpointDefinition definition,
+                     Descriptors.MethodDescriptor methodDescriptor,
+                     MethodDescriptor<Message, Message> grpcMethod,
+                     MappingPlan inputPlan,
+                     MappingPlan outputPlan,
+                     long timeoutMillis,
+                     LatencyTracker latencyTracker) {
+        this.definition = definition;
+        this.methodDescriptor = methodDescriptor;
+        this.grpcMethod = grpcMethod;
+        this.rawGrpcMethod = grpcMethod.toBuilder(ByteArrayMarshaller.INSTANCE, ByteArrayMarshaller.INSTANCE).build();
+        this.inputPlan = inputPlan;
+        this.outputPlan = outputPlan;
+        this.timeoutMillis = timeoutMillis;
+        this.latencyTracker = latencyTracker;
+    }
+
+    public EndpointDefinition getDefinition() { return definition; }
+    public String getName() { return definition.getName(); }
+    public String getMethodName() { return definition.getMethodName(); }
+    public Descriptors.MethodDescriptor getMethodDescriptor() { return methodDescriptor; }
+    public Descriptors.Descriptor getInputType() { return methodDescriptor.getInputType(); }
+    public Descriptors.Descriptor getOutputType() { return methodDescriptor.getOutputType(); }
+    public MethodDescriptor<Message, Message> getGrpcMethod() { return grpcMethod; }
+    // Same method with serialized messages on both sides, for clients that send or accept protobuf
+    public MethodDescriptor<byte[], byte[]> getRawGrpcMethod() { return rawGrpcMethod; }
+    public MappingPlan getInputPlan() { return inputPlan; }
+    public MappingPlan getOutputPlan() { return outputPlan; }
+    // Endpoint timeout, or the service timeout when the endpoint declares none
+    public long getTimeoutMillis() { return timeoutMillis; }
+    // Recent upstream latency, tracked only for endpoints that can be hedged; null otherwise
+    public LatencyTracker getLatencyTracker() { return latencyTracker; }
+}
@@ -0,0 +1,102 @@
+package com.cresterida.gateway.registry;
+
+import com.cresterida.gateway.metrics.ServiceMeters;
+import com.cresterida.gateway.model.ServiceDefinition;
+import com.cresterida.gateway.model.ServiceType;
+import com.cresterida.gateway.ratelimit.AdaptiveConcurrencyLimiter;
+import com.cresterida.gateway.ratelimit.Bulkhead;
+import com.cresterida.gateway.ratelimit.HedgingPolicy;
+import com.cresterida.gateway.util.DescriptorPool;
+import com.google.protobuf.Descriptors;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A registered service together with the artifacts derived from it at registration time
+ * (proto descriptors, gRPC method descriptors, mapping plans, the resolved HTTP upstreams), so
+ * the request path never has to run protoc, parse mapping expressions or wait for DNS.
+ */
+public class CompiledService {
+    private final ServiceDefinition definition;
+    private final Descriptors.FileDescriptor fileDescriptor;
+    // Null for HTTP services
+    private final DescriptorPool.Lease descriptorLease;
+    private final Map<String, CompiledEndpoint> endpoints;
+    private final Map<String, CompiledEndpoint> endpointsByMethod;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final HedgingPolicy hedgingPolicy;
+    private final Bulkhead bulkhead;
+    private final ServiceMeters meters;
+    private final UpstreamTarget upstreamTarget;
+    private final TrafficMirror mirror;
+
+    CompiledService(ServiceDefinition definition,
+                    Descriptors.FileDescriptor fileDescriptor,
+                    DescriptorPool.Lease descriptorLease,
+                    Map<String, CompiledEndpoint> endpoints,
+                    Map<String, CompiledEndpoint> endpointsByMethod,
+                    UpstreamTarget upstreamTarget,
+                    TrafficMirror mirror) {
+        this.definition = definition;
+        this.upstreamTarget = upstreamTarget;
+        this.mirror = mirror;
+        this.fileDescriptor = fileDescriptor;
+        this.descriptorLease = descriptorLease;
+        this.endpoints = endpoints;
+        this.endpointsByMethod = endpointsByMethod;
+        this.concurrencyLimiter = definition.getConcurrencyLimit() == null
+            ? null
+            : AdaptiveConcurrencyLimiter.fromConfig(definition.getConcurrencyLimit());
+        this.hedgingPolicy = definition.getHedging() == null ? null : new HedgingPolicy(definition.getHedging());
+        this.bulkhead = definition.getBulkhead() == null ? null : Bulkhead.fromConfig(definition.getId(), definition.getBulkhead());
+        this.meters = new ServiceMeters(definition.getId(), endpoints.keySet(), concurrencyLimiter, bulkhead, mirror);
+    }
+
+    // Called by the registry when the service enters it: binds the meters and pins the pooled descriptors
+    void bind() {
+        meters.bind();
+        if (descriptorLease != null) {
+            descriptorLease.retain();
+        }
+    }
+
+    // Called by the registry when the service leaves it
+    void close() {
+        meters.close();
+        if (descriptorLease != null) {
+            descriptorLease.release();
+        }
+    }
+
+    public ServiceDefinition getDefinition() { return definition; }
+    public String getId() { return definition.getId(); }
+    public ServiceType getType() { return definition.getType(); }
+    public Descriptors.FileDescriptor getFileDescriptor() { return fileDescriptor; }
+    public ServiceMeters getMeters() { return meters; }
+    // Null when the service has no concurrencyLimit configured
+    public AdaptiveConcurrencyLimiter getConcurrencyLimiter() { return concurrencyLimiter; }
+    // Null when the service has no hedging configured
+    public HedgingPolicy getHedgingPolicy() { return hedgingPolicy; }
+    // Null when the service has no bulkhead configured
+    public Bulkhead getBulkhead() { return bulkhead; }
+    // Null for gRPC services and HTTP services without an upstreamBaseUrl
+    public UpstreamTarget getUpstreamTarget() { return upstreamTarget; }
+    // Null when the service has no mirror configured
+    public TrafficMirror getMirror() { return mirror; }
+
+    // Lookup by endpoint name, i.e. the last segment of /api/... paths
+    public CompiledEndpoint getEndpoint(String name) {
+        return endpoints.get(name);
+    }
+
+    // Lookup by gRPC method name, as used by native gRPC paths
+    public CompiledEndpoint getEndpointByMethod(String methodName) {
+        return endpointsByMethod.get(methodName);
+    }
+
+    public Collection<CompiledEndpoint> getEndpoints() {
+        return Collections.unmodifiableCollection(endpoints.values());
+    }
+}
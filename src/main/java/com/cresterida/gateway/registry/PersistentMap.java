@@ -0,0 +1,315 @@
+package com.cresterida.gateway.registry;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable hash map whose {@link #plus} and {@link #minus} return a new map sharing all but
+ * the changed path with this one (a hash array mapped trie). A write copies at most one small
+ * array per level, about log32(n) of them, instead of the whole map. Reads are lock-free like
+ * those of any immutable map.
+ *
+ * <p>The map is read-only through the {@link Map} interface. Keys must not be null.
+ */
+final class PersistentMap<K, V> extends AbstractMap<K, V> {
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    // Root, a node per 5 hash bits below it, and the leaves of a hash collision
+    private static final int MAX_DEPTH = 8;
+    private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(new Node(0, new Object[0]), 0);
+
+    private static final class Leaf extends AbstractMap.SimpleImmutableEntry<Object, Object> {
+        private static final long serialVersionUID = 1L;
+        final int hash;
+
+        Leaf(int hash, Object key, Object value) {
+            super(key, value);
+            this.hash = hash;
+        }
+    }
+
+    // Slots are leaves, nodes or collisions, in the order of their bits in the bitmap
+    private record Node(int bitmap, Object[] slots) {
+    }
+
+    // Leaves whose keys differ but whose hashes are equal
+    private record Collision(int hash, Object[] leaves) {
+    }
+
+    private final Node root;
+    private final int size;
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    /**
+     * Returns a map with {@code key} mapped to {@code value}, this map when it already is.
+     */
+    PersistentMap<K, V> plus(K key, V value) {
+        Leaf leaf = new Leaf(hash(key), key, value);
+        boolean[] added = new boolean[1];
+        Node updated = (Node) put(root, leaf, 0, added);
+        return updated == root ? this : new PersistentMap<>(updated, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * Returns a map without {@code key}, this map when it has no such key.
+     */
+    PersistentMap<K, V> minus(Object key) {
+        Object updated = remove(root, hash(key), key, 0);
+        if (updated == root) {
+            return this;
+        }
+        return updated == null ? empty() : new PersistentMap<>((Node) updated, size - 1);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        Leaf leaf = find(key);
+        return leaf != null ? (V) leaf.getValue() : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return find(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private Leaf find(Object key) {
+        if (key == null) {
+            return null;
+        }
+        int hash = hash(key);
+        Object slot = root;
+        for (int shift = 0; ; shift += BITS) {
+            if (slot instanceof Node node) {
+                int bit = bit(hash, shift);
+                if ((node.bitmap() & bit) == 0) {
+                    return null;
+                }
+                slot = node.slots()[index(node.bitmap(), bit)];
+            } else if (slot instanceof Leaf leaf) {
+                return leaf.hash == hash && leaf.getKey().equals(key) ? leaf : null;
+            } else {
+                Collision collision = (Collision) slot;
+                return collision.hash() == hash ? findLeaf(collision.leaves(), key) : null;
+            }
+        }
+    }
+
+    // Returns the slot with the leaf in place, the same slot when nothing changed
+    private static Object put(Object slot, Leaf leaf, int shift, boolean[] added) {
+        if (slot instanceof Node node) {
+            int bit = bit(leaf.hash, shift);
+            int index = index(node.bitmap(), bit);
+            if ((node.bitmap() & bit) == 0) {
+                added[0] = true;
+                return new Node(node.bitmap() | bit, inserted(node.slots(), index, leaf));
+            }
+            Object child = node.slots()[index];
+            Object updated = put(child, leaf, shift + BITS, added);
+            return updated == child ? node : new Node(node.bitmap(), replaced(node.slots(), index, updated));
+        }
+        if (slot instanceof Leaf existing) {
+            if (existing.hash == leaf.hash && existing.getKey().equals(leaf.getKey())) {
+                return existing.getValue() == leaf.getValue() ? existing : leaf;
+            }
+            added[0] = true;
+            if (existing.hash == leaf.hash) {
+                return new Collision(leaf.hash, new Object[] {existing, leaf});
+            }
+            return merge(existing, existing.hash, leaf, leaf.hash, shift);
+        }
+        Collision collision = (Collision) slot;
+        if (collision.hash() != leaf.hash) {
+            added[0] = true;
+            return merge(collision, collision.hash(), leaf, leaf.hash, shift);
+        }
+        Object[] leaves = collision.leaves();
+        for (int i = 0; i < leaves.length; i++) {
+            Leaf existing = (Leaf) leaves[i];
+            if (existing.getKey().equals(leaf.getKey())) {
+                return existing.getValue() == leaf.getValue() ? collision
+                    : new Collision(collision.hash(), replaced(leaves, i, leaf));
+            }
+        }
+        added[0] = true;
+        return new Collision(collision.hash(), inserted(leaves, leaves.length, leaf));
+    }
+
+    // Returns the slot without the key, null when nothing is left, the same slot when the key is absent
+    private static Object remove(Object slot, int hash, Object key, int shift) {
+        if (slot instanceof Node node) {
+            int bit = bit(hash, shift);
+            if ((node.bitmap() & bit) == 0) {
+                return node;
+            }
+            int index = index(node.bitmap(), bit);
+            Object child = node.slots()[index];
+            Object updated = remove(child, hash, key, shift + BITS);
+            if (updated == child) {
+                return node;
+            }
+            Node result;
+            if (updated != null) {
+                result = new Node(node.bitmap(), replaced(node.slots(), index, updated));
+            } else if (node.slots().length == 1) {
+                return null;
+            } else {
+                result = new Node(node.bitmap() & ~bit, removed(node.slots(), index));
+            }
+            // A lone leaf moves up, so the trie gets no deeper than its contents need; the root stays a node
+            if (shift > 0 && result.slots().length == 1 && !(result.slots()[0] instanceof Node)) {
+                return result.slots()[0];
+            }
+            return result;
+        }
+        if (slot instanceof Leaf leaf) {
+            return leaf.hash == hash && leaf.getKey().equals(key) ? null : leaf;
+        }
+        Collision collision = (Collision) slot;
+        if (collision.hash() != hash) {
+            return collision;
+        }
+        Object[] leaves = collision.leaves();
+        for (int i = 0; i < leaves.length; i++) {
+            if (((Leaf) leaves[i]).getKey().equals(key)) {
+                return leaves.length == 2 ? leaves[1 - i] : new Collision(hash, removed(leaves, i));
+            }
+        }
+        return collision;
+    }
+
+    // A node, or a chain of single-slot nodes, holding two slots whose hashes differ
+    private static Node merge(Object first, int firstHash, Object second, int secondHash, int shift) {
+        int firstBit = bit(firstHash, shift);
+        int secondBit = bit(secondHash, shift);
+        if (firstBit == secondBit) {
+            return new Node(firstBit, new Object[] {merge(first, firstHash, second, secondHash, shift + BITS)});
+        }
+        Object[] slots = Integer.compareUnsigned(firstBit, secondBit) < 0
+            ? new Object[] {first, second} : new Object[] {second, first};
+        return new Node(firstBit | secondBit, slots);
+    }
+
+    private static Leaf findLeaf(Object[] leaves, Object key) {
+        for (Object leaf : leaves) {
+            if (((Leaf) leaf).getKey().equals(key)) {
+                return (Leaf) leaf;
+            }
+        }
+        return null;
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    private static int index(int bitmap, int bit) {
+        return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    private static Object[] inserted(Object[] slots, int index, Object slot) {
+        Object[] copy = new Object[slots.length + 1];
+        System.arraycopy(slots, 0, copy, 0, index);
+        copy[index] = slot;
+        System.arraycopy(slots, index, copy, index + 1, slots.length - index);
+        return copy;
+    }
+
+    private static Object[] replaced(Object[] slots, int index, Object slot) {
+        Object[] copy = slots.clone();
+        copy[index] = slot;
+        return copy;
+    }
+
+    private static Object[] removed(Object[] slots, int index) {
+        Object[] copy = new Object[slots.length - 1];
+        System.arraycopy(slots, 0, copy, 0, index);
+        System.arraycopy(slots, index + 1, copy, index, slots.length - index - 1);
+        return copy;
+    }
+
+    // Depth-first over the trie, keeping the slots and position of each level on a fixed stack
+    private final class EntryIterator implements Iterator<Entry<K, V>> {
+        private final Object[][] slots = new Object[MAX_DEPTH][];
+        private final int[] positions = new int[MAX_DEPTH];
+        private int depth;
+        private Leaf next;
+
+        EntryIterator() {
+            slots[0] = root.slots();
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Leaf current = next;
+            advance();
+            return (Entry<K, V>) (Entry<?, ?>) current;
+        }
+
+        private void advance() {
+            next = null;
+            while (depth >= 0) {
+                if (positions[depth] == slots[depth].length) {
+                    depth--;
+                    continue;
+                }
+                Object slot = slots[depth][positions[depth]++];
+                if (slot instanceof Leaf leaf) {
+                    next = leaf;
+                    return;
+                }
+                depth++;
+                slots[depth] = slot instanceof Node node ? node.slots() : ((Collision) slot).leaves();
+                positions[depth] = 0;
+            }
+        }
+    }
+}
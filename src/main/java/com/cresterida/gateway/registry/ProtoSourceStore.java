@@ -0,0 +1,95 @@
+package com.cresterida.gateway.registry;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.function.Supplier;
+
+/**
+ * Local file store for the proto sources of a compact registry: each source is written once,
+ * under the hash of its content, and read back only when a definition is serialized again (admin
+ * reads, export, replication). Services with the same source share one file, and their
+ * {@link Source}s are equal.
+ *
+ * <p>Files are never deleted while the gateway runs, since another registry using the same
+ * directory may still refer to them; the directory can be emptied while the gateway is stopped.
+ */
+public final class ProtoSourceStore {
+    private final Path dir;
+
+    /**
+     * A source in the store, named by the SHA-256 of its content. {@link #get()} reads it back
+     * from the file on each call and blocks on file IO.
+     */
+    public record Source(String hash, Path file) implements Supplier<String> {
+        @Override
+        public String get() {
+            try {
+                return Files.readString(file, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read proto source from " + file, e);
+            }
+        }
+    }
+
+    public ProtoSourceStore(Path dir) {
+        this.dir = dir;
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create proto source store " + dir, e);
+        }
+    }
+
+    /**
+     * Writes {@code source} to the store unless it is already there, and returns a reference
+     * that reads it back on each call. Blocks on file IO.
+     */
+    public Source spill(String source) {
+        String hash = hash(source);
+        Path file = dir.resolve(hash + ".proto");
+        if (!Files.exists(file)) {
+            try {
+                Path temp = Files.createTempFile(dir, "spill", ".tmp");
+                try {
+                    Files.writeString(temp, source, StandardCharsets.UTF_8);
+                    move(temp, file);
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot write proto source to " + file, e);
+            }
+        }
+        return new Source(hash, file);
+    }
+
+    public Path getDir() {
+        return dir;
+    }
+
+    // Renames so a concurrent reader or writer of the same source never sees a partial file
+    private static void move(Path temp, Path file) throws IOException {
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static String hash(String source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(source.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
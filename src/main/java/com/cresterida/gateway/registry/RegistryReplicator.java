@@ -0,0 +1,302 @@
+package com.cresterida.gateway.registry;
+
+import com.cresterida.gateway.model.ServiceDefinition;
+import com.cresterida.gateway.ratelimit.GcraRateLimiter;
+import com.cresterida.gateway.ratelimit.RateLimiter;
+import com.cresterida.gateway.util.ExecutionStrategy;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Keeps the registries of every gateway node in a cluster in step over the Vert.x event bus.
+ *
+ * <p>Each change made on a node (admin API, service directory) is stamped with a Lamport version
+ * and published to all nodes as a delta carrying the service definition, or a tombstone for a
+ * removal. Per service the delta with the highest (version, origin node) wins, so nodes converge
+ * whatever order deltas arrive in. Only definitions travel: each node compiles descriptors and
+ * mapping plans itself, on its execution strategy, and warms the upstream up before the service
+ * is routed to, just as for a local registration.
+ *
+ * <p>A node that starts subscribes to deltas, then asks one of its peers for everything newer
+ * than what it already knows (the snapshot on a fresh node) before it registers services of its
+ * own. The same exchange runs every {@code syncIntervalMillis} so a node that missed deltas
+ * catches up. Tombstones are kept so a removal cannot be undone by a node that missed it.
+ *
+ * <p>The replicator's state is guarded by the registry's lock, which local changes already hold
+ * when they are reported, so versions are assigned in the order changes took effect. Deltas are
+ * encoded after the lock is released, on the execution strategy, since a compact registry reads
+ * proto sources back from disk to serialize its definitions.
+ */
+public class RegistryReplicator {
+    private static final Logger LOGGER = LogManager.getLogger(RegistryReplicator.class);
+    public static final String DELTAS_ADDRESS = "gateway.registry.deltas";
+    public static final String SYNC_ADDRESS = "gateway.registry.sync";
+
+    private final Vertx vertx;
+    private final ServiceRegistry registry;
+    private final Map<String, RateLimiter> limiters;
+    private final ExecutionStrategy execution;
+    private final ServiceWarmer warmer;
+    private final long syncIntervalMillis;
+    private final String nodeId = UUID.randomUUID().toString();
+    // Guarded by the registry's lock
+    private final Map<String, Entry> entries = new HashMap<>();
+    private long clock;
+    private MessageConsumer<JsonObject> deltaConsumer;
+    private MessageConsumer<JsonObject> syncConsumer;
+    private long timerId = -1;
+
+    /**
+     * The latest known change of one service. Both definitions are null when the service was
+     * removed.
+     *
+     * @param definition the registered definition, once the change is applied on this node
+     * @param received the definition as a peer sent it, until it is compiled and applied here
+     */
+    private record Entry(String id, long version, String origin, ServiceDefinition definition, JsonObject received) {
+        boolean newerThan(long otherVersion, String otherOrigin) {
+            return version != otherVersion ? version > otherVersion : origin.compareTo(otherOrigin) > 0;
+        }
+
+        boolean removed() {
+            return definition == null && received == null;
+        }
+
+        // Blocks on file IO for a compact definition, so never called under the registry's lock
+        JsonObject toJson() {
+            return new JsonObject()
+                .put("id", id)
+                .put("version", version)
+                .put("origin", origin)
+                .put("definition", received != null ? received : definition != null ? definition.toJson() : null);
+        }
+
+        static Entry fromJson(JsonObject json) {
+            return new Entry(json.getString("id"), json.getLong("version"), json.getString("origin"), null,
+                json.getJsonObject("definition"));
+        }
+    }
+
+    // An accepted delta once compiled; compiled is null for a removal or a definition that failed
+    private record Received(Entry entry, CompiledService compiled, boolean failed) {
+    }
+
+    public RegistryReplicator(Vertx vertx, ServiceRegistry registry, Map<String, RateLimiter> limiters,
+                              ExecutionStrategy execution, ServiceWarmer warmer, long syncIntervalMillis) {
+        this.vertx = vertx;
+        this.registry = registry;
+        this.limiters = limiters;
+        this.execution = execution;
+        this.warmer = warmer;
+        this.syncIntervalMillis = syncIntervalMillis;
+    }
+
+    /**
+     * Joins replication: completes once this node has caught up with a peer, or straight away
+     * when it is the only node. Call before registering any service locally.
+     */
+    public Future<Void> start() {
+        registry.setChangeListener(this::publish);
+        deltaConsumer = vertx.eventBus().consumer(DELTAS_ADDRESS, this::onDeltas);
+        // Subscribed before syncing, so nothing published during the sync is missed
+        return deltaConsumer.completion()
+            .compose(v -> sync())
+            .compose(v -> {
+                syncConsumer = vertx.eventBus().consumer(SYNC_ADDRESS, this::onSync);
+                return syncConsumer.completion();
+            })
+            .onSuccess(v -> {
+                if (syncIntervalMillis > 0) {
+                    timerId = vertx.setPeriodic(syncIntervalMillis, id -> sync());
+                }
+                LOGGER.info("Registry replication started on node {}, {} services known", nodeId, registry.size());
+            });
+    }
+
+    public Future<Void> stop() {
+        registry.setChangeListener(null);
+        if (timerId >= 0) {
+            vertx.cancelTimer(timerId);
+            timerId = -1;
+        }
+        List<Future<Void>> unregistered = new ArrayList<>();
+        if (deltaConsumer != null) {
+            unregistered.add(deltaConsumer.unregister());
+        }
+        if (syncConsumer != null) {
+            unregistered.add(syncConsumer.unregister());
+        }
+        return Future.join(unregistered).mapEmpty();
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    // Called by the registry, under its lock, for every local change
+    private void publish(Collection<CompiledService> added, Collection<String> removedIds) {
+        long version = ++clock;
+        List<Entry> changed = new ArrayList<>(added.size() + removedIds.size());
+        for (CompiledService service : added) {
+            Entry entry = new Entry(service.getId(), version, nodeId, service.getDefinition(), null);
+            entries.put(entry.id(), entry);
+            changed.add(entry);
+        }
+        for (String id : removedIds) {
+            Entry entry = new Entry(id, version, nodeId, null, null);
+            entries.put(id, entry);
+            changed.add(entry);
+        }
+        // Publications may overtake each other, which is fine as the highest version wins; a
+        // delta that cannot be encoded reaches the other nodes with their next sync instead
+        execution.execute(() -> toJson(changed))
+            .onSuccess(deltas -> vertx.eventBus().publish(DELTAS_ADDRESS, new JsonObject().put("origin", nodeId).put("deltas", deltas)))
+            .onFailure(err -> LOGGER.warn("Failed to publish {} registry changes: {}", changed.size(), err.getMessage()));
+    }
+
+    private void onDeltas(Message<JsonObject> message) {
+        // Our own publications come back to us
+        if (nodeId.equals(message.body().getString("origin"))) {
+            return;
+        }
+        receive(message.body().getJsonArray("deltas"));
+    }
+
+    // Answers with every entry newer than what the requester knows
+    private void onSync(Message<JsonObject> message) {
+        JsonObject request = message.body();
+        if (nodeId.equals(request.getString("origin"))) {
+            message.fail(409, "Sync request from the same node");
+            return;
+        }
+        JsonObject known = request.getJsonObject("known");
+        List<Entry> newer = new ArrayList<>();
+        synchronized (registry) {
+            for (Entry entry : entries.values()) {
+                JsonObject theirs = known.getJsonObject(entry.id());
+                if (theirs == null || entry.newerThan(theirs.getLong("version"), theirs.getString("origin"))) {
+                    newer.add(entry);
+                }
+            }
+        }
+        execution.execute(() -> toJson(newer))
+            .onSuccess(deltas -> message.reply(new JsonObject().put("deltas", deltas)))
+            .onFailure(err -> message.fail(500, err.getMessage()));
+    }
+
+    private static JsonArray toJson(List<Entry> changed) {
+        JsonArray deltas = new JsonArray();
+        changed.forEach(entry -> deltas.add(entry.toJson()));
+        return deltas;
+    }
+
+    /**
+     * Asks one peer for the entries this node is missing. Never fails: being alone in the cluster,
+     * or a peer that does not answer, only leaves catching up to the next round.
+     */
+    private Future<Void> sync() {
+        JsonObject known = new JsonObject();
+        synchronized (registry) {
+            entries.forEach((id, entry) -> known.put(id, new JsonObject()
+                .put("version", entry.version())
+                .put("origin", entry.origin())));
+        }
+        JsonObject request = new JsonObject().put("origin", nodeId).put("known", known);
+        return vertx.eventBus().<JsonObject>request(SYNC_ADDRESS, request)
+            .compose(reply -> receive(reply.body().getJsonArray("deltas")))
+            .recover(err -> {
+                if (err instanceof ReplyException reply && reply.failureType() == ReplyFailure.NO_HANDLERS) {
+                    LOGGER.debug("No other gateway node to sync the registry with");
+                } else if (!(err instanceof ReplyException reply && reply.failureCode() == 409)) {
+                    LOGGER.warn("Registry sync failed: {}", err.getMessage());
+                }
+                return Future.succeededFuture();
+            });
+    }
+
+    /**
+     * Keeps the deltas newer than what this node knows, compiles and warms them up in parallel,
+     * then applies those that are still the latest in one registry swap.
+     */
+    private Future<Void> receive(JsonArray deltas) {
+        List<Entry> accepted = new ArrayList<>();
+        synchronized (registry) {
+            for (int i = 0; i < deltas.size(); i++) {
+                Entry entry = Entry.fromJson(deltas.getJsonObject(i));
+                clock = Math.max(clock, entry.version());
+                Entry current = entries.get(entry.id());
+                if (current == null || entry.newerThan(current.version(), current.origin())) {
+                    entries.put(entry.id(), entry);
+                    accepted.add(entry);
+                }
+            }
+        }
+        if (accepted.isEmpty()) {
+            return Future.succeededFuture();
+        }
+
+        List<Future<Received>> received = new ArrayList<>(accepted.size());
+        for (Entry entry : accepted) {
+            received.add(entry.removed()
+                ? Future.succeededFuture(new Received(entry, null, false))
+                : compile(entry));
+        }
+        return Future.all(received).map(CompositeFuture::<Received>list).map(results -> {
+            List<CompiledService> added = new ArrayList<>();
+            List<String> removedIds = new ArrayList<>();
+            synchronized (registry) {
+                for (Received result : results) {
+                    // Superseded while it compiled; the newer delta is applied on its own
+                    if (entries.get(result.entry().id()) != result.entry() || result.failed()) {
+                        continue;
+                    }
+                    if (result.compiled() != null) {
+                        added.add(result.compiled());
+                        // Keeps the registered definition, which may be compact, rather than the JSON received
+                        Entry entry = result.entry();
+                        entries.put(entry.id(), new Entry(entry.id(), entry.version(), entry.origin(),
+                            result.compiled().getDefinition(), null));
+                    } else {
+                        removedIds.add(result.entry().id());
+                    }
+                }
+                registry.applyReplicated(added, removedIds);
+            }
+            for (String id : removedIds) {
+                limiters.remove(id);
+            }
+            for (CompiledService service : added) {
+                limiters.put(service.getId(), GcraRateLimiter.forService(service.getDefinition()));
+            }
+            LOGGER.info("Replicated {} services, removed {}", added.size(), removedIds.size());
+            return null;
+        });
+    }
+
+    // Never fails: a definition that does not compile here keeps the previous version registered
+    private Future<Received> compile(Entry entry) {
+        return execution.execute(() -> ServiceCompiler.compile(ServiceDefinition.fromJson(entry.received()), registry.getProtoStore()))
+            .compose(compiled -> warmer.warmUp(compiled).map(compiled))
+            .map(compiled -> new Received(entry, compiled, false))
+            .recover(err -> {
+                LOGGER.warn("Failed to compile replicated service {}: {}", entry.id(), err.getMessage());
+                return Future.succeededFuture(new Received(entry, null, true));
+            });
+    }
+}
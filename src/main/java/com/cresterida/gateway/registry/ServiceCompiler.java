@@ -0,0 +1,131 @@
+package com.cresterida.gateway.registry;
+
+import com.cresterida.gateway.mapping.MappingPlan;
+import com.cresterida.gateway.metrics.LatencyTracker;
+import com.cresterida.gateway.model.EndpointDefinition;
+import com.cresterida.gateway.model.JsonFieldMapping;
+import com.cresterida.gateway.model.MirrorConfig;
+import com.cresterida.gateway.model.ServiceDefinition;
+import com.cresterida.gateway.model.ServiceType;
+import com.cresterida.gateway.util.DynamicMessageMarshaller;
+import com.cresterida.gateway.util.ProtoDescriptorBuilder;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.Message;
+import io.grpc.MethodDescriptor;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Turns a {@link ServiceDefinition} into a {@link CompiledService}. Compiling a gRPC service
+ * runs protoc and compiling an HTTP service resolves its upstream host, so callers must invoke
+ * it off the event loop.
+ */
+public final class ServiceCompiler {
+
+    private ServiceCompiler() {
+    }
+
+    public static CompiledService compile(ServiceDefinition sd) throws Exception {
+        return compile(sd, null);
+    }
+
+    /**
+     * Compiles {@code sd}, keeping its definition in compact form with the proto source spilled
+     * to {@code protoStore} when that is not null.
+     */
+    public static CompiledService compile(ServiceDefinition sd, ProtoSourceStore protoStore) throws Exception {
+        TrafficMirror mirror = sd.getMirror() == null ? null : mirror(sd);
+        if (sd.getType() != ServiceType.GRPC) {
+            UpstreamTarget target = null;
+            if (sd.getUpstreamBaseUrl() != null && !sd.getUpstreamBaseUrl().isEmpty()) {
+                target = UpstreamTarget.parse(sd.getUpstreamBaseUrl());
+                target.resolve();
+            }
+            return new CompiledService(protoStore == null ? sd : sd.compact(null), null, null, Map.of(), Map.of(), target, mirror);
+        }
+        if (sd.getProtoDefinition() == null || sd.getProtoDefinition().isEmpty()) {
+            throw new IllegalArgumentException("protoDefinition is required for gRPC service: " + sd.getId());
+        }
+
+        ProtoDescriptorBuilder.BuildResult buildResult = ProtoDescriptorBuilder.buildFromProtoDefinition(
+            sd.getId().replaceAll("[^a-zA-Z0-9]", "_"), // Create a safe file prefix from service id
+            sd.getProtoDefinition()
+        );
+        Descriptors.FileDescriptor fileDescriptor = buildResult.getFileDescriptor();
+        // What the compiled service keeps; the endpoints below refer to its endpoint definitions
+        ServiceDefinition kept = protoStore == null ? sd : sd.compact(protoStore.spill(sd.getProtoDefinition()));
+
+        Descriptors.ServiceDescriptor serviceDescriptor = fileDescriptor.findServiceByName(kept.getName());
+        if (serviceDescriptor == null) {
+            throw new IllegalArgumentException("Service " + kept.getName() + " not found in protoDefinition");
+        }
+
+        Collection<JsonFieldMapping> fieldMappings = kept.getFieldMappings().values();
+        Map<String, CompiledEndpoint> endpoints = new HashMap<>();
+        Map<String, CompiledEndpoint> endpointsByMethod = new HashMap<>();
+        for (EndpointDefinition ed : kept.getEndpoints().values()) {
+            Descriptors.MethodDescriptor methodDesc = serviceDescriptor.findMethodByName(ed.getMethodName());
+            if (methodDesc == null) {
+                throw new IllegalArgumentException(String.format(
+                    "Endpoint '%s' refers to unknown method %s", ed.getName(), ed.getMethodName()));
+            }
+
+            MappingPlan inputPlan;
+            MappingPlan outputPlan;
+            try {
+                inputPlan = MappingPlan.forInput(ed.getInputMapping(), fieldMappings, methodDesc.getInputType());
+                outputPlan = MappingPlan.forOutput(ed.getOutputMapping(), fieldMappings, methodDesc.getOutputType());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid mapping for endpoint '" + ed.getName() + "': " + e.getMessage(), e);
+            }
+
+            long timeoutMillis = ed.getTimeoutMillis() != null ? ed.getTimeoutMillis() : kept.getTimeoutMillis();
+            LatencyTracker latencyTracker = kept.getHedging() != null && ed.isIdempotent()
+                ? new LatencyTracker(kept.getHedging().getDelayPercentile())
+                : null;
+            CompiledEndpoint endpoint = new CompiledEndpoint(ed, methodDesc, grpcMethod(kept, methodDesc),
+                inputPlan, outputPlan, timeoutMillis, latencyTracker);
+            endpoints.put(ed.getName(), endpoint);
+            endpointsByMethod.put(ed.getMethodName(), endpoint);
+        }
+
+        if (kept.getWarmup() != null && kept.getWarmup().getEndpoint() != null
+                && !endpoints.containsKey(kept.getWarmup().getEndpoint())) {
+            throw new IllegalArgumentException("warmup.endpoint refers to unknown endpoint " + kept.getWarmup().getEndpoint());
+        }
+
+        return new CompiledService(kept, fileDescriptor, buildResult.getLease(), endpoints, endpointsByMethod, null, mirror);
+    }
+
+    private static TrafficMirror mirror(ServiceDefinition sd) {
+        MirrorConfig config = sd.getMirror();
+        if (sd.getType() == ServiceType.GRPC) {
+            if (config.getInstances().isEmpty()) {
+                throw new IllegalArgumentException("mirror.instances is required for gRPC service: " + sd.getId());
+            }
+            return new TrafficMirror(config, null);
+        }
+        if (config.getUpstreamBaseUrl() == null || config.getUpstreamBaseUrl().isEmpty()) {
+            throw new IllegalArgumentException("mirror.upstreamBaseUrl is required for HTTP service: " + sd.getId());
+        }
+        UpstreamTarget target;
+        try {
+            target = UpstreamTarget.parse(config.getUpstreamBaseUrl());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid mirror: " + e.getMessage(), e);
+        }
+        target.resolve();
+        return new TrafficMirror(config, target);
+    }
+
+    private static MethodDescriptor<Message, Message> grpcMethod(ServiceDefinition sd, Descriptors.MethodDescriptor methodDesc) {
+        return MethodDescriptor.<Message, Message>newBuilder()
+            .setType(MethodDescriptor.MethodType.UNARY)
+            .setFullMethodName(MethodDescriptor.generateFullMethodName(sd.getFullServiceName(), methodDesc.getName()))
+            .setRequestMarshaller(new DynamicMessageMarshaller(methodDesc.getInputType()))
+            .setResponseMarshaller(new DynamicMessageMarshaller(methodDesc.getOutputType()))
+            .build();
+    }
+}
@@ -0,0 +1,322 @@
+package com.cresterida.gateway.registry;
+
+import com.cresterida.gateway.model.ServiceDefinition;
+import com.cresterida.gateway.ratelimit.GcraRateLimiter;
+import com.cresterida.gateway.ratelimit.RateLimiter;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.json.JsonObject;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads service definitions from the {@code *.json} files of a directory and keeps the registry
+ * in step with it. Each file holds one definition in the shape {@link ServiceDefinition#fromJson}
+ * parses.
+ *
+ * <p>A daemon thread waits on a {@link WatchService}, so only files the kernel reports as changed
+ * are read again. Events are collected until the directory has been quiet for the debounce
+ * interval, then each changed file's SHA-256 is compared with the one last loaded: files whose
+ * content did not change (editors touching or rewriting them as is) are not compiled again.
+ * Changed files are compiled in parallel on a small worker pool and the batch goes into the
+ * registry in one {@link ServiceRegistry#apply swap}, once their upstreams are warmed up.
+ *
+ * <p>A file that fails to parse or compile keeps its previous version registered. Deleting a file
+ * removes its service, unless the service was replaced through the admin API since.
+ */
+public class ServiceDirectoryWatcher {
+    private static final Logger LOGGER = LogManager.getLogger(ServiceDirectoryWatcher.class);
+    private static final String POOL_NAME = "gateway-service-watcher";
+    private static final int POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final long STOP_TIMEOUT_MILLIS = 5000;
+
+    private final Vertx vertx;
+    private final Path directory;
+    private final ServiceRegistry registry;
+    private final Map<String, RateLimiter> limiters;
+    private final long debounceMillis;
+    private final ServiceWarmer warmer;
+    // file name -> what was last loaded from it; only touched by the watcher thread once started
+    private final Map<Path, LoadedFile> files = new HashMap<>();
+    private WorkerExecutor executor;
+    private WatchService watchService;
+    private Thread watcher;
+
+    /**
+     * @param service the version registered from the file's current content, or the previous one
+     *                when that content failed to compile (null if none ever compiled)
+     */
+    private record LoadedFile(String hash, CompiledService service) {
+    }
+
+    private record Change(Path file, String hash, ServiceDefinition definition, CompiledService compiled, String error) {
+    }
+
+    public ServiceDirectoryWatcher(Vertx vertx, Path directory, ServiceRegistry registry,
+                                   Map<String, RateLimiter> limiters, long debounceMillis, ServiceWarmer warmer) {
+        this.vertx = vertx;
+        this.directory = directory;
+        this.registry = registry;
+        this.limiters = limiters;
+        this.debounceMillis = debounceMillis;
+        this.warmer = warmer;
+    }
+
+    /**
+     * Loads every file currently in the directory, then starts watching it. Completes once the
+     * initial services are registered.
+     */
+    public Future<Void> start() {
+        executor = vertx.createSharedWorkerExecutor(POOL_NAME, POOL_SIZE);
+        return vertx.executeBlocking(() -> {
+            if (!Files.isDirectory(directory)) {
+                throw new IllegalArgumentException("Service directory does not exist: " + directory);
+            }
+            watchService = directory.getFileSystem().newWatchService();
+            // Registered before the initial scan so nothing written in between is missed
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            sync(listFiles());
+            watcher = new Thread(this::watch, POOL_NAME);
+            watcher.setDaemon(true);
+            watcher.start();
+            LOGGER.info("Watching {} for service definitions, {} loaded", directory, files.size());
+            return null;
+        });
+    }
+
+    public void stop() {
+        try {
+            if (watchService != null) {
+                watchService.close();
+            }
+            if (watcher != null) {
+                watcher.join(STOP_TIMEOUT_MILLIS);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to close the service directory watch", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (executor != null) {
+            executor.close();
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                Set<Path> changed = new HashSet<>();
+                boolean overflow = collect(watchService.take(), changed);
+                // Keep collecting until the directory has been quiet for the debounce interval
+                WatchKey key;
+                while ((key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS)) != null) {
+                    overflow |= collect(key, changed);
+                }
+                if (overflow) {
+                    // Events were lost: compare every file, the hashes still skip unchanged ones
+                    changed.addAll(listFiles());
+                    changed.addAll(files.keySet());
+                }
+                try {
+                    sync(changed);
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.error("Failed to sync service directory {}", directory, e);
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            LOGGER.debug("Stopped watching {}", directory);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LOGGER.error("Service directory watcher for {} failed", directory, e);
+        }
+    }
+
+    // Adds the definition files the key reports and re-arms it; returns true when events overflowed
+    private boolean collect(WatchKey key, Set<Path> changed) {
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+            } else if (event.context() instanceof Path name && isDefinitionFile(name)) {
+                changed.add(name);
+            }
+        }
+        key.reset();
+        return overflow;
+    }
+
+    private Set<Path> listFiles() throws IOException {
+        Set<Path> names = new HashSet<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                Path name = path.getFileName();
+                if (isDefinitionFile(name) && Files.isRegularFile(path)) {
+                    names.add(name);
+                }
+            }
+        }
+        return names;
+    }
+
+    // Skips hidden files, which editors use for swap and temporary copies
+    private static boolean isDefinitionFile(Path name) {
+        String fileName = name.toString();
+        return fileName.endsWith(".json") && !fileName.startsWith(".");
+    }
+
+    /**
+     * Brings the registry in line with the given files. Runs on the watcher thread (or the
+     * starting worker), never on an event loop.
+     */
+    private void sync(Set<Path> names) throws IOException {
+        List<Change> changes = new ArrayList<>();
+        List<CompiledService> removed = new ArrayList<>();
+        for (Path name : names) {
+            LoadedFile loaded = files.get(name);
+            byte[] content;
+            try {
+                content = Files.readAllBytes(directory.resolve(name));
+            } catch (NoSuchFileException e) {
+                if (loaded != null) {
+                    files.remove(name);
+                    if (loaded.service() != null) {
+                        removed.add(loaded.service());
+                        LOGGER.info("Removing service {} ({} was deleted)", loaded.service().getId(), name);
+                    }
+                }
+                continue;
+            }
+            String hash = sha256(content);
+            if (loaded == null || !loaded.hash().equals(hash)) {
+                changes.add(parse(name, hash, content));
+            }
+        }
+        if (changes.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+
+        List<Change> compiled = compileAll(changes);
+        List<CompiledService> added = new ArrayList<>();
+        Map<String, Path> claimed = claimedIds();
+        for (Change change : compiled) {
+            LoadedFile previous = files.get(change.file());
+            CompiledService keep = previous != null ? previous.service() : null;
+            if (change.error() != null) {
+                LOGGER.warn("Failed to load service definition {}: {}", change.file(), change.error());
+                files.put(change.file(), new LoadedFile(change.hash(), keep));
+                continue;
+            }
+            String id = change.compiled().getId();
+            Path owner = claimed.get(id);
+            if (owner != null && !owner.equals(change.file())) {
+                LOGGER.warn("Ignoring {}: service {} is already defined by {}", change.file(), id, owner);
+                files.put(change.file(), new LoadedFile(change.hash(), keep));
+                continue;
+            }
+            if (keep != null && !keep.getId().equals(id)) {
+                // The file now defines a different service; the old id goes away
+                removed.add(keep);
+                claimed.remove(keep.getId());
+            }
+            claimed.put(id, change.file());
+            added.add(change.compiled());
+            files.put(change.file(), new LoadedFile(change.hash(), change.compiled()));
+        }
+
+        warmUpAll(added);
+        registry.apply(added, removed);
+        for (CompiledService service : removed) {
+            if (registry.getCompiled(service.getId()).isEmpty()) {
+                limiters.remove(service.getId());
+            }
+        }
+        for (CompiledService service : added) {
+            limiters.put(service.getId(), GcraRateLimiter.forService(service.getDefinition()));
+        }
+        LOGGER.info("Service directory {}: {} services (re)loaded, {} removed, {} failed",
+            directory, added.size(), removed.size(), compiled.size() - added.size());
+    }
+
+    private static Change parse(Path name, String hash, byte[] content) {
+        try {
+            ServiceDefinition definition = ServiceDefinition.fromJson(new JsonObject(new String(content, StandardCharsets.UTF_8)));
+            return new Change(name, hash, definition, null, null);
+        } catch (Exception e) {
+            return new Change(name, hash, null, null, e.getMessage());
+        }
+    }
+
+    private List<Change> compileAll(List<Change> changes) {
+        List<Future<Change>> compiled = new ArrayList<>(changes.size());
+        for (Change change : changes) {
+            compiled.add(change.error() != null
+                ? Future.succeededFuture(change)
+                : executor.executeBlocking(() -> compile(change), false));
+        }
+        return Future.all(compiled)
+            .map(CompositeFuture::<Change>list)
+            .toCompletionStage().toCompletableFuture().join();
+    }
+
+    // Never fails: a definition that does not compile becomes an error change
+    private Change compile(Change change) {
+        try {
+            return new Change(change.file(), change.hash(), change.definition(), ServiceCompiler.compile(change.definition(), registry.getProtoStore()), null);
+        } catch (Exception e) {
+            return new Change(change.file(), change.hash(), change.definition(), null, e.getMessage());
+        }
+    }
+
+    // Blocks the watcher thread until every warm-up is over; warm-ups never fail
+    private void warmUpAll(List<CompiledService> services) {
+        List<Future<Void>> warmUps = new ArrayList<>(services.size());
+        for (CompiledService service : services) {
+            warmUps.add(warmer.warmUp(service));
+        }
+        Future.join(warmUps).toCompletionStage().toCompletableFuture().exceptionally(err -> null).join();
+    }
+
+    private Map<String, Path> claimedIds() {
+        Map<String, Path> claimed = new HashMap<>();
+        files.forEach((name, loaded) -> {
+            if (loaded.service() != null) {
+                claimed.put(loaded.service().getId(), name);
+            }
+        });
+        return claimed;
+    }
+
+    private static String sha256(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -1,55 +1,268 @@
 package com.cresterida.gateway.registry;
 
+import com.cresterida.gateway.model.MirrorConfig;
 import com.cresterida.gateway.model.ServiceDefinition;
+import com.cresterida.gateway.model.ServiceInstance;
 import com.cresterida.gateway.model.ServiceType;
+import com.cresterida.gateway.util.GrpcChannelPool;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
+/**
+ * Registered services, held as an immutable snapshot that writers replace as a whole. Reads
+ * take the current snapshot with one volatile load and never lock; writes are serialized, and a
+ * bulk import becomes visible to the request path in a single step.
+ *
+ * <p>The snapshot's maps are {@link PersistentMap}s, so a write copies about log32(n) small
+ * arrays per changed service rather than both maps: registering n services one at a time costs
+ * O(n log n) instead of O(n²), and a batch through {@link #addAll} or {@link #apply} still
+ * publishes one snapshot for the whole batch.
+ *
+ * <p>A compact registry, created with a {@link ProtoSourceStore}, keeps its services'
+ * definitions in compact form (see {@link ServiceDefinition#compact}): services compiled with
+ * {@link ServiceCompiler#compile(ServiceDefinition, ProtoSourceStore)} and {@link #getProtoStore()}
+ * spill their proto sources to the store.
+ *
+ * <p>Given a {@link GrpcChannelPool}, the registry retains the upstream channels of each gRPC
+ * service it holds and releases them when the service is removed or replaced, so channels to
+ * upstreams no service uses any more are closed.
+ */
 public class ServiceRegistry {
-    private final Map<String, ServiceDefinition> services = new ConcurrentHashMap<>();
+    private record Snapshot(
+        long version,
+        PersistentMap<String, CompiledService> services,
+        // Fully qualified gRPC service name (package.Service) -> service, for native gRPC routing
+        PersistentMap<String, CompiledService> grpcServices) {
+    }
+
+    /**
+     * The registered services together with the version of the registry they were read from.
+     * The version goes up with every change, so anything derived from the services can be
+     * cached until it moves.
+     */
+    public record Versioned(long version, Collection<CompiledService> services) {
+    }
+
+    /**
+     * Told about every change made through the public methods, while the registry's lock is held,
+     * so changes are reported in the order they took effect.
+     */
+    @FunctionalInterface
+    public interface ChangeListener {
+        void servicesChanged(Collection<CompiledService> added, Collection<String> removedIds);
+    }
+
+    private volatile Snapshot snapshot = new Snapshot(0, PersistentMap.empty(), PersistentMap.empty());
+    private ChangeListener listener;
+    private final ProtoSourceStore protoStore;
+    private final GrpcChannelPool channelPool;
+
+    public ServiceRegistry() {
+        this(null);
+    }
+
+    public ServiceRegistry(ProtoSourceStore protoStore) {
+        this(protoStore, null);
+    }
+
+    public ServiceRegistry(ProtoSourceStore protoStore, GrpcChannelPool channelPool) {
+        this.protoStore = protoStore;
+        this.channelPool = channelPool;
+    }
+
+    // Where compiled services spill their proto sources; null unless the registry is compact
+    public ProtoSourceStore getProtoStore() {
+        return protoStore;
+    }
 
-    public void add(ServiceDefinition service) {
-        services.put(service.getId(), service);
+    public synchronized void setChangeListener(ChangeListener listener) {
+        this.listener = listener;
+    }
+
+    // Writes are serialized so a replaced service's meters are released before the new ones bind
+    public synchronized void add(CompiledService service) {
+        addAll(List.of(service));
+    }
+
+    /**
+     * Adds or replaces all the services in one swap, so requests see either none or all of them.
+     */
+    public synchronized void addAll(Collection<CompiledService> added) {
+        apply(added, List.of());
+    }
+
+    /**
+     * Adds or replaces {@code added} and drops {@code removed} in one swap. A removed service is
+     * only dropped while it is still the registered version of its id, so a caller cannot take
+     * out a newer version registered in the meantime.
+     */
+    public synchronized void apply(Collection<CompiledService> added, Collection<CompiledService> removed) {
+        List<String> removedIds = new ArrayList<>();
+        for (CompiledService service : removed) {
+            if (snapshot.services().get(service.getId()) == service) {
+                removedIds.add(service.getId());
+            }
+        }
+        swap(added, removedIds);
+        if (listener != null && (!added.isEmpty() || !removedIds.isEmpty())) {
+            listener.servicesChanged(added, removedIds);
+        }
+    }
+
+    /**
+     * Applies changes replicated from another node: like {@link #apply}, but removes by id and is
+     * not reported to the change listener, so it is not sent back out.
+     */
+    synchronized void applyReplicated(Collection<CompiledService> added, Collection<String> removedIds) {
+        swap(added, removedIds);
+    }
+
+    private void swap(Collection<CompiledService> added, Collection<String> removedIds) {
+        Snapshot current = snapshot;
+        PersistentMap<String, CompiledService> services = current.services();
+        PersistentMap<String, CompiledService> grpcServices = current.grpcServices();
+        for (String id : removedIds) {
+            CompiledService service = services.get(id);
+            if (service != null) {
+                services = services.minus(id);
+                grpcServices = unindex(grpcServices, service);
+                service.close();
+                releaseChannels(service);
+            }
+        }
+        for (CompiledService service : added) {
+            CompiledService previous = services.get(service.getId());
+            services = services.plus(service.getId(), service);
+            // Before the previous version lets go, so an upstream both use keeps its channel
+            retainChannels(service);
+            if (previous != null) {
+                previous.close();
+                releaseChannels(previous);
+                grpcServices = unindex(grpcServices, previous);
+            }
+            service.bind();
+            grpcServices = index(grpcServices, service);
+        }
+        snapshot = new Snapshot(current.version() + 1, services, grpcServices);
     }
 
     public Optional<ServiceDefinition> getById(String id) {
-        return Optional.ofNullable(services.get(id));
+        return getCompiled(id).map(CompiledService::getDefinition);
+    }
+
+    public Optional<CompiledService> getCompiled(String id) {
+        return Optional.ofNullable(snapshot.services().get(id));
     }
 
     public List<ServiceDefinition> list() {
-        return List.copyOf(services.values());
+        return snapshot.services().values().stream()
+            .map(CompiledService::getDefinition)
+            .toList();
+    }
+
+    public Collection<CompiledService> listCompiled() {
+        return snapshot.services().values();
+    }
+
+    public Versioned listVersioned() {
+        Snapshot current = snapshot;
+        return new Versioned(current.version(), current.services().values());
+    }
+
+    public long getVersion() {
+        return snapshot.version();
+    }
+
+    public int size() {
+        return snapshot.services().size();
     }
 
-    public Optional<ServiceDefinition> update(String id, ServiceDefinition service) {
-        if (services.containsKey(id)) {
-            services.put(id, service);
-            return Optional.of(service);
+    public synchronized Optional<ServiceDefinition> update(String id, CompiledService service) {
+        if (snapshot.services().containsKey(id)) {
+            add(service);
+            return Optional.of(service.getDefinition());
         }
         return Optional.empty();
     }
 
-    public Optional<ServiceDefinition> remove(String id) {
-        return Optional.ofNullable(services.remove(id));
+    public synchronized Optional<ServiceDefinition> remove(String id) {
+        CompiledService removed = snapshot.services().get(id);
+        if (removed == null) {
+            return Optional.empty();
+        }
+        apply(List.of(), List.of(removed));
+        return Optional.of(removed.getDefinition());
     }
 
     public List<ServiceDefinition> listByType(ServiceType type) {
-        return services.values().stream()
+        return snapshot.services().values().stream()
             .filter(service -> service.getType() == type)
+            .map(CompiledService::getDefinition)
             .collect(Collectors.toList());
     }
 
-    public Optional<ServiceDefinition> resolveByPath(String path, ServiceType type) {
-        return services.values().stream()
-            .filter(service -> service.getType() == type && path.startsWith(service.getPathPrefix()))
+    public Optional<CompiledService> resolveByPath(String path, ServiceType type) {
+        return snapshot.services().values().stream()
+            .filter(service -> service.getType() == type && path.startsWith(service.getDefinition().getPathPrefix()))
             .findFirst();
     }
 
-    public Optional<ServiceDefinition> resolveByPath(String path) {
-        return services.values().stream()
-            .filter(service -> path.startsWith(service.getPathPrefix()))
+    public Optional<CompiledService> resolveByPath(String path) {
+        return snapshot.services().values().stream()
+            .filter(service -> path.startsWith(service.getDefinition().getPathPrefix()))
             .findFirst();
     }
+
+    /**
+     * Resolves a gRPC service by the service part of a {@code /package.Service/Method} path.
+     */
+    public Optional<CompiledService> resolveByGrpcService(String fullServiceName) {
+        return Optional.ofNullable(snapshot.grpcServices().get(fullServiceName));
+    }
+
+    private void retainChannels(CompiledService service) {
+        if (channelPool != null && service.getType() == ServiceType.GRPC) {
+            upstreams(service.getDefinition()).forEach(channelPool::retain);
+        }
+    }
+
+    private void releaseChannels(CompiledService service) {
+        if (channelPool != null && service.getType() == ServiceType.GRPC) {
+            upstreams(service.getDefinition()).forEach(channelPool::release);
+        }
+    }
+
+    // The service's instances and its mirror's shadow instances, which the invoker calls through the pool too
+    private static List<ServiceInstance> upstreams(ServiceDefinition definition) {
+        MirrorConfig mirror = definition.getMirror();
+        if (mirror == null) {
+            return definition.getInstances();
+        }
+        List<ServiceInstance> upstreams = new ArrayList<>(definition.getInstances());
+        upstreams.addAll(mirror.getInstances());
+        return upstreams;
+    }
+
+    private static PersistentMap<String, CompiledService> index(PersistentMap<String, CompiledService> grpcServices,
+                                                                CompiledService service) {
+        if (service.getType() == ServiceType.GRPC) {
+            return grpcServices.plus(service.getDefinition().getFullServiceName(), service);
+        }
+        return grpcServices;
+    }
+
+    // Only while the name still routes to this service, not to another one registered under it since
+    private static PersistentMap<String, CompiledService> unindex(PersistentMap<String, CompiledService> grpcServices,
+                                                                  CompiledService service) {
+        if (service.getType() == ServiceType.GRPC) {
+            String name = service.getDefinition().getFullServiceName();
+            if (grpcServices.get(name) == service) {
+                return grpcServices.minus(name);
+            }
+        }
+        return grpcServices;
+    }
 }
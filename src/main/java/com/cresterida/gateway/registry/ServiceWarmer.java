@@ -0,0 +1,18 @@
+package com.cresterida.gateway.registry;
+
+import io.vertx.core.Future;
+
+/**
+ * Prepares the upstream of a compiled service before it is published to the registry, so the
+ * first routed requests find open connections and warm code paths.
+ */
+@FunctionalInterface
+public interface ServiceWarmer {
+    ServiceWarmer NONE = service -> Future.succeededFuture();
+
+    /**
+     * Completes once the warm-up is over. Never fails: a service whose upstream cannot be warmed
+     * up is still registered.
+     */
+    Future<Void> warmUp(CompiledService service);
+}
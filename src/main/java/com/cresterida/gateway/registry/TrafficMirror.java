@@ -0,0 +1,70 @@
+package com.cresterida.gateway.registry;
+
+import com.cresterida.gateway.model.MirrorConfig;
+import com.cresterida.gateway.model.ServiceInstance;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which requests of a service are copied to its shadow upstream, and where they go.
+ *
+ * <p>Copies are fire-and-forget: the primary request never waits for one, and the number
+ * outstanding is capped at {@code maxInFlight}. A sampled request that finds the cap reached is
+ * not copied rather than queued, so a slow or failing candidate costs the primary path nothing
+ * beyond the sampling decision.
+ */
+public class TrafficMirror {
+    private final MirrorConfig config;
+    private final double sampleRate;
+    // Null for gRPC services
+    private final UpstreamTarget upstreamTarget;
+    private final List<ServiceInstance> instances;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger nextInstance = new AtomicInteger();
+    private final AtomicLong skipped = new AtomicLong();
+
+    TrafficMirror(MirrorConfig config, UpstreamTarget upstreamTarget) {
+        this.config = config;
+        this.sampleRate = config.getSamplePercent() / 100.0;
+        this.upstreamTarget = upstreamTarget;
+        this.instances = config.getInstances();
+    }
+
+    /**
+     * Returns true when this request is to be copied, in which case the caller must call
+     * {@link #release()} once the copy has completed.
+     */
+    public boolean tryAcquire() {
+        if (ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return false;
+        }
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= config.getMaxInFlight()) {
+                skipped.incrementAndGet();
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    // Round robin over the shadow instances of a gRPC service
+    public ServiceInstance nextInstance() {
+        return instances.get(Math.floorMod(nextInstance.getAndIncrement(), instances.size()));
+    }
+
+    public UpstreamTarget getUpstreamTarget() { return upstreamTarget; }
+    public String getVersion() { return config.getVersion(); }
+    public long getTimeoutMillis() { return config.getTimeoutMillis(); }
+    public int getInFlight() { return inFlight.get(); }
+    // Sampled requests not copied because maxInFlight copies were outstanding
+    public long getSkipped() { return skipped.get(); }
+}
@@ -0,0 +1,78 @@
+package com.cresterida.gateway.registry;
+
+import com.cresterida.gateway.util.ExecutionStrategy;
+import io.vertx.core.Vertx;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Re-resolves the upstream (and mirror) hosts of the registered HTTP services every {@code refreshMillis},
+ * so a DNS change reaches the request path without a lookup on it. Each host is looked up once
+ * per round however many services share it; a lookup that fails keeps the last address.
+ */
+public class UpstreamResolver {
+    private static final Logger LOGGER = LogManager.getLogger(UpstreamResolver.class);
+
+    private final ServiceRegistry registry;
+    private final ExecutionStrategy execution;
+    private final long refreshMillis;
+    private volatile long timerId = -1;
+
+    public UpstreamResolver(ServiceRegistry registry, ExecutionStrategy execution, long refreshMillis) {
+        this.registry = registry;
+        this.execution = execution;
+        this.refreshMillis = refreshMillis;
+    }
+
+    public void start(Vertx vertx) {
+        if (refreshMillis <= 0) {
+            return;
+        }
+        schedule(vertx);
+    }
+
+    // Re-armed once a round has finished, so slow lookups never overlap the next round
+    private void schedule(Vertx vertx) {
+        timerId = vertx.setTimer(refreshMillis, id -> execution.execute(this::refresh)
+            .onFailure(err -> LOGGER.warn("Upstream DNS refresh failed", err))
+            .onComplete(ar -> {
+                if (timerId == id) {
+                    schedule(vertx);
+                }
+            }));
+    }
+
+    public void stop(Vertx vertx) {
+        if (timerId >= 0) {
+            vertx.cancelTimer(timerId);
+            timerId = -1;
+        }
+    }
+
+    private Void refresh() {
+        Map<String, UpstreamTarget> resolved = new HashMap<>();
+        for (CompiledService service : registry.listCompiled()) {
+            refresh(service, service.getUpstreamTarget(), resolved, "Upstream");
+            if (service.getMirror() != null) {
+                refresh(service, service.getMirror().getUpstreamTarget(), resolved, "Mirror upstream");
+            }
+        }
+        return null;
+    }
+
+    private static void refresh(CompiledService service, UpstreamTarget target, Map<String, UpstreamTarget> resolved,
+                                String kind) {
+        if (target == null) {
+            return;
+        }
+        UpstreamTarget sameHost = resolved.putIfAbsent(target.getHost(), target);
+        if (sameHost != null) {
+            target.adopt(sameHost);
+        } else if (target.resolve()) {
+            LOGGER.info("{} of service {} now resolves to {}", kind, service.getId(), target);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.cresterida.gateway.registry;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.UnknownHostException;
+import java.util.Locale;
+
+/**
+ * The upstream of an HTTP service, parsed from its {@code upstreamBaseUrl} once at registration
+ * together with the address its host resolves to. The address is refreshed in the background by
+ * {@link UpstreamResolver}, so requests neither parse the URL nor wait for DNS.
+ */
+public final class UpstreamTarget {
+    private static final Logger LOGGER = LogManager.getLogger(UpstreamTarget.class);
+
+    private final String host;
+    private final int port;
+    private final boolean ssl;
+    // Null until the host resolves; requests then connect by host name instead
+    private volatile InetAddress address;
+
+    private UpstreamTarget(String host, int port, boolean ssl) {
+        this.host = host;
+        this.port = port;
+        this.ssl = ssl;
+    }
+
+    public static UpstreamTarget parse(String url) {
+        URI uri;
+        try {
+            uri = new URI(url);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Invalid upstreamBaseUrl: " + e.getMessage(), e);
+        }
+        String scheme = uri.getScheme() == null ? null : uri.getScheme().toLowerCase(Locale.ROOT);
+        if (!"http".equals(scheme) && !"https".equals(scheme)) {
+            throw new IllegalArgumentException("upstreamBaseUrl must be an http or https URL: " + url);
+        }
+        if (uri.getHost() == null) {
+            throw new IllegalArgumentException("upstreamBaseUrl has no host: " + url);
+        }
+        boolean ssl = scheme.equals("https");
+        int port = uri.getPort() != -1 ? uri.getPort() : ssl ? 443 : 80;
+        return new UpstreamTarget(uri.getHost(), port, ssl);
+    }
+
+    /**
+     * Looks the host up again; blocking. Keeps the previous address when the lookup fails and
+     * returns whether the address changed.
+     */
+    public boolean resolve() {
+        try {
+            InetAddress resolved = InetAddress.getByName(host);
+            InetAddress previous = address;
+            address = resolved;
+            return !resolved.equals(previous);
+        } catch (UnknownHostException e) {
+            LOGGER.warn("Failed to resolve upstream host {}: {}", host, e.getMessage());
+            return false;
+        }
+    }
+
+    // Takes the address just resolved for another target with the same host
+    void adopt(UpstreamTarget sameHost) {
+        InetAddress resolved = sameHost.address;
+        if (resolved != null) {
+            address = resolved;
+        }
+    }
+
+    public String getHost() { return host; }
+    public int getPort() { return port; }
+    public boolean isSsl() { return ssl; }
+    public InetAddress getAddress() { return address; }
+
+    @Override
+    public String toString() {
+        InetAddress current = address;
+        return host + ":" + port + (current != null ? " (" + current.getHostAddress() + ")" : "");
+    }
+}
@@ -0,0 +1,30 @@
+package com.cresterida.gateway.util;
+
+import io.grpc.MethodDescriptor;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Marshaller that hands gRPC message payloads through as opaque bytes,
+ * used wherever the gateway forwards messages without decoding them.
+ */
+public class ByteArrayMarshaller implements MethodDescriptor.Marshaller<byte[]> {
+    public static final ByteArrayMarshaller INSTANCE = new ByteArrayMarshaller();
+
+    @Override
+    public InputStream stream(byte[] value) {
+        return new ByteArrayInputStream(value);
+    }
+
+    @Override
+    public byte[] parse(InputStream stream) {
+        try {
+            return stream.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read message bytes", e);
+        }
+    }
+}
@@ -4,13 +4,23 @@ import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Tag;
 import io.vertx.core.Handler;
+import io.vertx.ext.web.Route;
 import io.vertx.ext.web.RoutingContext;
 import io.vertx.micrometer.backends.BackendRegistries;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Request counter for gateway-owned routes (admin API). Requests are labelled with the route
+ * template (e.g. {@code /admin/services/:id}) rather than the raw path, and counted when the
+ * response ends so asynchronous handlers report their real status.
+ */
 public class CounterMetrics {
     private static final String DEFAULT_METRIC_NAME = "http_requests_total";
     private static final MeterRegistry registry;
+    // route template + method + status -> counter; bounded by the routes the gateway declares
+    private static final Map<String, Counter> counters = new ConcurrentHashMap<>();
 
     static {
         registry = BackendRegistries.getDefaultNow();
@@ -19,24 +29,26 @@ public class CounterMetrics {
     public static Handler<RoutingContext> withMetrics(Handler<RoutingContext> handler) {
         return ctx -> {
             if (registry != null) {
-                // Call the original handler first
-                handler.handle(ctx);
-
-                // After handler completes, we can get the status code
-                String path = ctx.request().path();
+                Route route = ctx.currentRoute();
+                String template = route == null ? "unmatched"
+                    : route.getPath() != null ? route.getPath()
+                    // Regex routes have no path template; they are named after the path they match
+                    : route.getName() != null ? route.getName() : "unmatched";
                 String method = ctx.request().method().name();
-                String status = String.valueOf(ctx.response().getStatusCode());
-
-                // Create the counter with all three tags
-                registry.counter(DEFAULT_METRIC_NAME,
-                    Arrays.asList(
-                        Tag.of("endpoint", path),
-                        Tag.of("method", method),
-                        Tag.of("status", status)
-                    )).increment();
-            } else {
-                handler.handle(ctx);
+                ctx.addEndHandler(ar -> counter(template, method, ctx.response().getStatusCode()).increment());
             }
+            handler.handle(ctx);
         };
     }
+
+    private static Counter counter(String template, String method, int statusCode) {
+        String status = String.valueOf(statusCode);
+        return counters.computeIfAbsent(template + ' ' + method + ' ' + status, key ->
+            registry.counter(DEFAULT_METRIC_NAME,
+                Arrays.asList(
+                    Tag.of("endpoint", template),
+                    Tag.of("method", method),
+                    Tag.of("status", status)
+                )));
+    }
 }
@@ -0,0 +1,226 @@
+package com.cresterida.gateway.util;
+
+import com.google.protobuf.DescriptorProtos;
+import com.google.protobuf.Descriptors;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Built {@link Descriptors.FileDescriptor}s shared by every service whose protos compile to the
+ * same file, so thousands of services importing e.g. {@code google/protobuf/timestamp.proto}
+ * hold one copy of it instead of one each.
+ *
+ * <p>Files are addressed by content: the key is a hash of the serialized
+ * {@code FileDescriptorProto} and the keys of the files it imports, so two files are only shared
+ * when they and everything below them are identical. A file of the same name with different
+ * content gets an entry of its own.
+ *
+ * <p>A registered service holds a {@link Lease} on the files it was built from, taken when it
+ * enters the registry and given back when it leaves. A file stays pinned while any lease holds
+ * it; once the last one is released the pool only keeps it weakly, so it can still be shared
+ * while something else uses it (a service compiled but not registered yet) and is dropped from
+ * the pool once it has been garbage collected.
+ */
+public final class DescriptorPool {
+    private static final DescriptorPool SHARED = new DescriptorPool();
+
+    // Guarded by this
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final ReferenceQueue<Descriptors.FileDescriptor> collected = new ReferenceQueue<>();
+    private long hits;
+    private long misses;
+
+    private static final class Entry extends WeakReference<Descriptors.FileDescriptor> {
+        final String key;
+        // Strong reference while leased
+        Descriptors.FileDescriptor pinned;
+        int leases;
+
+        Entry(String key, Descriptors.FileDescriptor descriptor, ReferenceQueue<Descriptors.FileDescriptor> queue) {
+            super(descriptor, queue);
+            this.key = key;
+        }
+    }
+
+    /**
+     * The files of one build, by name, and the pool entries they came from.
+     */
+    public final class Lease {
+        private final Map<String, Descriptors.FileDescriptor> files;
+        private final List<Entry> used;
+        private final AtomicBoolean retained = new AtomicBoolean();
+
+        private Lease(Map<String, Descriptors.FileDescriptor> files, List<Entry> used) {
+            this.files = files;
+            this.used = used;
+        }
+
+        public Descriptors.FileDescriptor get(String name) {
+            return files.get(name);
+        }
+
+        public Map<String, Descriptors.FileDescriptor> getFiles() {
+            return files;
+        }
+
+        /**
+         * Pins the files of this build in the pool. Does nothing if already retained.
+         */
+        public void retain() {
+            if (retained.compareAndSet(false, true)) {
+                synchronized (DescriptorPool.this) {
+                    for (Entry entry : used) {
+                        if (entry.leases++ == 0) {
+                            entry.pinned = entry.get();
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Unpins the files pinned by {@link #retain()}. Does nothing unless retained.
+         */
+        public void release() {
+            if (retained.compareAndSet(true, false)) {
+                synchronized (DescriptorPool.this) {
+                    for (Entry entry : used) {
+                        if (--entry.leases == 0) {
+                            entry.pinned = null;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public static DescriptorPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Builds the files of a descriptor set, in dependency order, taking every file that is
+     * already in the pool from there instead of building it again.
+     *
+     * @throws Descriptors.DescriptorValidationException when a file does not link
+     */
+    public Lease build(List<DescriptorProtos.FileDescriptorProto> files) throws Descriptors.DescriptorValidationException {
+        Map<String, Descriptors.FileDescriptor> built = new HashMap<>();
+        Map<String, String> keys = new HashMap<>();
+        List<Entry> used = new ArrayList<>(files.size());
+        Queue<DescriptorProtos.FileDescriptorProto> toBuild = new LinkedList<>(files);
+        // protoc writes imports before the files that use them, so the queue normally goes round once
+        int maxAttempts = toBuild.size() * toBuild.size() + 100;
+        int attempts = 0;
+
+        while (!toBuild.isEmpty()) {
+            if (attempts++ > maxAttempts) {
+                throw new IllegalArgumentException("Failed to build file descriptors (circular dependency or missing import?)");
+            }
+            DescriptorProtos.FileDescriptorProto file = toBuild.poll();
+            Descriptors.FileDescriptor[] dependencies = new Descriptors.FileDescriptor[file.getDependencyCount()];
+            String[] dependencyKeys = new String[dependencies.length];
+            boolean ready = true;
+            for (int i = 0; i < dependencies.length && ready; i++) {
+                dependencies[i] = built.get(file.getDependency(i));
+                dependencyKeys[i] = keys.get(file.getDependency(i));
+                ready = dependencies[i] != null;
+            }
+            if (!ready) {
+                toBuild.add(file);
+                continue;
+            }
+
+            String key = key(file, dependencyKeys);
+            Descriptors.FileDescriptor descriptor;
+            Entry entry;
+            synchronized (this) {
+                purge();
+                entry = entries.get(key);
+                descriptor = entry == null ? null : entry.get();
+                if (descriptor != null) {
+                    hits++;
+                }
+            }
+            if (descriptor == null) {
+                Descriptors.FileDescriptor created = Descriptors.FileDescriptor.buildFrom(file, dependencies);
+                synchronized (this) {
+                    misses++;
+                    entry = entries.get(key);
+                    descriptor = entry == null ? null : entry.get();
+                    // Another build may have added the same file meanwhile
+                    if (descriptor == null) {
+                        entry = new Entry(key, created, collected);
+                        entries.put(key, entry);
+                        descriptor = created;
+                    }
+                }
+            }
+            built.put(file.getName(), descriptor);
+            keys.put(file.getName(), key);
+            used.add(entry);
+        }
+        return new Lease(built, used);
+    }
+
+    // Files in the pool, whether leased or not
+    public synchronized int size() {
+        purge();
+        return entries.size();
+    }
+
+    // Files held by at least one lease
+    public synchronized int pinnedSize() {
+        int pinned = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.leases > 0) {
+                pinned++;
+            }
+        }
+        return pinned;
+    }
+
+    // Files taken from the pool instead of built
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    // Drops the entries whose descriptors have been collected; called with the lock held
+    private void purge() {
+        Object collectedEntry;
+        while ((collectedEntry = collected.poll()) != null) {
+            Entry entry = (Entry) collectedEntry;
+            entries.remove(entry.key, entry);
+        }
+    }
+
+    private static String key(DescriptorProtos.FileDescriptorProto file, String[] dependencyKeys) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(file.toByteArray());
+        for (String dependencyKey : dependencyKeys) {
+            digest.update(dependencyKey.getBytes(StandardCharsets.US_ASCII));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
@@ -1,15 +1,30 @@
 package com.cresterida.gateway.util;
 
+import com.cresterida.gateway.metrics.LatencyTracker;
+import com.cresterida.gateway.metrics.RequestTimings;
 import com.cresterida.gateway.model.ServiceDefinition;
 import com.cresterida.gateway.model.ServiceInstance;
+import com.cresterida.gateway.model.WarmupConfig;
+import com.cresterida.gateway.ratelimit.Bulkhead;
+import com.cresterida.gateway.ratelimit.HedgingPolicy;
+import com.cresterida.gateway.registry.CompiledEndpoint;
+import com.cresterida.gateway.registry.CompiledService;
+import com.cresterida.gateway.registry.TrafficMirror;
 import com.google.protobuf.Descriptors;
 import com.google.protobuf.DynamicMessage;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.Message;
 import com.google.protobuf.util.JsonFormat;
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.ConnectivityState;
+import io.grpc.Context;
+import io.grpc.Deadline;
 import io.grpc.ManagedChannel;
-import io.grpc.ManagedChannelBuilder;
 import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
@@ -17,148 +32,498 @@ import io.vertx.core.json.JsonObject;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class DynamicGrpcInvoker {
     private static final Logger LOGGER = LogManager.getLogger(DynamicGrpcInvoker.class);
+    private static final JsonFormat.Parser JSON_PARSER = JsonFormat.parser().ignoringUnknownFields();
+    private static final JsonFormat.Printer JSON_PRINTER = JsonFormat.printer().preservingProtoFieldNames();
     private final Vertx vertx;
+    private final GrpcChannelPool channelPool;
+    private final ExecutionStrategy execution;
+    // Blocking calls submitted for execution that have not started yet
+    private final AtomicInteger queuedCalls = new AtomicInteger();
 
-    private final int defaultTimeout;
+    public DynamicGrpcInvoker(Vertx vertx, GrpcChannelPool channelPool) {
+        this(vertx, channelPool, ExecutionStrategy.worker(vertx));
+    }
 
-    public DynamicGrpcInvoker(Vertx vertx, int defaultTimeoutSeconds) {
+    public DynamicGrpcInvoker(Vertx vertx, GrpcChannelPool channelPool, ExecutionStrategy execution) {
         this.vertx = vertx;
-        this.defaultTimeout = defaultTimeoutSeconds;
+        this.channelPool = channelPool;
+        this.execution = execution;
+    }
+
+    public Future<JsonObject> invoke(CompiledService service, CompiledEndpoint endpoint, JsonObject requestBody) {
+        Context.CancellableContext callContext = Context.current().withCancellation();
+        return invoke(service, endpoint, requestBody, new RequestTimings(),
+            Deadline.after(endpoint.getTimeoutMillis(), TimeUnit.MILLISECONDS), callContext)
+            .onComplete(ar -> callContext.cancel(null));
+    }
+
+    /**
+     * Calls the endpoint with the given deadline. The call runs inside {@code callContext}, so
+     * cancelling that context (e.g. when the client disconnects) cancels the upstream call, or
+     * skips it if it has not left the worker queue yet. The caller owns the context and must
+     * cancel it once the call is no longer needed.
+     *
+     * <p>Idempotent endpoints of a service with hedging configured may be sent to a second
+     * instance when the first attempt is slow, see {@link HedgedCall}.
+     */
+    public Future<JsonObject> invoke(CompiledService service, CompiledEndpoint endpoint, JsonObject requestBody,
+                                     RequestTimings timings, Deadline deadline, Context.CancellableContext callContext) {
+        return invoke(service, endpoint, requestBody, DynamicGrpcInvoker::toJson, timings, deadline, callContext);
+    }
+
+    /**
+     * Like {@link #invoke(CompiledService, CompiledEndpoint, JsonObject, RequestTimings, Deadline, Context.CancellableContext)},
+     * but hands the response message to {@code decoder} on the worker thread instead of converting
+     * it to a {@link JsonObject}.
+     */
+    public <R> Future<R> invoke(CompiledService service, CompiledEndpoint endpoint, JsonObject requestBody,
+                                ResponseDecoder<Message, R> decoder, RequestTimings timings, Deadline deadline,
+                                Context.CancellableContext callContext) {
+        Descriptors.Descriptor inputDescriptor = endpoint.getInputType();
+        long transcodeStart = System.nanoTime();
+        DynamicMessage request;
+        try {
+            request = toMessage(requestBody, inputDescriptor);
+        } catch (InvalidProtocolBufferException e) {
+            String errorMsg = String.format(
+                "Invalid request format: %s. Expected format matches proto definition: %s",
+                e.getMessage(),
+                inputDescriptor.toProto()
+            );
+            LOGGER.error(errorMsg);
+            return Future.failedFuture(errorMsg);
+        }
+        long submitted = timings.mark(RequestTimings.Stage.REQUEST_TRANSCODE, transcodeStart);
+        // Descriptors were compiled when the service was registered
+        return send(service, endpoint, endpoint.getGrpcMethod(), request, decoder,
+            timings, submitted, deadline, callContext);
+    }
+
+    /**
+     * Calls the endpoint with an already serialized request message, e.g. a protobuf body sent by
+     * the client, and hands the serialized response to {@code decoder} on the worker thread. The
+     * bytes are not parsed on the way through. Cancellation and hedging work as for
+     * {@link #invoke(CompiledService, CompiledEndpoint, JsonObject, RequestTimings, Deadline, Context.CancellableContext)}.
+     */
+    public <R> Future<R> invokeRaw(CompiledService service, CompiledEndpoint endpoint, byte[] request,
+                                   ResponseDecoder<byte[], R> decoder, RequestTimings timings, Deadline deadline,
+                                   Context.CancellableContext callContext) {
+        return send(service, endpoint, endpoint.getRawGrpcMethod(), request, decoder,
+            timings, System.nanoTime(), deadline, callContext);
+    }
+
+    /**
+     * Turns the upstream response into what the caller wants, off the event loop.
+     */
+    @FunctionalInterface
+    public interface ResponseDecoder<T, R> {
+        R decode(T response) throws Exception;
     }
 
-    public Future<JsonObject> invoke(ServiceDefinition service, String methodName, JsonObject requestBody) {
-        Promise<JsonObject> promise = Promise.promise();
+    private <ReqT, RespT, R> Future<R> send(CompiledService service, CompiledEndpoint endpoint,
+                                            MethodDescriptor<ReqT, RespT> methodDescriptor, ReqT request,
+                                            ResponseDecoder<RespT, R> decoder, RequestTimings timings, long submitted,
+                                            Deadline deadline, Context.CancellableContext callContext) {
+        Promise<R> promise = Promise.promise();
 
         try {
             // Get active service instance
-            ServiceInstance instance = service.getActiveInstance();
+            ServiceInstance instance = service.getDefinition().getActiveInstance();
             if (instance == null) {
-                return Future.failedFuture("No active service instance available");
+                return Future.failedFuture(Status.UNAVAILABLE.withDescription("No active service instance available")
+                    .asRuntimeException());
             }
 
-            // Create and configure channel
-            ManagedChannel channel = createChannel(instance);
+            CallOptions callOptions = CallOptions.DEFAULT.withDeadline(deadline);
+            String compression = service.getDefinition().getGrpcCompression();
+            if (compression != null) {
+                callOptions = callOptions.withCompression(compression);
+            }
 
-            // Create method descriptor and get descriptors
-            String fullServiceName = service.getPackageName() + "." + service.getName();
-            DescriptorHolder descriptorHolder = createMethodDescriptor(
-                service.getProtoDefinition(),
-                fullServiceName,
-                methodName
-            );
+            TrafficMirror mirror = service.getMirror();
+            if (mirror != null && mirror.tryAcquire()) {
+                mirror(service, mirror, methodDescriptor, request, compression);
+            }
+
+            HedgingPolicy hedging = service.getHedgingPolicy();
+            LatencyTracker tracker = endpoint.getLatencyTracker();
+            if (hedging != null && tracker != null) {
+                hedging.onRequest();
+                long delayNanos = hedging.delayNanos(tracker);
+                ServiceInstance hedgeInstance = delayNanos < 0 ? null : hedgeTarget(service.getDefinition(), instance);
+                if (hedgeInstance != null) {
+                    return new HedgedCall<>(service, methodDescriptor, request, decoder, timings, callOptions, callContext, tracker)
+                        .start(instance, hedgeInstance, delayNanos, submitted);
+                }
+            }
 
-            MethodDescriptor<Message, Message> methodDescriptor = descriptorHolder.methodDescriptor;
-            Descriptors.FileDescriptor fileDescriptor = descriptorHolder.fileDescriptor;
+            call(instance, methodDescriptor, request, decoder, callOptions, callContext, timings, submitted, tracker,
+                service.getBulkhead(), promise);
 
-            // Get input descriptor from method
-            Descriptors.ServiceDescriptor serviceDescriptor = fileDescriptor.findServiceByName(
-                fullServiceName.substring(fullServiceName.lastIndexOf('.') + 1));
-            if (serviceDescriptor == null) {
-                return Future.failedFuture("Service not found: " + fullServiceName);
+        } catch (Exception e) {
+            handleGrpcError(e, promise);
+        }
+
+        return promise.future();
+    }
+
+    /**
+     * Sends a copy of the call to the next shadow instance. The copy is asynchronous, so it takes
+     * no thread of the execution strategy or bulkhead, and it runs outside the request's context,
+     * so it is neither cancelled with the call nor bound by the client's deadline; the mirror's
+     * own timeout applies. The response is dropped once its status is recorded.
+     */
+    private <ReqT, RespT> void mirror(CompiledService service, TrafficMirror mirror,
+                                      MethodDescriptor<ReqT, RespT> methodDescriptor, ReqT request, String compression) {
+        ServiceInstance instance = mirror.nextInstance();
+        long start = System.nanoTime();
+        CallOptions callOptions = CallOptions.DEFAULT.withDeadlineAfter(mirror.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+        if (compression != null) {
+            callOptions = callOptions.withCompression(compression);
+        }
+        ClientCall<ReqT, RespT> call = channelPool.get(instance).newCall(methodDescriptor, callOptions);
+        StreamObserver<RespT> observer = new StreamObserver<>() {
+            @Override
+            public void onNext(RespT response) {
             }
 
-            Descriptors.MethodDescriptor methodDesc = serviceDescriptor.findMethodByName(methodName);
-            if (methodDesc == null) {
-                return Future.failedFuture("Method not found: " + methodName);
+            @Override
+            public void onError(Throwable t) {
+                Status status = Status.fromThrowable(t);
+                LOGGER.debug("Mirrored call {} to {}:{} failed: {}", methodDescriptor.getFullMethodName(),
+                    instance.getHost(), instance.getPort(), status);
+                done(status.getCode().name());
             }
 
-            Descriptors.Descriptor inputDescriptor = methodDesc.getInputType();
+            @Override
+            public void onCompleted() {
+                done(Status.Code.OK.name());
+            }
 
-            // Validate request fields against proto definition first
-            for (String fieldName : requestBody.fieldNames()) {
-                Descriptors.FieldDescriptor field = inputDescriptor.findFieldByName(fieldName);
-                if (field == null) {
-                    String errorMsg = String.format(
-                        "Invalid field '%s' in request. Available fields are: %s",
-                        fieldName,
-                        inputDescriptor.getFields().stream()
-                            .map(Descriptors.FieldDescriptor::getName)
-                            .toList()
-                    );
-                    LOGGER.error(errorMsg);
-                    return Future.failedFuture(errorMsg);
-                }
+            private void done(String status) {
+                mirror.release();
+                service.getMeters().recordShadow(status, System.nanoTime() - start);
             }
+        };
+        try {
+            Context.ROOT.run(() -> io.grpc.stub.ClientCalls.asyncUnaryCall(call, request, observer));
+        } catch (RuntimeException e) {
+            observer.onError(e);
+        }
+    }
 
-            DynamicMessage.Builder requestBuilder = DynamicMessage.newBuilder(inputDescriptor);
+    // One attempt on the execution strategy's thread; completes the promise with the decoded response or the mapped error
+    private <ReqT, RespT, R> void call(ServiceInstance instance, MethodDescriptor<ReqT, RespT> methodDescriptor,
+                                       ReqT request, ResponseDecoder<RespT, R> decoder, CallOptions callOptions,
+                                       Context.CancellableContext callContext, RequestTimings timings, long submitted,
+                                       LatencyTracker tracker, Bulkhead bulkhead, Promise<R> promise) {
+        // Reuse the pooled channel for this instance
+        ManagedChannel channel = channelPool.get(instance);
+
+        // Make the gRPC call; unordered so concurrent requests on one event loop don't queue behind each other
+        Callable<Void> task = () -> {
             try {
-                // Use JsonFormat to parse the validated JSON body into the Protobuf message
-                JsonFormat.parser()
-                        .ignoringUnknownFields() // Now we want to fail on unknown fields
-                        .merge(requestBody.encode(), requestBuilder);
-            } catch (InvalidProtocolBufferException e) {
-                String errorMsg = String.format(
-                    "Invalid request format: %s. Expected format matches proto definition: %s",
-                    e.getMessage(),
-                    inputDescriptor.toProto()
-                );
-                LOGGER.error(errorMsg);
-                return Future.failedFuture(errorMsg);
-            }
-
-            DynamicMessage request = requestBuilder.build();
-
-            // Make the gRPC call
-            vertx.executeBlocking(() -> {
-                try {
-                    Message response = io.grpc.stub.ClientCalls.blockingUnaryCall(
-                        channel,
-                        methodDescriptor,
-                        io.grpc.CallOptions.DEFAULT.withDeadlineAfter(defaultTimeout, TimeUnit.SECONDS),
-                        request
-                    );
-
-                    // Convert response to JsonObject
-                    try {
-                        // Use the printer to convert the protobuf message to a valid JSON string
-                        String jsonResponseString = JsonFormat.printer()
-                                .preservingProtoFieldNames()
-                                .print(response);
-
-                        // Parse that valid JSON string into a Vert.x JsonObject
-                        JsonObject jsonResponse = new JsonObject(jsonResponseString);
-
-                        // Complete the promise with the JsonObject
-                        promise.complete(jsonResponse);
-                    } catch (InvalidProtocolBufferException e) {
-                        promise.fail(e);
-                    }
+                long callStart = timings.mark(RequestTimings.Stage.QUEUE, submitted);
+                if (callContext.isCancelled()) {
+                    handleGrpcError(Status.CANCELLED.withDescription("Call cancelled before it started")
+                        .asRuntimeException(), promise);
+                    return null;
+                }
+                if (callOptions.getDeadline().isExpired()) {
+                    handleGrpcError(Status.DEADLINE_EXCEEDED.withDescription("Deadline expired in the worker queue")
+                        .asRuntimeException(), promise);
+                    return null;
+                }
+                // Runs in the cancellable context so the client call is cancelled with it
+                RespT response = callContext.call(() -> io.grpc.stub.ClientCalls.blockingUnaryCall(
+                    channel,
+                    methodDescriptor,
+                    callOptions,
+                    request
+                ));
+                long encodeStart = timings.mark(RequestTimings.Stage.UPSTREAM, callStart);
+                if (tracker != null) {
+                    tracker.record(encodeStart - submitted);
+                }
 
+                // Convert the response for the caller
+                try {
+                    R decoded = decoder.decode(response);
+                    timings.mark(RequestTimings.Stage.RESPONSE_TRANSCODE, encodeStart);
+                    promise.complete(decoded);
                 } catch (Exception e) {
-                    handleGrpcError(e, promise);
-                    return null;
-                } finally {
-                    // Ensure channel is shutdown
-                    shutdownChannel(channel);
+                    promise.fail(e);
                 }
+
+            } catch (Exception e) {
+                handleGrpcError(e, promise);
                 return null;
+            }
+            return null;
+        };
+        // A service with a bulkhead holds at most its own share of the strategy's threads
+        Future<Void> executed = bulkhead == null ? execute(task) : bulkhead.submit(() -> execute(task));
+        executed.onFailure(e -> {
+            if (e instanceof Bulkhead.BulkheadFullException) {
+                promise.tryFail(e);
+            } else if (!promise.future().isComplete()) {
+                // The strategy refused the task (e.g. while shutting down) or it threw an Error
+                LOGGER.error("Blocking gRPC call did not run", e);
+                promise.tryFail(e);
+            }
+        });
+    }
+
+    // Counts the task in queuedCalls until it starts, or until the strategy turns it down without running it
+    private Future<Void> execute(Callable<Void> task) {
+        AtomicBoolean dequeued = new AtomicBoolean();
+        queuedCalls.incrementAndGet();
+        Future<Void> executed;
+        try {
+            executed = execution.execute(() -> {
+                if (dequeued.compareAndSet(false, true)) {
+                    queuedCalls.decrementAndGet();
+                }
+                return task.call();
             });
+        } catch (RuntimeException e) {
+            executed = Future.failedFuture(e);
+        }
+        return executed.onFailure(e -> {
+            if (dequeued.compareAndSet(false, true)) {
+                queuedCalls.decrementAndGet();
+            }
+        });
+    }
 
-        } catch (Exception e) {
-            handleGrpcError(e, promise);
+    // Another healthy instance for the hedge, so the slow instance is not asked twice
+    private static ServiceInstance hedgeTarget(ServiceDefinition definition, ServiceInstance primary) {
+        List<ServiceInstance> instances = definition.getInstances();
+        int size = instances.size();
+        if (size < 2) {
+            return null;
         }
+        int offset = ThreadLocalRandom.current().nextInt(size);
+        for (int i = 0; i < size; i++) {
+            ServiceInstance candidate = instances.get((offset + i) % size);
+            boolean samePeer = candidate.getHost().equals(primary.getHost()) && candidate.getPort() == primary.getPort();
+            if (!samePeer && "UP".equals(candidate.getHealth())) {
+                return candidate;
+            }
+        }
+        return null;
+    }
 
-        return promise.future();
+    /**
+     * An idempotent call that gets a second attempt on another instance when the first is still
+     * outstanding after the hedge delay and the service's hedge budget allows it. The first
+     * successful response wins and the other attempt is cancelled; the call fails only once every
+     * attempt it started has failed. A first attempt that fails before the delay is not retried.
+     *
+     * <p>Attempts complete on worker threads, hence the locking. Each attempt records into its own
+     * timings and the winner's are added to the request's.
+     */
+    private final class HedgedCall<ReqT, RespT, R> {
+        private final Promise<R> result = Promise.promise();
+        private final CompiledService service;
+        private final MethodDescriptor<ReqT, RespT> methodDescriptor;
+        private final ReqT request;
+        private final ResponseDecoder<RespT, R> decoder;
+        private final RequestTimings timings;
+        private final CallOptions callOptions;
+        private final Context.CancellableContext callContext;
+        private final LatencyTracker tracker;
+        private final RequestTimings primaryTimings = new RequestTimings();
+        private Context.CancellableContext primaryContext;
+        private Context.CancellableContext hedgeContext;
+        private RequestTimings hedgeTimings;
+        private int outstanding;
+        private long timerId = -1;
+
+        HedgedCall(CompiledService service, MethodDescriptor<ReqT, RespT> methodDescriptor, ReqT request,
+                   ResponseDecoder<RespT, R> decoder, RequestTimings timings, CallOptions callOptions,
+                   Context.CancellableContext callContext, LatencyTracker tracker) {
+            this.service = service;
+            this.methodDescriptor = methodDescriptor;
+            this.request = request;
+            this.decoder = decoder;
+            this.timings = timings;
+            this.callOptions = callOptions;
+            this.callContext = callContext;
+            this.tracker = tracker;
+        }
+
+        synchronized Future<R> start(ServiceInstance primary, ServiceInstance hedge, long delayNanos, long submitted) {
+            primaryContext = callContext.withCancellation();
+            outstanding = 1;
+            Promise<R> attempt = Promise.promise();
+            attempt.future().onComplete(ar -> settle(ar, false));
+            long delayMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(delayNanos));
+            timerId = vertx.setTimer(delayMillis, id -> hedge(hedge));
+            call(primary, methodDescriptor, request, decoder, callOptions, primaryContext, primaryTimings, submitted, tracker,
+                service.getBulkhead(), attempt);
+            return result.future();
+        }
+
+        private synchronized void hedge(ServiceInstance instance) {
+            timerId = -1;
+            if (result.future().isComplete() || callContext.isCancelled() || callOptions.getDeadline().isExpired()
+                    || !service.getHedgingPolicy().tryHedge()) {
+                return;
+            }
+            LOGGER.debug("Hedging {} to {}:{}", methodDescriptor.getFullMethodName(), instance.getHost(), instance.getPort());
+            hedgeContext = callContext.withCancellation();
+            hedgeTimings = new RequestTimings();
+            outstanding++;
+            Promise<R> attempt = Promise.promise();
+            attempt.future().onComplete(ar -> settle(ar, true));
+            call(instance, methodDescriptor, request, decoder, callOptions, hedgeContext, hedgeTimings,
+                hedgeTimings.getStartNanos(), tracker, service.getBulkhead(), attempt);
+        }
+
+        private synchronized void settle(AsyncResult<R> ar, boolean fromHedge) {
+            outstanding--;
+            if (result.future().isComplete()) {
+                return;
+            }
+            if (ar.failed() && outstanding > 0) {
+                // The other attempt may still answer
+                return;
+            }
+            if (timerId >= 0) {
+                vertx.cancelTimer(timerId);
+                timerId = -1;
+            }
+            Context.CancellableContext loser = fromHedge ? primaryContext : hedgeContext;
+            if (loser != null) {
+                loser.cancel(null);
+            }
+            timings.addAll(fromHedge ? hedgeTimings : primaryTimings);
+            if (hedgeContext != null && ar.succeeded()) {
+                service.getMeters().recordHedge(fromHedge);
+            }
+            result.handle(ar);
+        }
+    }
+
+    /**
+     * Connects the channel of every instance of the service, then sends its configured warm-up
+     * calls, {@code connections} at a time, so the channels, the transcoding path and the JIT are
+     * warm before the service is routed to. Never fails.
+     */
+    public Future<Void> warmUp(CompiledService service) {
+        WarmupConfig warmup = service.getDefinition().getWarmup();
+        if (warmup == null) {
+            return Future.succeededFuture();
+        }
+        long start = System.nanoTime();
+        Deadline deadline = Deadline.after(warmup.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+        List<Future<Void>> connected = new ArrayList<>();
+        for (ServiceInstance instance : service.getDefinition().getInstances()) {
+            connected.add(connect(channelPool.get(instance), deadline)
+                .onFailure(err -> LOGGER.warn("Warm-up could not connect to {}:{} for service {}: {}",
+                    instance.getHost(), instance.getPort(), service.getId(), err.getMessage())));
+        }
+        CompiledEndpoint endpoint = warmup.getEndpoint() == null ? null : service.getEndpoint(warmup.getEndpoint());
+        int requests = endpoint == null ? 0 : warmup.getRequests();
+        AtomicInteger remaining = new AtomicInteger(requests);
+        AtomicInteger answered = new AtomicInteger();
+        return Future.join(connected)
+            .transform(ar -> {
+                List<Future<Void>> sequences = new ArrayList<>(warmup.getConnections());
+                for (int i = 0; i < warmup.getConnections(); i++) {
+                    sequences.add(warmUpSequence(service, endpoint, warmup.getBody(), deadline, remaining, answered));
+                }
+                return Future.join(sequences);
+            })
+            .transform(ar -> {
+                LOGGER.info("Warmed up service {}: {}/{} channels ready, {}/{} calls answered in {}ms", service.getId(),
+                    connected.stream().filter(Future::succeeded).count(), connected.size(), answered.get(), requests,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                return Future.succeededFuture();
+            });
+    }
+
+    // Completes once the channel is READY; gRPC only reports state changes, hence the re-arming
+    private Future<Void> connect(ManagedChannel channel, Deadline deadline) {
+        Promise<Void> connected = Promise.promise();
+        long timerId = vertx.setTimer(Math.max(1, deadline.timeRemaining(TimeUnit.MILLISECONDS)), id ->
+            connected.tryFail(new TimeoutException("channel still " + channel.getState(false))));
+        awaitReady(channel, connected);
+        return connected.future().onComplete(ar -> vertx.cancelTimer(timerId));
+    }
+
+    private static void awaitReady(ManagedChannel channel, Promise<Void> connected) {
+        ConnectivityState state = channel.getState(true);
+        if (state == ConnectivityState.READY) {
+            connected.tryComplete();
+        } else if (state == ConnectivityState.SHUTDOWN) {
+            connected.tryFail(new IllegalStateException("channel is shut down"));
+        } else if (!connected.future().isComplete()) {
+            channel.notifyWhenStateChanged(state, () -> awaitReady(channel, connected));
+        }
+    }
+
+    private Future<Void> warmUpSequence(CompiledService service, CompiledEndpoint endpoint, JsonObject body,
+                                        Deadline deadline, AtomicInteger remaining, AtomicInteger answered) {
+        if (deadline.isExpired() || remaining.getAndDecrement() <= 0) {
+            return Future.succeededFuture();
+        }
+        Context.CancellableContext callContext = Context.current().withCancellation();
+        return invoke(service, endpoint, body, new RequestTimings(), deadline, callContext)
+            .transform(ar -> {
+                callContext.cancel(null);
+                if (ar.succeeded()) {
+                    answered.incrementAndGet();
+                } else {
+                    LOGGER.debug("Warm-up call to service {} failed: {}", service.getId(), ar.cause().getMessage());
+                }
+                return warmUpSequence(service, endpoint, body, deadline, remaining, answered);
+            });
     }
 
-    private ManagedChannel createChannel(ServiceInstance instance) {
-        return ManagedChannelBuilder.forAddress(instance.getHost(), instance.getPort())
-            .usePlaintext() // For development. Use TLS in production
-            .keepAliveTimeout(10, TimeUnit.SECONDS)
-            .keepAliveWithoutCalls(true)
-            .idleTimeout(defaultTimeout, TimeUnit.SECONDS)
-            .maxInboundMessageSize(10 * 1024 * 1024) // 10MB
-            .maxRetryAttempts(1)
-            .enableRetry()
-            .build();
+    public int getQueuedCalls() {
+        return queuedCalls.get();
     }
 
-    private void handleGrpcError(Throwable error, Promise<JsonObject> promise) {
+    /**
+     * Parses a JSON request body into a message of the given type, ignoring unknown fields.
+     */
+    public static DynamicMessage toMessage(JsonObject json, Descriptors.Descriptor type) throws InvalidProtocolBufferException {
+        DynamicMessage.Builder builder = DynamicMessage.newBuilder(type);
+        // Use JsonFormat to parse the validated JSON body into the Protobuf message
+        JSON_PARSER.merge(json.encode(), builder);
+        return builder.build();
+    }
+
+    /**
+     * Converts a response message to JSON, keeping the proto field names.
+     */
+    public static JsonObject toJson(Message message) throws InvalidProtocolBufferException {
+        // Use the printer to convert the protobuf message to a valid JSON string,
+        // then parse that string into a Vert.x JsonObject
+        return new JsonObject(JSON_PRINTER.print(message));
+    }
+
+    private static void handleGrpcError(Throwable error, Promise<?> promise) {
+        if (error instanceof io.grpc.StatusRuntimeException statusError
+                && statusError.getStatus().getCode() == Status.Code.CANCELLED) {
+            // The client is gone; nobody will read the error
+            LOGGER.debug("gRPC call cancelled: {}", statusError.getStatus().getDescription());
+            promise.fail(statusError);
+            return;
+        }
         String errorMessage;
         if (error instanceof io.grpc.StatusRuntimeException) {
             io.grpc.StatusRuntimeException statusError = (io.grpc.StatusRuntimeException) error;
@@ -184,71 +549,23 @@ public class DynamicGrpcInvoker {
         } else {
             errorMessage = "Internal error: " + error.getMessage();
         }
-        LOGGER.error("gRPC call failed: {}", errorMessage, error);
-        promise.fail(errorMessage);
-    }
-
-    private static class DescriptorHolder {
-        final MethodDescriptor<Message, Message> methodDescriptor;
-        final Descriptors.FileDescriptor fileDescriptor;
-
-        DescriptorHolder(MethodDescriptor<Message, Message> methodDescriptor, Descriptors.FileDescriptor fileDescriptor) {
-            this.methodDescriptor = methodDescriptor;
-            this.fileDescriptor = fileDescriptor;
-        }
-    }
-
-    private DescriptorHolder createMethodDescriptor(
-            String protoDefinition,
-            String serviceName,
-            String methodName) throws Exception {
-
-        // Use the shared builder to get the descriptors
-        ProtoDescriptorBuilder.BuildResult buildResult = ProtoDescriptorBuilder.buildFromProtoDefinition(
-            serviceName.replaceAll("[^a-zA-Z0-9]", "_"), // Create a safe file prefix from service name
-            protoDefinition
-        );
-
-        Descriptors.FileDescriptor fileDescriptor = buildResult.getFileDescriptor();
-
-        // Get the service descriptor
-        Descriptors.ServiceDescriptor serviceDescriptor =
-            fileDescriptor.findServiceByName(serviceName.substring(serviceName.lastIndexOf('.') + 1));
-
-        if (serviceDescriptor == null) {
-            throw new RuntimeException("Service not found: " + serviceName);
-        }
-
-        Descriptors.MethodDescriptor methodDesc = serviceDescriptor.findMethodByName(methodName);
-        if (methodDesc == null) {
-            throw new RuntimeException("Method not found: " + methodName);
+        // Upstream errors and timeouts are expected, and flood in under overload; the access log reports them
+        if (error instanceof io.grpc.StatusRuntimeException || error instanceof java.util.concurrent.TimeoutException
+                || error instanceof io.netty.handler.timeout.ReadTimeoutException) {
+            LOGGER.debug("gRPC call failed: {}", errorMessage);
+        } else {
+            LOGGER.error("gRPC call failed: {}", errorMessage, error);
         }
-
-        // Create the gRPC method descriptor
-        MethodDescriptor<Message, Message> methodDescriptor = MethodDescriptor.<Message, Message>newBuilder()
-            .setType(MethodDescriptor.MethodType.UNARY)
-            .setFullMethodName(
-                MethodDescriptor.generateFullMethodName(serviceName, methodName)
-            )
-            .setRequestMarshaller(new DynamicMessageMarshaller(methodDesc.getInputType()))
-            .setResponseMarshaller(new DynamicMessageMarshaller(methodDesc.getOutputType()))
-            .build();
-
-        return new DescriptorHolder(methodDescriptor, fileDescriptor);
-    }
-
-    private void shutdownChannel(ManagedChannel channel) {
-        try {
-            channel.shutdown();
-            if (!channel.awaitTermination(5, TimeUnit.SECONDS)) {
-                channel.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            channel.shutdownNow();
-            Thread.currentThread().interrupt();
+        // Timeouts keep their type and upstream errors their status, so the HTTP layer can answer 503 or 504
+        boolean timedOut = error instanceof java.util.concurrent.TimeoutException
+            || error instanceof io.grpc.StatusRuntimeException statusError
+                && statusError.getStatus().getCode() == Status.Code.DEADLINE_EXCEEDED;
+        if (timedOut) {
+            promise.fail(new java.util.concurrent.TimeoutException(errorMessage));
+        } else if (error instanceof io.grpc.StatusRuntimeException statusError) {
+            promise.fail(statusError.getStatus().withDescription(errorMessage).asRuntimeException());
+        } else {
+            promise.fail(errorMessage);
         }
     }
-
-
-
 }
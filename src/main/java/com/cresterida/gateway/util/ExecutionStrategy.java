@@ -0,0 +1,136 @@
+package com.cresterida.gateway.util;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Context;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.ThreadingModel;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.json.JsonObject;
+
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+/**
+ * Where the gateway runs its blocking work: the blocking gRPC call of a transcoded request and
+ * protoc when a service is registered. Chosen with {@code execution.strategy}:
+ *
+ * <ul>
+ *   <li>{@code worker} (default): the shared Vert.x worker pool. Concurrent slow calls are capped
+ *   by its size and queue behind each other beyond it.</li>
+ *   <li>{@code virtual}: a fresh virtual thread per task, through a verticle deployed with
+ *   {@link ThreadingModel#VIRTUAL_THREAD}; a blocked call only holds its virtual thread, so the
+ *   number of slow calls in flight is bounded by the upstream rather than by a pool.</li>
+ *   <li>{@code dedicated}: a named worker pool of {@code execution.poolSize} threads used only for
+ *   this work, so it cannot starve other blocking code on the shared pool.</li>
+ * </ul>
+ *
+ * <p>Tasks always run unordered: concurrent requests never wait for each other's calls.
+ */
+public abstract class ExecutionStrategy {
+    public static final String WORKER = "worker";
+    public static final String VIRTUAL = "virtual";
+    public static final String DEDICATED = "dedicated";
+    public static final int DEFAULT_POOL_SIZE = 128;
+    private static final String DEDICATED_POOL_NAME = "gateway-blocking";
+
+    private ExecutionStrategy() {
+    }
+
+    /**
+     * Runs the task off the event loop and completes with its result.
+     */
+    public abstract <T> Future<T> execute(Callable<T> task);
+
+    public abstract String name();
+
+    public Future<Void> close() {
+        return Future.succeededFuture();
+    }
+
+    /**
+     * Creates the strategy named by {@code execution.strategy}.
+     */
+    public static Future<ExecutionStrategy> start(Vertx vertx, JsonObject config) {
+        String name = config.getString("execution.strategy", WORKER).trim().toLowerCase(Locale.ROOT);
+        return switch (name) {
+            case WORKER -> Future.succeededFuture(worker(vertx));
+            case VIRTUAL -> virtualThreads(vertx);
+            case DEDICATED -> Future.succeededFuture(dedicated(vertx, config.getInteger("execution.poolSize", DEFAULT_POOL_SIZE)));
+            default -> Future.failedFuture(new IllegalArgumentException("Unknown execution strategy: " + name));
+        };
+    }
+
+    public static ExecutionStrategy worker(Vertx vertx) {
+        return new ExecutionStrategy() {
+            @Override
+            public <T> Future<T> execute(Callable<T> task) {
+                return vertx.executeBlocking(task, false);
+            }
+
+            @Override
+            public String name() {
+                return WORKER;
+            }
+        };
+    }
+
+    public static ExecutionStrategy dedicated(Vertx vertx, int poolSize) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("execution.poolSize must be positive");
+        }
+        WorkerExecutor executor = vertx.createSharedWorkerExecutor(DEDICATED_POOL_NAME, poolSize);
+        return new ExecutionStrategy() {
+            @Override
+            public <T> Future<T> execute(Callable<T> task) {
+                return executor.executeBlocking(task, false);
+            }
+
+            @Override
+            public String name() {
+                return DEDICATED;
+            }
+
+            @Override
+            public Future<Void> close() {
+                return executor.close();
+            }
+        };
+    }
+
+    /**
+     * Deploys a virtual thread verticle whose context runs each blocking task on its own virtual
+     * thread. Fails on a runtime without virtual threads.
+     */
+    public static Future<ExecutionStrategy> virtualThreads(Vertx vertx) {
+        ContextHolder holder = new ContextHolder();
+        return vertx.deployVerticle(holder, new DeploymentOptions().setThreadingModel(ThreadingModel.VIRTUAL_THREAD))
+            .map(deploymentId -> new ExecutionStrategy() {
+                @Override
+                public <T> Future<T> execute(Callable<T> task) {
+                    return holder.context.executeBlocking(task, false);
+                }
+
+                @Override
+                public String name() {
+                    return VIRTUAL;
+                }
+
+                @Override
+                public Future<Void> close() {
+                    return vertx.undeploy(deploymentId);
+                }
+            });
+    }
+
+    // Does nothing but own a virtual thread context for the strategy to submit to
+    private static final class ContextHolder extends AbstractVerticle {
+        private volatile Context context;
+
+        @Override
+        public void start() {
+            context = super.context;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.cresterida.gateway.util;
+
+import com.cresterida.gateway.model.ServiceInstance;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps one long-lived {@link ManagedChannel} per upstream host:port so calls
+ * reuse HTTP/2 connections instead of dialing a new channel per request.
+ *
+ * <p>The registry {@link #retain retains} the upstreams of each gRPC service it holds, its
+ * instances and its mirror's shadow instances, and releases them when the service leaves; a channel shuts down once no registered service
+ * uses its upstream, letting calls already on it finish. A channel that {@link #get} opened
+ * for an upstream never retained stays open until the pool is closed.
+ */
+public class GrpcChannelPool {
+    private static final Logger LOGGER = LogManager.getLogger(GrpcChannelPool.class);
+    private static final int MAX_INBOUND_MESSAGE_SIZE = 10 * 1024 * 1024; // 10MB
+
+    // A channel and the number of times its upstream is retained
+    private record PooledChannel(ManagedChannel channel, int references) {
+    }
+
+    private final Map<String, PooledChannel> channels = new ConcurrentHashMap<>();
+    private final int idleTimeoutSeconds;
+
+    public GrpcChannelPool(int idleTimeoutSeconds) {
+        this.idleTimeoutSeconds = idleTimeoutSeconds;
+    }
+
+    public ManagedChannel get(ServiceInstance instance) {
+        return get(instance.getHost(), instance.getPort());
+    }
+
+    public ManagedChannel get(String host, int port) {
+        String key = host + ":" + port;
+        PooledChannel pooled = channels.get(key);
+        if (pooled != null && !pooled.channel().isShutdown()) {
+            return pooled.channel();
+        }
+        return channels.compute(key, (k, existing) -> open(host, port, existing, 0)).channel();
+    }
+
+    /**
+     * Keeps the channel to {@code instance} open, opening it if needed, until it has been
+     * released as many times as it was retained.
+     */
+    public void retain(ServiceInstance instance) {
+        channels.compute(key(instance), (k, existing) -> open(instance.getHost(), instance.getPort(), existing, 1));
+    }
+
+    // Shuts the channel down, without waiting for its calls, when this was the last reference
+    public void release(ServiceInstance instance) {
+        channels.computeIfPresent(key(instance), (k, pooled) -> {
+            if (pooled.references() > 1) {
+                return new PooledChannel(pooled.channel(), pooled.references() - 1);
+            }
+            LOGGER.debug("Closing gRPC channel to {}, no registered service uses it", k);
+            pooled.channel().shutdown();
+            return null;
+        });
+    }
+
+    // The existing entry with references added, or a new channel when there is none that is still open
+    private PooledChannel open(String host, int port, PooledChannel existing, int references) {
+        if (existing != null && !existing.channel().isShutdown()) {
+            return references == 0 ? existing : new PooledChannel(existing.channel(), existing.references() + references);
+        }
+        LOGGER.debug("Opening gRPC channel to {}:{}", host, port);
+        int kept = existing != null ? existing.references() : 0;
+        return new PooledChannel(createChannel(host, port), kept + references);
+    }
+
+    private static String key(ServiceInstance instance) {
+        return instance.getHost() + ":" + instance.getPort();
+    }
+
+    private ManagedChannel createChannel(String host, int port) {
+        return ManagedChannelBuilder.forAddress(host, port)
+            .usePlaintext() // For development. Use TLS in production
+            .keepAliveTimeout(10, TimeUnit.SECONDS)
+            .keepAliveWithoutCalls(true)
+            .idleTimeout(idleTimeoutSeconds, TimeUnit.SECONDS)
+            .maxInboundMessageSize(MAX_INBOUND_MESSAGE_SIZE)
+            .maxRetryAttempts(1)
+            .enableRetry()
+            .build();
+    }
+
+    public void close() {
+        channels.values().forEach(pooled -> pooled.channel().shutdown());
+        for (PooledChannel pooled : channels.values()) {
+            ManagedChannel channel = pooled.channel();
+            try {
+                if (!channel.awaitTermination(5, TimeUnit.SECONDS)) {
+                    channel.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                channel.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        channels.clear();
+    }
+}
@@ -0,0 +1,91 @@
+package com.cresterida.gateway.util;
+
+import io.netty.handler.codec.compression.Brotli;
+import io.netty.handler.codec.compression.CompressionOptions;
+import io.netty.handler.codec.compression.StandardCompressionOptions;
+import io.netty.handler.codec.compression.Zstd;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.json.JsonObject;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Response compression for the gateway's HTTP listener. The codec is negotiated per request from
+ * {@code Accept-Encoding}; bodies smaller than {@code compression.minSize} bytes and responses
+ * that already carry a {@code Content-Encoding} (e.g. proxied from a compressing upstream) are
+ * sent as they are.
+ *
+ * <p>gzip and deflate use the JDK's zlib and are always available. zstd and brotli need their
+ * native libraries on the classpath (zstd-jni, brotli4j) and are skipped with a warning when
+ * configured without them.
+ */
+public final class HttpCompression {
+    private static final Logger LOGGER = LogManager.getLogger(HttpCompression.class);
+
+    public static final int DEFAULT_LEVEL = 6;
+    public static final int DEFAULT_MIN_SIZE = 1024;
+    public static final String DEFAULT_CODECS = "gzip,deflate";
+    // zlib defaults: 32KB window, 8 memory level
+    private static final int WINDOW_BITS = 15;
+    private static final int MEM_LEVEL = 8;
+    public static final int ZSTD_LEVEL = 3;
+    public static final int ZSTD_BLOCK_SIZE = 64 * 1024;
+    public static final int ZSTD_MAX_ENCODE_SIZE = 32 * 1024 * 1024;
+
+    private HttpCompression() {
+    }
+
+    public static HttpServerOptions configure(HttpServerOptions options, JsonObject config) {
+        if (!config.getBoolean("compression.enabled", true)) {
+            return options.setCompressionSupported(false);
+        }
+        int level = config.getInteger("compression.level", DEFAULT_LEVEL);
+        List<CompressionOptions> compressors = compressors(config.getString("compression.codecs", DEFAULT_CODECS), level);
+        if (compressors.isEmpty()) {
+            return options.setCompressionSupported(false);
+        }
+        return options
+            .setCompressionSupported(true)
+            .setCompressionLevel(level)
+            .setCompressionContentSizeThreshold(config.getInteger("compression.minSize", DEFAULT_MIN_SIZE))
+            .setCompressors(compressors);
+    }
+
+    /**
+     * Parses a comma-separated codec list ({@code gzip}, {@code deflate}, {@code zstd},
+     * {@code br}) into compressor settings, leaving out codecs whose library is missing.
+     */
+    public static List<CompressionOptions> compressors(String codecs, int level) {
+        if (level < 1 || level > 9) {
+            throw new IllegalArgumentException("compression.level must be between 1 and 9");
+        }
+        List<CompressionOptions> compressors = new ArrayList<>();
+        for (String codec : codecs.split(",")) {
+            switch (codec.trim().toLowerCase(Locale.ROOT)) {
+                case "" -> { }
+                case "gzip" -> compressors.add(StandardCompressionOptions.gzip(level, WINDOW_BITS, MEM_LEVEL));
+                case "deflate" -> compressors.add(StandardCompressionOptions.deflate(level, WINDOW_BITS, MEM_LEVEL));
+                case "zstd" -> {
+                    if (Zstd.isAvailable()) {
+                        compressors.add(StandardCompressionOptions.zstd(ZSTD_LEVEL, ZSTD_BLOCK_SIZE, ZSTD_MAX_ENCODE_SIZE));
+                    } else {
+                        LOGGER.warn("zstd compression requested but zstd-jni is not on the classpath, skipping it");
+                    }
+                }
+                case "br", "brotli" -> {
+                    if (Brotli.isAvailable()) {
+                        compressors.add(StandardCompressionOptions.brotli());
+                    } else {
+                        LOGGER.warn("brotli compression requested but brotli4j is not on the classpath, skipping it");
+                    }
+                }
+                default -> throw new IllegalArgumentException("Unknown compression codec: " + codec.trim());
+            }
+        }
+        return compressors;
+    }
+}
@@ -10,18 +10,33 @@ import org.apache.logging.log4j.Logger;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 
 public class ProtoDescriptorBuilder {
     private static final Logger LOGGER = LogManager.getLogger(ProtoDescriptorBuilder.class);
+    // Sources whose protoc output is kept, so registering many services from one proto runs protoc once
+    private static final int MAX_COMPILED_SOURCES = 256;
+
+    private record Compiled(DescriptorProtos.FileDescriptorSet descriptors, String mainFile) {
+    }
+
+    // Source hash -> protoc output, least recently used first
+    private static final Map<String, Compiled> COMPILED = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Compiled> eldest) {
+            return size() > MAX_COMPILED_SOURCES;
+        }
+    };
 
     public static class BuildResult {
         private final Descriptors.FileDescriptor fileDescriptor;
-        private final Map<String, Descriptors.FileDescriptor> allDescriptors;
+        private final DescriptorPool.Lease lease;
 
-        BuildResult(Descriptors.FileDescriptor fileDescriptor, Map<String, Descriptors.FileDescriptor> allDescriptors) {
+        BuildResult(Descriptors.FileDescriptor fileDescriptor, DescriptorPool.Lease lease) {
             this.fileDescriptor = fileDescriptor;
-            this.allDescriptors = allDescriptors;
+            this.lease = lease;
         }
 
         public Descriptors.FileDescriptor getFileDescriptor() {
@@ -29,21 +44,53 @@ public class ProtoDescriptorBuilder {
         }
 
         public Map<String, Descriptors.FileDescriptor> getAllDescriptors() {
-            return Collections.unmodifiableMap(allDescriptors);
+            return Collections.unmodifiableMap(lease.getFiles());
+        }
+
+        // The pooled files this build uses; retained while the service is registered
+        public DescriptorPool.Lease getLease() {
+            return lease;
         }
     }
 
     public static BuildResult buildFromProtoDefinition(String serviceId, String protoDefinition) throws Exception {
+        return buildFromProtoDefinition(serviceId, protoDefinition, DescriptorPool.shared());
+    }
+
+    /**
+     * Compiles {@code protoDefinition} with protoc, unless the same source was compiled recently,
+     * and links it through {@code pool}.
+     */
+    public static BuildResult buildFromProtoDefinition(String serviceId, String protoDefinition, DescriptorPool pool)
+            throws Exception {
+        String key = sha256(protoDefinition);
+        Compiled compiled;
+        synchronized (COMPILED) {
+            compiled = COMPILED.get(key);
+        }
+        if (compiled == null) {
+            compiled = compile(serviceId, key, protoDefinition);
+            synchronized (COMPILED) {
+                COMPILED.put(key, compiled);
+            }
+        }
+        return buildFromDescriptorSet(compiled.descriptors(), compiled.mainFile(), pool);
+    }
+
+    // The main file is named by the source hash, as the output is shared by every service with that source
+    private static Compiled compile(String serviceId, String hash, String protoDefinition) throws Exception {
         // Create temporary proto file
-        Path tempProtoFile = Files.createTempFile(serviceId, ".proto");
-        Path tempDescFile = Files.createTempFile(serviceId, ".desc");
+        Path tempDir = Files.createTempDirectory("protoc");
+        Path tempProtoFile = tempDir.resolve(hash + ".proto");
+        Path tempDescFile = tempDir.resolve(hash + ".desc");
 
         try {
             // Write proto definition to temp file
             Files.writeString(tempProtoFile, protoDefinition, StandardCharsets.UTF_8);
 
-            // Prepare protoc compiler arguments
+            // Prepare protoc compiler arguments; the well-known types can be imported
             String[] protocArgs = {
+                    "--include_std_types",
                     "-I=" + tempProtoFile.getParent().toAbsolutePath(),
                     "--include_imports",
                     "--descriptor_set_out=" + tempDescFile.toAbsolutePath(),
@@ -51,7 +98,7 @@ public class ProtoDescriptorBuilder {
             };
 
             // Run the compiler
-            LOGGER.debug("Running protoc compiler...");
+            LOGGER.debug("Running protoc compiler for service {}...", serviceId);
             int exitCode = Protoc.runProtoc(protocArgs);
             if (exitCode != 0) {
                 throw new RuntimeException("protoc failed with exit code: " + exitCode);
@@ -65,62 +112,40 @@ public class ProtoDescriptorBuilder {
 
             // Parse the descriptor set
             DescriptorProtos.FileDescriptorSet fds = DescriptorProtos.FileDescriptorSet.parseFrom(descBytes);
-            if (fds.getFileCount() == 0) {
-                throw new RuntimeException("No file descriptors found in compiled proto set.");
-            }
-
-            // Build FileDescriptors, respecting dependencies (DAG sort)
-            Map<String, Descriptors.FileDescriptor> builtDescriptors = new HashMap<>();
-            Queue<DescriptorProtos.FileDescriptorProto> toBuild = new LinkedList<>(fds.getFileList());
-            int maxAttempts = toBuild.size() * toBuild.size() + 100;
-            int attempts = 0;
-
-            while (!toBuild.isEmpty()) {
-                if (attempts++ > maxAttempts) {
-                    throw new RuntimeException("Failed to build file descriptors (circular dependency or missing import?)");
-                }
-
-                DescriptorProtos.FileDescriptorProto protoFile = toBuild.poll();
-                List<Descriptors.FileDescriptor> depDescriptors = new ArrayList<>();
-                boolean allDepsReady = true;
-
-                for (String depName : protoFile.getDependencyList()) {
-                    Descriptors.FileDescriptor dep = builtDescriptors.get(depName);
-                    if (dep != null) {
-                        depDescriptors.add(dep);
-                    } else {
-                        allDepsReady = false;
-                        break;
-                    }
-                }
-
-                if (allDepsReady) {
-                    try {
-                        Descriptors.FileDescriptor fd = Descriptors.FileDescriptor.buildFrom(
-                                protoFile,
-                                depDescriptors.toArray(new Descriptors.FileDescriptor[0])
-                        );
-                        builtDescriptors.put(protoFile.getName(), fd);
-                    } catch (Descriptors.DescriptorValidationException e) {
-                        throw new RuntimeException("Proto descriptor validation failed for " + protoFile.getName(), e);
-                    }
-                } else {
-                    toBuild.add(protoFile);
-                }
-            }
-
-            // The first file in the set should be our main service file
-            Descriptors.FileDescriptor mainFileDescriptor = Descriptors.FileDescriptor.buildFrom(
-                fds.getFile(0),
-                builtDescriptors.values().toArray(new Descriptors.FileDescriptor[0])
-            );
-
-            return new BuildResult(mainFileDescriptor, builtDescriptors);
+            return new Compiled(fds, tempProtoFile.getFileName().toString());
 
         } finally {
             // Cleanup temporary files
             Files.deleteIfExists(tempProtoFile);
             Files.deleteIfExists(tempDescFile);
+            Files.deleteIfExists(tempDir);
+        }
+    }
+
+    private static String sha256(String source) throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        return HexFormat.of().formatHex(digest.digest(source.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Links a compiled descriptor set, taking the files that are already in {@code pool} from
+     * there. {@code mainFile} names the file of the service; the others are its imports.
+     */
+    public static BuildResult buildFromDescriptorSet(DescriptorProtos.FileDescriptorSet fds, String mainFile,
+                                                     DescriptorPool pool) {
+        if (fds.getFileCount() == 0) {
+            throw new RuntimeException("No file descriptors found in compiled proto set.");
+        }
+        DescriptorPool.Lease lease;
+        try {
+            lease = pool.build(fds.getFileList());
+        } catch (Descriptors.DescriptorValidationException e) {
+            throw new RuntimeException("Proto descriptor validation failed: " + e.getMessage(), e);
+        }
+        Descriptors.FileDescriptor mainFileDescriptor = lease.get(mainFile);
+        if (mainFileDescriptor == null) {
+            throw new RuntimeException("Compiled proto set does not contain " + mainFile);
         }
+        return new BuildResult(mainFileDescriptor, lease);
     }
 }
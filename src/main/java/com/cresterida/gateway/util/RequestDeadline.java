@@ -0,0 +1,124 @@
+package com.cresterida.gateway.util;
+
+import io.grpc.Deadline;
+import io.vertx.core.http.HttpServerRequest;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time budget for one proxied request. It starts as the endpoint's configured timeout, measured
+ * from when the gateway received the request, and is shortened when the client sends a tighter
+ * {@code grpc-timeout} (relative, gRPC wire format) or {@code X-Request-Deadline} (absolute,
+ * epoch milliseconds or ISO-8601 instant). Malformed headers are ignored.
+ */
+public final class RequestDeadline {
+    public static final String GRPC_TIMEOUT_HEADER = "grpc-timeout";
+    public static final String DEADLINE_HEADER = "X-Request-Deadline";
+
+    // System.nanoTime() when the request was received, and the budget from then
+    private final long startNanos;
+    private final long budgetNanos;
+
+    private RequestDeadline(long startNanos, long budgetNanos) {
+        this.startNanos = startNanos;
+        this.budgetNanos = budgetNanos;
+    }
+
+    public static RequestDeadline of(HttpServerRequest request, long startNanos, long timeoutMillis) {
+        // toNanos saturates, so a huge configured timeout becomes an effectively unbounded budget
+        long budgetNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+        long grpcTimeout = parseGrpcTimeout(request.getHeader(GRPC_TIMEOUT_HEADER));
+        if (grpcTimeout >= 0) {
+            budgetNanos = Math.min(budgetNanos, grpcTimeout);
+        }
+        long deadline = parseDeadline(request.getHeader(DEADLINE_HEADER));
+        if (deadline != Long.MIN_VALUE) {
+            long untilDeadlineNanos = TimeUnit.MILLISECONDS.toNanos(saturatedAdd(deadline, -System.currentTimeMillis()));
+            // Relative to now rather than to startNanos: the header names a wall-clock instant
+            budgetNanos = Math.min(budgetNanos, saturatedAdd(untilDeadlineNanos, System.nanoTime() - startNanos));
+        }
+        // A deadline already in the past is a budget of zero, which keeps remainingNanos() from wrapping
+        return new RequestDeadline(startNanos, Math.max(0, budgetNanos));
+    }
+
+    public long remainingNanos() {
+        return budgetNanos - (System.nanoTime() - startNanos);
+    }
+
+    public long remainingMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(remainingNanos());
+    }
+
+    public boolean isExpired() {
+        return remainingNanos() <= 0;
+    }
+
+    // The same budget as a gRPC deadline, which gRPC sends upstream as grpc-timeout
+    public Deadline toGrpcDeadline() {
+        return Deadline.after(Math.max(0, remainingNanos()), TimeUnit.NANOSECONDS);
+    }
+
+    // The same budget as an absolute wall-clock deadline, for X-Request-Deadline upstream
+    public long toEpochMillis() {
+        return System.currentTimeMillis() + remainingMillis();
+    }
+
+    // a + b, clamped to the range of long instead of wrapping around
+    static long saturatedAdd(long a, long b) {
+        long sum = a + b;
+        if (((a ^ sum) & (b ^ sum)) < 0) {
+            return a < 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+        return sum;
+    }
+
+    /**
+     * Parses a gRPC {@code grpc-timeout} value (1-8 digits and a unit of H, M, S, m, u or n)
+     * into nanoseconds, or returns -1 when absent or malformed.
+     */
+    static long parseGrpcTimeout(String value) {
+        if (value == null || value.length() < 2 || value.length() > 9) {
+            return -1;
+        }
+        long amount = 0;
+        for (int i = 0; i < value.length() - 1; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            amount = amount * 10 + (c - '0');
+        }
+        return switch (value.charAt(value.length() - 1)) {
+            case 'H' -> TimeUnit.HOURS.toNanos(amount);
+            case 'M' -> TimeUnit.MINUTES.toNanos(amount);
+            case 'S' -> TimeUnit.SECONDS.toNanos(amount);
+            case 'm' -> TimeUnit.MILLISECONDS.toNanos(amount);
+            case 'u' -> TimeUnit.MICROSECONDS.toNanos(amount);
+            case 'n' -> amount;
+            default -> -1;
+        };
+    }
+
+    /**
+     * Parses an {@code X-Request-Deadline} value into epoch milliseconds, or returns
+     * {@link Long#MIN_VALUE} when absent or malformed.
+     */
+    static long parseDeadline(String value) {
+        if (value == null || value.isBlank()) {
+            return Long.MIN_VALUE;
+        }
+        String trimmed = value.trim();
+        try {
+            return Long.parseLong(trimmed);
+        } catch (NumberFormatException e) {
+            try {
+                return Instant.parse(trimmed).toEpochMilli();
+            } catch (DateTimeParseException ignored) {
+                return Long.MIN_VALUE;
+            }
+        }
+    }
+}
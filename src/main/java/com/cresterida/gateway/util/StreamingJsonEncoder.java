@@ -0,0 +1,280 @@
+package com.cresterida.gateway.util;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import com.google.protobuf.util.JsonFormat;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.Json;
+
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes a protobuf message as JSON in chunks of about {@code chunkSize} bytes, walking the
+ * message instead of printing it to a String and parsing that into a {@link io.vertx.core.json.JsonObject}
+ * first. A response can then be sent chunk by chunk while the message is the only full copy of
+ * the data in memory.
+ *
+ * <p>The output is the same as {@link DynamicGrpcInvoker#toJson} encoded: proto field names,
+ * fields that are set in field number order, 64-bit integers as strings, enums by name and bytes
+ * in base64. Well-known types with a special JSON form (Timestamp, Struct, wrappers...) are
+ * printed by {@link JsonFormat}; they are small.
+ *
+ * <p>The walk keeps an explicit stack, so it can stop at any point once a chunk is full and
+ * resume from there. A single value larger than a chunk (a long string or bytes field) is
+ * written whole.
+ */
+public final class StreamingJsonEncoder {
+    private static final JsonFormat.Printer WELL_KNOWN_PRINTER = JsonFormat.printer()
+        .preservingProtoFieldNames()
+        .omittingInsignificantWhitespace();
+    private static final Set<String> WELL_KNOWN_TYPES = Set.of(
+        "google.protobuf.Any",
+        "google.protobuf.BoolValue",
+        "google.protobuf.BytesValue",
+        "google.protobuf.DoubleValue",
+        "google.protobuf.Duration",
+        "google.protobuf.FieldMask",
+        "google.protobuf.FloatValue",
+        "google.protobuf.Int32Value",
+        "google.protobuf.Int64Value",
+        "google.protobuf.ListValue",
+        "google.protobuf.StringValue",
+        "google.protobuf.Struct",
+        "google.protobuf.Timestamp",
+        "google.protobuf.UInt32Value",
+        "google.protobuf.UInt64Value",
+        "google.protobuf.Value");
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final int MAX_INITIAL_CAPACITY = 64 * 1024;
+
+    private final int chunkSize;
+    private final ArrayDeque<Frame> stack = new ArrayDeque<>();
+    private Buffer out;
+
+    private sealed interface Frame permits MessageFrame, ListFrame, MapFrame {
+    }
+
+    private static final class MessageFrame implements Frame {
+        final Iterator<Map.Entry<Descriptors.FieldDescriptor, Object>> fields;
+        boolean first = true;
+
+        MessageFrame(Message message) {
+            this.fields = message.getAllFields().entrySet().iterator();
+        }
+    }
+
+    private static final class ListFrame implements Frame {
+        final Descriptors.FieldDescriptor field;
+        final List<?> values;
+        int index;
+
+        ListFrame(Descriptors.FieldDescriptor field, List<?> values) {
+            this.field = field;
+            this.values = values;
+        }
+    }
+
+    private static final class MapFrame implements Frame {
+        final Descriptors.FieldDescriptor keyField;
+        final Descriptors.FieldDescriptor valueField;
+        final List<?> entries;
+        int index;
+
+        MapFrame(Descriptors.FieldDescriptor field, List<?> entries) {
+            this.keyField = field.getMessageType().findFieldByName("key");
+            this.valueField = field.getMessageType().findFieldByName("value");
+            this.entries = entries;
+        }
+    }
+
+    public StreamingJsonEncoder(Message message, int chunkSize) {
+        this.chunkSize = chunkSize;
+        this.out = newChunk();
+        try {
+            writeMessage(message);
+        } catch (InvalidProtocolBufferException e) {
+            throw new IllegalArgumentException("Cannot print " + message.getDescriptorForType().getFullName(), e);
+        }
+    }
+
+    /**
+     * Encodes a whole message at once, for callers that want the bytes rather than chunks.
+     */
+    public static Buffer encode(Message message) throws InvalidProtocolBufferException {
+        StreamingJsonEncoder encoder = new StreamingJsonEncoder(message, Integer.MAX_VALUE);
+        return encoder.next();
+    }
+
+    public boolean hasNext() {
+        return out != null;
+    }
+
+    /**
+     * Returns the next chunk: at least {@code chunkSize} bytes unless it is the last one.
+     *
+     * @throws InvalidProtocolBufferException when a well-known type cannot be printed, e.g. an
+     *                                        {@code Any} whose type is unknown
+     */
+    public Buffer next() throws InvalidProtocolBufferException {
+        if (out == null) {
+            throw new IllegalStateException("No chunk left");
+        }
+        while (!stack.isEmpty() && out.length() < chunkSize) {
+            step();
+        }
+        Buffer chunk = out;
+        out = stack.isEmpty() ? null : newChunk();
+        return chunk;
+    }
+
+    private Buffer newChunk() {
+        return Buffer.buffer(Math.min(chunkSize, MAX_INITIAL_CAPACITY));
+    }
+
+    // Writes one field, element or closing bracket of the frame on top of the stack
+    private void step() throws InvalidProtocolBufferException {
+        Frame top = stack.peek();
+        if (top instanceof MessageFrame frame) {
+            if (!frame.fields.hasNext()) {
+                out.appendByte((byte) '}');
+                stack.pop();
+                return;
+            }
+            Map.Entry<Descriptors.FieldDescriptor, Object> entry = frame.fields.next();
+            Descriptors.FieldDescriptor field = entry.getKey();
+            if (!frame.first) {
+                out.appendByte((byte) ',');
+            }
+            frame.first = false;
+            out.appendByte((byte) '"').appendString(field.getName()).appendString("\":");
+            if (field.isMapField()) {
+                out.appendByte((byte) '{');
+                stack.push(new MapFrame(field, (List<?>) entry.getValue()));
+            } else if (field.isRepeated()) {
+                out.appendByte((byte) '[');
+                stack.push(new ListFrame(field, (List<?>) entry.getValue()));
+            } else {
+                writeValue(field, entry.getValue());
+            }
+        } else if (top instanceof ListFrame frame) {
+            if (frame.index == frame.values.size()) {
+                out.appendByte((byte) ']');
+                stack.pop();
+                return;
+            }
+            if (frame.index > 0) {
+                out.appendByte((byte) ',');
+            }
+            writeValue(frame.field, frame.values.get(frame.index++));
+        } else if (top instanceof MapFrame frame) {
+            if (frame.index == frame.entries.size()) {
+                out.appendByte((byte) '}');
+                stack.pop();
+                return;
+            }
+            if (frame.index > 0) {
+                out.appendByte((byte) ',');
+            }
+            Message entry = (Message) frame.entries.get(frame.index++);
+            writeMapKey(frame.keyField, entry.getField(frame.keyField));
+            out.appendByte((byte) ':');
+            writeValue(frame.valueField, entry.getField(frame.valueField));
+        }
+    }
+
+    private void writeMessage(Message message) throws InvalidProtocolBufferException {
+        if (WELL_KNOWN_TYPES.contains(message.getDescriptorForType().getFullName())) {
+            // Re-encoded so strings are escaped as everywhere else in the output
+            out.appendString(Json.encode(Json.decodeValue(WELL_KNOWN_PRINTER.print(message))));
+            return;
+        }
+        out.appendByte((byte) '{');
+        stack.push(new MessageFrame(message));
+    }
+
+    private void writeValue(Descriptors.FieldDescriptor field, Object value) throws InvalidProtocolBufferException {
+        switch (field.getType()) {
+            case INT32, SINT32, SFIXED32 -> out.appendString(Integer.toString((Integer) value));
+            case UINT32, FIXED32 -> out.appendString(Integer.toUnsignedString((Integer) value));
+            case INT64, SINT64, SFIXED64 -> out.appendByte((byte) '"').appendString(Long.toString((Long) value)).appendByte((byte) '"');
+            case UINT64, FIXED64 -> out.appendByte((byte) '"').appendString(Long.toUnsignedString((Long) value)).appendByte((byte) '"');
+            case BOOL -> out.appendString((Boolean) value ? "true" : "false");
+            case FLOAT -> writeFloatingPoint((Float) value, Float.isNaN((Float) value) || Float.isInfinite((Float) value));
+            case DOUBLE -> writeFloatingPoint((Double) value, Double.isNaN((Double) value) || Double.isInfinite((Double) value));
+            case STRING -> writeString((String) value);
+            case BYTES -> out.appendByte((byte) '"')
+                .appendBytes(Base64.getEncoder().encode(((ByteString) value).toByteArray()))
+                .appendByte((byte) '"');
+            case ENUM -> writeEnum((Descriptors.EnumValueDescriptor) value);
+            case MESSAGE, GROUP -> writeMessage((Message) value);
+        }
+    }
+
+    // NaN and the infinities are not JSON numbers, so they are written as strings
+    private void writeFloatingPoint(Number value, boolean special) {
+        if (special) {
+            out.appendByte((byte) '"').appendString(value.toString()).appendByte((byte) '"');
+        } else {
+            out.appendString(value.toString());
+        }
+    }
+
+    private void writeEnum(Descriptors.EnumValueDescriptor value) {
+        if (value.getType().getFullName().equals("google.protobuf.NullValue")) {
+            out.appendString("null");
+        } else if (value.getIndex() == -1) {
+            // A number this side's proto does not know
+            out.appendString(Integer.toString(value.getNumber()));
+        } else {
+            out.appendByte((byte) '"').appendString(value.getName()).appendByte((byte) '"');
+        }
+    }
+
+    // JSON object keys are strings, whatever the key type
+    private void writeMapKey(Descriptors.FieldDescriptor keyField, Object key) {
+        switch (keyField.getType()) {
+            case STRING -> writeString((String) key);
+            case UINT32, FIXED32 -> writeString(Integer.toUnsignedString((Integer) key));
+            case UINT64, FIXED64 -> writeString(Long.toUnsignedString((Long) key));
+            default -> writeString(key.toString());
+        }
+    }
+
+    private void writeString(String value) {
+        out.appendByte((byte) '"');
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+            if (i > start) {
+                out.appendString(value.substring(start, i));
+            }
+            switch (c) {
+                case '"' -> out.appendString("\\\"");
+                case '\\' -> out.appendString("\\\\");
+                case '\b' -> out.appendString("\\b");
+                case '\f' -> out.appendString("\\f");
+                case '\n' -> out.appendString("\\n");
+                case '\r' -> out.appendString("\\r");
+                case '\t' -> out.appendString("\\t");
+                default -> out.appendString("\\u00").appendByte((byte) HEX[c >> 4]).appendByte((byte) HEX[c & 0xF]);
+            }
+            start = i + 1;
+        }
+        if (start == 0) {
+            out.appendString(value);
+        } else if (start < value.length()) {
+            out.appendString(value.substring(start));
+        }
+        out.appendByte((byte) '"');
+    }
+}